@@ -0,0 +1,175 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A PhpBeanSerializer serializes Java beans by their properties. Each public getter
+ * method ({@code getXxx()}, or {@code isXxx()} for booleans) results in a property. The
+ * properties are written in the alphabetical order of their names.
+ * <p>
+ * Beans are written either as PHP objects, or as associative arrays. The PHP class name
+ * is the simple name of the Java class by default, and can be changed by overriding
+ * {@link #getPhpClassName(Class)}. Enums are written by their name.
+ * <p>
+ * The getter methods of a class are only looked up once, and then kept in a cache. A
+ * PhpBeanSerializer is thread safe.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class PhpBeanSerializer implements PhpTypeSerializer<Object> {
+    private final boolean asObject;
+    private final Map<Class<?>, BeanInfo> cache =
+                    new ConcurrentHashMap<Class<?>, BeanInfo>();
+
+    /**
+     * Creates a new PhpBeanSerializer.
+     *
+     * @param asObject
+     *            {@code true}: beans are written as PHP objects, {@code false}: beans are
+     *            written as associative arrays
+     */
+    public PhpBeanSerializer(boolean asObject) {
+        this.asObject = asObject;
+    }
+
+    @Override
+    public void serialize(Object value, PhpOutput out) throws IOException {
+        // --- Enums and arrays are no beans ---
+        if (value instanceof Enum<?>) {
+            out.serialize(((Enum<?>) value).name());
+            return;
+        }
+        if (value.getClass().isArray()) {
+            out.serialize(value.toString());
+            return;
+        }
+
+        BeanInfo info = getBeanInfo(value.getClass());
+
+        if (asObject) {
+            out.startObject(info.className, info.names.length);
+        } else {
+            out.startArray(info.names.length);
+        }
+
+        for (int ix = 0; ix < info.names.length; ix++) {
+            out.serialize(info.names[ix]);
+            try {
+                out.serialize(info.getters[ix].invoke(value));
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new IOException("could not read property '" + info.names[ix]
+                    + "' of " + value.getClass().getName(), ex);
+            }
+        }
+
+        if (asObject) {
+            out.endObject();
+        } else {
+            out.endArray();
+        }
+    }
+
+    /**
+     * Gets the PHP class name of a Java class. By default, it is the simple class name.
+     *
+     * @param type
+     *            Java class
+     * @return PHP class name
+     */
+    protected String getPhpClassName(Class<?> type) {
+        return type.getSimpleName();
+    }
+
+    /**
+     * Gets the cached {@link BeanInfo} of a class, or creates it.
+     */
+    private BeanInfo getBeanInfo(Class<?> type) {
+        BeanInfo result = cache.get(type);
+        if (result == null) {
+            result = new BeanInfo(type);
+            cache.put(type, result);
+        }
+        return result;
+    }
+
+    /**
+     * Converts a getter method name into a property name, like
+     * {@link java.beans.Introspector#decapitalize(String)} does.
+     */
+    private static String propertyName(String methodName, int prefix) {
+        String name = methodName.substring(prefix);
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(0))
+                        && Character.isUpperCase(name.charAt(1))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * The cached properties of a bean class.
+     */
+    private class BeanInfo {
+        private final String className;
+        private final String[] names;
+        private final Method[] getters;
+
+        public BeanInfo(Class<?> type) {
+            SortedMap<String, Method> properties = new TreeMap<String, Method>();
+            for (Method m : type.getMethods()) {
+                if (Modifier.isStatic(m.getModifiers())
+                                || m.getParameterTypes().length > 0
+                                || m.getDeclaringClass() == Object.class) {
+                    continue;
+                }
+
+                String name = m.getName();
+                if (name.length() > 3 && name.startsWith("get")
+                                && m.getReturnType() != void.class) {
+                    properties.put(propertyName(name, 3), m);
+                } else if (name.length() > 2 && name.startsWith("is")
+                                && m.getReturnType() == boolean.class) {
+                    properties.put(propertyName(name, 2), m);
+                }
+            }
+
+            className = getPhpClassName(type);
+            names = properties.keySet().toArray(new String[properties.size()]);
+            getters = properties.values().toArray(new Method[properties.size()]);
+
+            // --- Public methods of non-public classes are not accessible otherwise ---
+            for (Method m : getters) {
+                if (!Modifier.isPublic(m.getDeclaringClass().getModifiers())) {
+                    m.setAccessible(true);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,902 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * PhpByteSerializer writes Java objects in the format of PHP's <code>serialize()</code>
+ * function, like {@link PhpSerializer}. Unlike {@link PhpSerializer}, it writes UTF-8
+ * encoded bytes to an {@link OutputStream} or a {@link ByteBuffer}.
+ * <p>
+ * PHP expects the length of a string in bytes. PhpByteSerializer computes the UTF-8
+ * length of a string first, and then encodes the string directly into its internal
+ * buffer, so the result can be read by PHP even if the string contains non-ASCII chars.
+ * Numbers are formatted directly into the buffer as well, without creating intermediate
+ * {@link String} objects. There is no need to wrap the {@link OutputStream} into a
+ * {@link java.io.BufferedOutputStream}.
+ * <p>
+ * The same types as in {@link PhpSerializer} are supported. Additionally,
+ * {@link PhpObject} is serialized as PHP object. Doubles are written in the same way as
+ * PHP does, so infinite values and NaN can be read by PHP as well. References can be
+ * tracked like in {@link PhpSerializer#setTrackReferences(boolean)}.
+ * <p>
+ * {@link #sizeOf(Object)} computes the exact length of the output without writing it,
+ * e.g. for a {@code Content-Length} header. {@link #toByteArray(Object)} uses it for
+ * serializing into a single byte array of the exact size.
+ * <p>
+ * Do not serialize more than one object, since more is not supported by PHP. If you need
+ * to pass several objects, pack them into an array and then serialize that array.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class PhpByteSerializer implements PhpOutput, Closeable, Flushable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int DEFAULT_SPOOL_THRESHOLD = 1024 * 1024;
+    private static final double MAX_EXACT = 9007199254740992.0;     // 2^53
+
+    private final OutputStream out;
+    private final ByteBuffer target;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] number = new byte[24];
+    private int pos = 0;            // Number of bytes in the buffer
+    private long count = 0;         // Number of bytes flushed in sizing mode
+    private PhpTypeRegistry registry = null;
+    private PhpReferenceTracker tracker = null;
+    private int spoolThreshold = DEFAULT_SPOOL_THRESHOLD;
+
+    /**
+     * Creates a new PhpByteSerializer that writes to an {@link OutputStream}.
+     *
+     * @param out
+     *            {@link OutputStream} to write the output to
+     */
+    public PhpByteSerializer(OutputStream out) {
+        if (out == null) throw new NullPointerException("out must not be null");
+        this.out = out;
+        this.target = null;
+    }
+
+    /**
+     * Creates a new PhpByteSerializer that writes into a {@link ByteBuffer}. A
+     * {@link BufferOverflowException} is thrown if the buffer is too small.
+     *
+     * @param target
+     *            {@link ByteBuffer} to write the output to, starting at its current
+     *            position. The output is only complete after {@link #flush()}.
+     */
+    public PhpByteSerializer(ByteBuffer target) {
+        if (target == null) throw new NullPointerException("target must not be null");
+        this.out = null;
+        this.target = target;
+    }
+
+    /**
+     * Creates a new PhpByteSerializer in sizing mode. It only counts the bytes, but does
+     * not write them anywhere.
+     */
+    private PhpByteSerializer() {
+        this.out = null;
+        this.target = null;
+    }
+
+    /**
+     * Sets a {@link PhpTypeRegistry} that is used for serializing objects that are not
+     * of a basic type.
+     *
+     * @param registry
+     *            {@link PhpTypeRegistry}, or {@code null} for none
+     */
+    public void setRegistry(PhpTypeRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Gets the {@link PhpTypeRegistry} that is used.
+     *
+     * @return {@link PhpTypeRegistry}, or {@code null} if none is set
+     */
+    public PhpTypeRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Enables tracking of references. If enabled, objects that have been serialized
+     * before are written as reference. This also permits circular references.
+     *
+     * @param track
+     *            {@code true} to enable tracking of references. Defaults to
+     *            {@code false}.
+     * @see PhpSerializer#setTrackReferences(boolean)
+     */
+    public void setTrackReferences(boolean track) {
+        tracker = (track ? new PhpReferenceTracker() : null);
+    }
+
+    /**
+     * Checks if references are tracked.
+     *
+     * @return {@code true} if references are tracked
+     */
+    public boolean isTrackReferences() {
+        return tracker != null;
+    }
+
+    /**
+     * Sets the number of bytes of an {@link Iterator} array that are kept in memory.
+     * Larger arrays are spooled to a temporary file. Defaults to 1 MB.
+     *
+     * @param spoolThreshold
+     *            Spool threshold, in bytes
+     * @see PhpSerializer#setSpoolThreshold(int)
+     */
+    public void setSpoolThreshold(int spoolThreshold) {
+        if (spoolThreshold < 0)
+            throw new IllegalArgumentException("invalid spool threshold");
+        this.spoolThreshold = spoolThreshold;
+    }
+
+    /**
+     * Writes an integer.
+     *
+     * @param i
+     *            Integer value to write
+     */
+    public void serialize(int i) throws IOException {
+        serialize((long) i);
+    }
+
+    /**
+     * Writes a long.
+     *
+     * @param i
+     *            Long value to write
+     */
+    public void serialize(long i) throws IOException {
+        track(PhpReferenceTracker.SCALAR);
+        put('i', ':');
+        putLong(i);
+        put(';');
+    }
+
+    /**
+     * Writes a boolean.
+     *
+     * @param b
+     *            Boolean value to write
+     */
+    public void serialize(boolean b) throws IOException {
+        track(PhpReferenceTracker.SCALAR);
+        put('b', ':');
+        put(b ? '1' : '0', ';');
+    }
+
+    /**
+     * Writes a double.
+     *
+     * @param d
+     *            Double value to write
+     */
+    public void serialize(double d) throws IOException {
+        track(PhpReferenceTracker.SCALAR);
+        put('d', ':');
+        putDouble(d);
+        put(';');
+    }
+
+    /**
+     * Writes a float.
+     *
+     * @param f
+     *            Float value to write
+     */
+    public void serialize(float f) throws IOException {
+        serialize((double) f);
+    }
+
+    /**
+     * Writes a char.
+     *
+     * @param c
+     *            Char value to write
+     */
+    public void serialize(char c) throws IOException {
+        serialize(String.valueOf(c));
+    }
+
+    /**
+     * Writes a char array.
+     *
+     * @param c
+     *            Array of chars to write
+     */
+    public void serialize(char[] c) throws IOException {
+        serialize(c, 0, c.length);
+    }
+
+    /**
+     * Writes a section of a char array.
+     *
+     * @param c
+     *            Array of chars to write
+     * @param offset
+     *            First index to write
+     * @param count
+     *            Number of chars to write
+     */
+    public void serialize(char[] c, int offset, int count) throws IOException {
+        serialize(CharBuffer.wrap(c, offset, count));
+    }
+
+    /**
+     * Serializes a {@link String}. The string length is written as number of UTF-8
+     * bytes.
+     *
+     * @param s
+     *            {@link String} to write, may be {@code null}
+     */
+    @Override
+    public void serialize(String s) throws IOException {
+        serialize((CharSequence) s);
+    }
+
+    /**
+     * Serializes a {@link CharSequence}, like a {@link StringBuilder}. The string length is
+     * written as number of UTF-8 bytes.
+     *
+     * @param s
+     *            {@link CharSequence} to write, may be {@code null}
+     */
+    public void serialize(CharSequence s) throws IOException {
+        if (s == null) {
+            serializeNull();
+        } else {
+            track(PhpReferenceTracker.SCALAR);
+            put('s', ':');
+            putString(s);
+            put(';');
+        }
+    }
+
+    /**
+     * Serializes a {@link Number}. {@link BigDecimal} and {@link BigInteger} is
+     * supported, at least on the Java side. PHP might behave erratic when passing in very
+     * large numbers.
+     *
+     * @param n
+     *            {@link Number} to write, may be {@code null}
+     */
+    public void serialize(Number n) throws IOException {
+        if (n == null) {
+            serializeNull();
+        } else if (n instanceof BigDecimal) {
+            track(PhpReferenceTracker.SCALAR);
+            put('d', ':');
+            putAscii(n.toString());
+            put(';');
+        } else if (n instanceof BigInteger) {
+            track(PhpReferenceTracker.SCALAR);
+            put('i', ':');
+            putAscii(n.toString());
+            put(';');
+        } else if (n instanceof Float || n instanceof Double) {
+            serialize(n.doubleValue());
+        } else {
+            serialize(n.longValue());
+        }
+    }
+
+    /**
+     * Serializes an array. Each element of that array is serialized.
+     * <p>
+     * Note that circular references (e.g. the array itself is an element of that array)
+     * will lead to a stack overflow, unless references are tracked.
+     *
+     * @param a
+     *            Array to write, may be {@code null}
+     */
+    public void serialize(Object[] a) throws IOException {
+        if (a == null) {
+            serializeNull();
+        } else if (!writeReference(a)) {
+            writeElements(Arrays.asList(a));
+        }
+    }
+
+    /**
+     * Serializes a {@link Collection}. On PHP side, an index array is created, with the
+     * index counting from 0.
+     * <p>
+     * Note that the {@link Collection} must not contain circular references, unless
+     * references are tracked.
+     *
+     * @param c
+     *            {@link Collection} to write, may be {@code null}
+     */
+    public void serialize(Collection<?> c) throws IOException {
+        if (c == null) {
+            serializeNull();
+        } else if (!writeReference(c)) {
+            writeElements(c);
+        }
+    }
+
+    /**
+     * Serializes an {@link Iterable}. On PHP side, an index array is created, with the
+     * index counting from 0. If the {@link Iterable} is a {@link Collection}, it is
+     * serialized like a {@link Collection}. Otherwise the number of elements is not known
+     * in advance, and the elements are serialized like an {@link Iterator}.
+     *
+     * @param it
+     *            {@link Iterable} to write, may be {@code null}
+     */
+    public void serialize(Iterable<?> it) throws IOException {
+        if (it instanceof Collection<?>) {
+            serialize((Collection<?>) it);
+        } else if (it == null) {
+            serializeNull();
+        } else if (!writeReference(it)) {
+            writeElements(it.iterator());
+        }
+    }
+
+    /**
+     * Serializes the remaining elements of an {@link Iterator}, like a database cursor.
+     * On PHP side, an index array is created, with the index counting from 0.
+     * <p>
+     * PHP expects the number of elements in front of the array. Since it is not known in
+     * advance, the elements are serialized into a spool first, which is moved to a
+     * temporary file if it exceeds the spool threshold. The elements are then copied to
+     * the output. The {@link Iterator} is consumed, so it cannot be passed to
+     * {@link #sizeOf(Object)} before serializing it.
+     *
+     * @param it
+     *            {@link Iterator} to write, may be {@code null}
+     */
+    public void serialize(Iterator<?> it) throws IOException {
+        if (it == null) {
+            serializeNull();
+        } else if (!writeReference(it)) {
+            writeElements(it);
+        }
+    }
+
+    /**
+     * Serializes a {@link Map}. On PHP side, an associative array is created. The keys
+     * are converted in the same way as in {@link PhpSerializer#serialize(Map)}.
+     * <p>
+     * Note that the map must not contain circular references, unless references are
+     * tracked.
+     *
+     * @param m
+     *            {@link Map} to write, may be {@code null}
+     */
+    public void serialize(Map<?, ?> m) throws IOException {
+        if (m == null) {
+            serializeNull();
+        } else if (!writeReference(m)) {
+            startArray(m.size());
+            for (Map.Entry<?, ?> entry : m.entrySet()) {
+                serializeKey(entry.getKey());
+                serialize(entry.getValue());
+            }
+            endArray();
+        }
+    }
+
+    /**
+     * Serializes a {@link PhpObject}. On PHP side, an object of the given class is
+     * created.
+     *
+     * @param o
+     *            {@link PhpObject} to write, may be {@code null}
+     */
+    public void serialize(PhpObject o) throws IOException {
+        if (o == null) {
+            serializeNull();
+        } else if (!writeReference(o)) {
+            startObject(o.getClassName(), o.getProperties().size());
+            for (Map.Entry<String, Object> entry : o.getProperties().entrySet()) {
+                serialize(entry.getKey());
+                serialize(entry.getValue());
+            }
+            endObject();
+        }
+    }
+
+    /**
+     * Serializes an {@link Object}. If the object is found to be an instance of
+     * {@link CharSequence}, {@link Character}, {@link Boolean}, {@link Number},
+     * {@link Collection}, {@link Map}, {@link PhpObject}, {@link Iterable} or
+     * {@link Iterator}, or if the object is an array, the appropriate
+     * {@code serialize()} method is used. Otherwise, if a
+     * {@link PhpTypeRegistry} is set and has a {@link PhpTypeSerializer} for the
+     * object's class, that serializer is used. In all other cases, the object's
+     * {@code toString()} result is serialized as a string.
+     *
+     * @param o
+     *            Object to write, may be {@code null}
+     */
+    public void serialize(Object o) throws IOException {
+        if (o == null) {
+            serializeNull();
+        } else if (o instanceof CharSequence) {
+            serialize((CharSequence) o);
+        } else if (o instanceof Number) {
+            serialize((Number) o);
+        } else if (o instanceof Collection<?>) {
+            serialize((Collection<?>) o);
+        } else if (o instanceof Map<?, ?>) {
+            serialize((Map<?, ?>) o);
+        } else if (o instanceof Object[]) {
+            serialize((Object[]) o);
+        } else if (o instanceof Boolean) {
+            serialize(((Boolean) o).booleanValue());
+        } else if (o instanceof Character) {
+            serialize(((Character) o).charValue());
+        } else if (o instanceof PhpObject) {
+            serialize((PhpObject) o);
+        } else if (o instanceof Iterable<?>) {
+            serialize((Iterable<?>) o);
+        } else if (o instanceof Iterator<?>) {
+            serialize((Iterator<?>) o);
+        } else {
+            PhpTypeSerializer<Object> ser = null;
+            if (registry != null) ser = registry.lookup(o.getClass());
+            if (ser != null) {
+                if (!writeReference(o)) ser.serialize(o, this);
+            } else {
+                serialize(o.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes a mere null pointer.
+     */
+    public void serializeNull() throws IOException {
+        track(PhpReferenceTracker.SCALAR);
+        put('N', ';');
+    }
+
+    @Override
+    public void startArray(int size) throws IOException {
+        track(PhpReferenceTracker.ARRAY);
+        put('a', ':');
+        putLong(size);
+        put(':', '{');
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        if (tracker != null) tracker.end();
+        put('}');
+    }
+
+    @Override
+    public void startObject(String className, int size) throws IOException {
+        track(PhpReferenceTracker.OBJECT);
+        put('O', ':');
+        putString(className);
+        put(':');
+        putLong(size);
+        put(':', '{');
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        if (tracker != null) tracker.end();
+        put('}');
+    }
+
+    /**
+     * Writes the buffer to the target, and flushes the {@link OutputStream}.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (out != null) out.flush();
+    }
+
+    /**
+     * Flushes the buffer, and closes the {@link OutputStream}.
+     */
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        if (out != null) out.close();
+    }
+
+    /**
+     * Computes the exact number of bytes that are written when serializing the given
+     * object. No output is written. The {@link PhpTypeRegistry} and the reference
+     * tracking settings of this serializer are used.
+     * <p>
+     * The computation is about as expensive as the serialization itself, except that
+     * strings are only measured but not encoded.
+     *
+     * @param o
+     *            Object to measure, may be {@code null}
+     * @return Number of bytes
+     */
+    public long sizeOf(Object o) throws IOException {
+        PhpByteSerializer sizer = new PhpByteSerializer();
+        sizer.registry = registry;
+        sizer.setTrackReferences(isTrackReferences());
+        sizer.serialize(o);
+        sizer.flushBuffer();
+        return sizer.count;
+    }
+
+    /**
+     * Serializes an object into a byte array of the exact size. The size is computed by
+     * {@link #sizeOf(Object)} first, so no buffer needs to be grown or copied. The
+     * {@link PhpTypeRegistry} and the reference tracking settings of this serializer are
+     * used. The object must not be changed concurrently.
+     * <p>
+     * The object is traversed twice, so it must not be or contain an {@link Iterator} or
+     * an {@link Iterable} that can only be iterated once. Such objects are detected, and
+     * rejected by an exception.
+     * <p>
+     * The serializer's own target is not touched. If a {@link ByteBuffer} is required,
+     * the result can be wrapped, or {@link #sizeOf(Object)} can be used for allocating a
+     * direct {@link ByteBuffer}.
+     *
+     * @param o
+     *            Object to serialize, may be {@code null}
+     * @return Byte array containing the serialized object
+     * @throws IllegalArgumentException
+     *             if the serialized object would exceed the maximum array size, or if
+     *             the object could not be traversed twice
+     */
+    public byte[] toByteArray(Object o) throws IOException {
+        if (o instanceof Iterator<?>)
+            throw new IllegalArgumentException("Iterator cannot be serialized twice");
+
+        long size = sizeOf(o);
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("serialized size " + size + " is too large");
+
+        byte[] result = new byte[(int) size];
+        PhpByteSerializer ser = new PhpByteSerializer(ByteBuffer.wrap(result));
+        ser.registry = registry;
+        ser.setTrackReferences(isTrackReferences());
+        try {
+            ser.serialize(o);
+            ser.flushBuffer();
+        } catch (BufferOverflowException ex) {
+            throw new IllegalArgumentException("object was changed while serializing", ex);
+        }
+
+        // --- A consumed Iterator or a changed object gives a different size ---
+        if (ser.target.position() != size)
+            throw new IllegalArgumentException("object was changed while serializing,"
+                            + " or contains a one-shot Iterator or Iterable");
+        return result;
+    }
+
+    /**
+     * Computes the number of bytes of the UTF-8 representation of a
+     * {@link CharSequence}. Unpaired surrogates are counted as one byte, since they are
+     * replaced by '?'.
+     *
+     * @param s
+     *            {@link CharSequence} to measure
+     * @return Number of UTF-8 bytes
+     */
+    static long utf8Length(CharSequence s) {
+        int len = s.length();
+        long result = len;
+        for (int ix = 0; ix < len; ix++) {
+            char c = s.charAt(ix);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    result += 1;
+                } else if (Character.isHighSurrogate(c) && ix + 1 < len
+                                && Character.isLowSurrogate(s.charAt(ix + 1))) {
+                    result += 2;    // 4 bytes for 2 chars
+                    ix++;
+                } else if (!Character.isSurrogate(c)) {
+                    result += 2;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the elements of a {@link Collection} as index array.
+     */
+    private void writeElements(Collection<?> c) throws IOException {
+        startArray(c.size());
+        long cnt = 0;
+        for (Object o : c) {
+            serialize(cnt++);
+            serialize(o);
+        }
+        endArray();
+    }
+
+    /**
+     * Writes the remaining elements of an {@link Iterator} as index array. The elements
+     * are spooled first, since their number must be written in front of them.
+     */
+    private void writeElements(Iterator<?> it) throws IOException {
+        track(PhpReferenceTracker.ARRAY);
+
+        try (PhpSpool spool = new PhpSpool(spoolThreshold)) {
+            // --- Serialize the elements into the spool ---
+            PhpByteSerializer elements = new PhpByteSerializer(spool);
+            elements.registry = registry;
+            elements.tracker = tracker;
+            elements.spoolThreshold = spoolThreshold;
+            long cnt = 0;
+            while (it.hasNext()) {
+                elements.serialize(cnt++);
+                elements.serialize(it.next());
+            }
+            elements.flushBuffer();
+
+            // --- Write the array, and copy the spooled elements ---
+            put('a', ':');
+            putLong(cnt);
+            put(':', '{');
+            flushBuffer();
+            try (InputStream in = spool.openInputStream()) {
+                int len;
+                while ((len = in.read(buffer, 0, buffer.length)) > 0) {
+                    pos = len;
+                    flushBuffer();
+                }
+            }
+            endArray();
+        }
+    }
+
+    /**
+     * Writes a reference if references are tracked and the object has been serialized
+     * before.
+     *
+     * @param o
+     *            Object that is about to be serialized
+     * @return {@code true} if a reference was written, {@code false} if the object must
+     *         be serialized
+     */
+    private boolean writeReference(Object o) throws IOException {
+        if (tracker == null) return false;
+
+        int ref = tracker.lookup(o);
+        if (ref > 0) {
+            tracker.reference();
+            put('R', ':');
+            putLong(ref);
+            put(';');
+        } else if (ref < 0) {
+            tracker.value(PhpReferenceTracker.SCALAR);
+            put('r', ':');
+            putLong(-ref);
+            put(';');
+        }
+        return ref != 0;
+    }
+
+    /**
+     * Announces a value to the reference tracker, if references are tracked.
+     */
+    private void track(int type) {
+        if (tracker != null) tracker.value(type);
+    }
+
+    /**
+     * Serializes a map key. It is serialized either as integer or as string.
+     */
+    private void serializeKey(Object key) throws IOException {
+        if (key == null) {
+            track(PhpReferenceTracker.SCALAR);
+            put('s', ':');
+            put('0', ':');
+            put('"', '"');
+            put(';');
+        } else if (key instanceof Boolean) {
+            track(PhpReferenceTracker.SCALAR);
+            put('i', ':');
+            put(((Boolean) key).booleanValue() ? '1' : '0', ';');
+        } else if (key instanceof Float || key instanceof Double
+                        || key instanceof BigDecimal) {
+            serialize(key.toString());
+        } else if (key instanceof BigInteger) {
+            track(PhpReferenceTracker.SCALAR);
+            put('i', ':');
+            putAscii(key.toString());
+            put(';');
+        } else if (key instanceof Number) {
+            serialize(((Number) key).longValue());
+        } else {
+            serialize(key.toString());
+        }
+    }
+
+    /**
+     * Writes a long value as decimal number.
+     */
+    private void putLong(long value) throws IOException {
+        int start = number.length;
+        long v = (value > 0 ? -value : value);     // negative, so MIN_VALUE works too
+        do {
+            number[--start] = (byte) ('0' - (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (value < 0) number[--start] = '-';
+        putBytes(number, start, number.length - start);
+    }
+
+    /**
+     * Writes a double value, in the way PHP does. If the value can be exactly
+     * represented by a decimal number with up to 15 fraction digits, the number is
+     * formatted directly. Otherwise {@link Double#toString(double)} is used.
+     */
+    private void putDouble(double d) throws IOException {
+        if (Double.isNaN(d)) {
+            putAscii("NAN");
+            return;
+        }
+        if (Double.isInfinite(d)) {
+            putAscii(d > 0 ? "INF" : "-INF");
+            return;
+        }
+
+        // --- Powers of ten up to 10^22 are exact, so they can be multiplied up ---
+        double power = 1.0;
+        for (int scale = 0; scale <= 15; scale++, power *= 10.0) {
+            double m = d * power;
+            if (Math.abs(m) >= MAX_EXACT) break;
+            if (m == Math.rint(m) && m / power == d) {
+                putDecimal((long) m, scale, d < 0 || (d == 0.0 && 1.0 / d < 0));
+                return;
+            }
+        }
+
+        putAscii(Double.toString(d));
+    }
+
+    /**
+     * Writes a decimal number, given as unscaled value and scale.
+     */
+    private void putDecimal(long unscaled, int scale, boolean negative) throws IOException {
+        int start = number.length;
+        long v = Math.abs(unscaled);
+        int digits = 0;
+        do {
+            if (digits == scale && scale > 0) number[--start] = '.';
+            number[--start] = (byte) ('0' + (v % 10));
+            v /= 10;
+            digits++;
+        } while (v != 0 || digits <= scale);
+        if (negative) number[--start] = '-';
+        putBytes(number, start, number.length - start);
+    }
+
+    /**
+     * Writes a string with its UTF-8 length, as {@code <length>:"<string>"}. In sizing
+     * mode, the string is only measured.
+     */
+    private void putString(CharSequence s) throws IOException {
+        long len = utf8Length(s);
+        putLong(len);
+        put(':', '"');
+        if (out == null && target == null) {
+            count += len;
+        } else {
+            putUtf8(s);
+        }
+        put('"');
+    }
+
+    /**
+     * Writes a {@link CharSequence} UTF-8 encoded.
+     */
+    private void putUtf8(CharSequence s) throws IOException {
+        int len = s.length();
+        int ix = 0;
+        while (ix < len) {
+            if (buffer.length - pos < 4) flushBuffer();
+            int max = buffer.length - 4;    // room for the longest sequence
+
+            while (ix < len && pos <= max) {
+                char c = s.charAt(ix++);
+                if (c < 0x80) {
+                    buffer[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[pos++] = (byte) (0xC0 | (c >> 6));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && ix < len
+                                    && Character.isLowSurrogate(s.charAt(ix))) {
+                        int cp = Character.toCodePoint(c, s.charAt(ix++));
+                        buffer[pos++] = (byte) (0xF0 | (cp >> 18));
+                        buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        buffer[pos++] = (byte) (0x80 | (cp & 0x3F));
+                    } else {
+                        buffer[pos++] = '?';
+                    }
+                } else {
+                    buffer[pos++] = (byte) (0xE0 | (c >> 12));
+                    buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a string that only contains ASCII chars.
+     */
+    private void putAscii(String s) throws IOException {
+        for (int ix = 0, len = s.length(); ix < len; ix++) {
+            put(s.charAt(ix));
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (pos == buffer.length) flushBuffer();
+        buffer[pos++] = (byte) c;
+    }
+
+    private void put(char c1, char c2) throws IOException {
+        if (pos + 2 > buffer.length) flushBuffer();
+        buffer[pos++] = (byte) c1;
+        buffer[pos++] = (byte) c2;
+    }
+
+    private void putBytes(byte[] src, int offset, int count) throws IOException {
+        if (pos + count > buffer.length) flushBuffer();
+        System.arraycopy(src, offset, buffer, pos, count);
+        pos += count;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            if (out != null) {
+                out.write(buffer, 0, pos);
+            } else if (target != null) {
+                target.put(buffer, 0, pos);
+            } else {
+                count += pos;
+            }
+            pos = 0;
+        }
+    }
+
+}
@@ -0,0 +1,713 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PhpDeserializer reads data that was written by PHP's <code>serialize()</code> function
+ * or by {@link PhpSerializer}.
+ * <p>
+ * Integers, doubles, booleans, strings, {@code null}, arrays, objects and references
+ * ({@code r:} and {@code R:}) are supported.
+ * The data is read incrementally through an internal buffer. Since the PHP format gives
+ * the length of a string in bytes, strings are read by a single bulk copy and decoded
+ * afterwards. If a {@link Reader} is used as source, it is encoded to bytes again, so
+ * the string lengths are evaluated correctly.
+ * <p>
+ * {@link #deserialize()} returns the data as Java objects. For very large data, the
+ * data can be streamed to a {@link Handler} by {@link #parse(Handler)} instead, so only
+ * the current value is kept in memory.
+ * <p>
+ * Untrusted data should be read with limits. {@link #setMaxStringLength(int)} limits
+ * the length of strings, and {@link #setMaxDepth(int)} limits the nesting depth of
+ * arrays and objects. Strings are read in chunks, so a forged string length does not
+ * allocate memory before the data has actually arrived.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class PhpDeserializer implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int DEFAULT_MAX_DEPTH = 512;
+
+    private final InputStream in;
+    private final Reader reader;
+    private final Charset charset;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos = 0;             // Position of the next byte in the buffer
+    private int limit = 0;           // Number of bytes in the buffer
+    private long offset = 0;         // Stream offset of the buffer start
+
+    private CharsetEncoder encoder;  // Encoder for Reader sources
+    private CharBuffer chars;        // Chars read from the Reader
+    private boolean eof = false;     // Reader has reached its end
+    private boolean flushed = false; // Encoder has been flushed
+
+    private int maxStringLength = Integer.MAX_VALUE;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+
+    /**
+     * A Handler receives the values of a serialized PHP data structure, like a SAX
+     * handler.
+     * <p>
+     * The content of arrays and objects is passed between the start and end events.
+     * Keys and values are alternating. Array keys are passed to {@link #intValue(long)}
+     * or {@link #stringValue(String)}, object property names are passed to
+     * {@link #stringValue(String)}.
+     */
+    public interface Handler {
+
+        /**
+         * An integer value.
+         *
+         * @param value
+         *            Value
+         */
+        void intValue(long value) throws IOException;
+
+        /**
+         * A double value.
+         *
+         * @param value
+         *            Value
+         */
+        void doubleValue(double value) throws IOException;
+
+        /**
+         * A boolean value.
+         *
+         * @param value
+         *            Value
+         */
+        void booleanValue(boolean value) throws IOException;
+
+        /**
+         * A string value.
+         *
+         * @param value
+         *            Value
+         */
+        void stringValue(String value) throws IOException;
+
+        /**
+         * A {@code null} value.
+         */
+        void nullValue() throws IOException;
+
+        /**
+         * Start of an array.
+         *
+         * @param size
+         *            Number of array elements
+         */
+        void startArray(int size) throws IOException;
+
+        /**
+         * End of an array.
+         */
+        void endArray() throws IOException;
+
+        /**
+         * Start of an object.
+         *
+         * @param className
+         *            PHP class name of the object
+         * @param size
+         *            Number of properties
+         */
+        void startObject(String className, int size) throws IOException;
+
+        /**
+         * End of an object.
+         */
+        void endObject() throws IOException;
+
+        /**
+         * A reference to a value that was passed before. Values are numbered from 1, in
+         * the order they were passed. Keys, property names and PHP references are not
+         * counted, but object references are.
+         *
+         * @param slot
+         *            Number of the value that is referred to
+         * @param phpReference
+         *            {@code true}: PHP reference ({@code R:}), {@code false}: object
+         *            reference ({@code r:})
+         * @since R20
+         */
+        void reference(int slot, boolean phpReference) throws IOException;
+    }
+
+    /**
+     * Creates a new PhpDeserializer for UTF-8 encoded data.
+     *
+     * @param in
+     *            {@link InputStream} to read from
+     */
+    public PhpDeserializer(InputStream in) {
+        this(in, Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Creates a new PhpDeserializer.
+     *
+     * @param in
+     *            {@link InputStream} to read from
+     * @param charset
+     *            {@link Charset} of the strings
+     */
+    public PhpDeserializer(InputStream in, Charset charset) {
+        this.in = in;
+        this.reader = null;
+        this.charset = charset;
+    }
+
+    /**
+     * Creates a new PhpDeserializer that reads from a {@link Reader}. String lengths are
+     * evaluated as UTF-8 byte lengths.
+     *
+     * @param r
+     *            {@link Reader} to read from
+     */
+    public PhpDeserializer(Reader r) {
+        this.in = null;
+        this.reader = r;
+        this.charset = Charset.forName("UTF-8");
+        this.encoder = charset.newEncoder();
+        this.chars = CharBuffer.allocate(BUFFER_SIZE);
+        this.chars.flip();
+    }
+
+    /**
+     * Sets the maximum length of a string, in bytes. Longer strings are rejected with an
+     * {@link IOException}. Defaults to unlimited.
+     *
+     * @param maxStringLength
+     *            Maximum string length, in bytes
+     */
+    public void setMaxStringLength(int maxStringLength) {
+        if (maxStringLength < 0)
+            throw new IllegalArgumentException("invalid maximum string length");
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * Sets the maximum nesting depth of arrays and objects. Deeper structures are
+     * rejected with an {@link IOException}. Defaults to 512.
+     *
+     * @param maxDepth
+     *            Maximum nesting depth
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) throw new IllegalArgumentException("invalid maximum depth");
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Reads the next value. Integers are returned as {@link Long}, doubles as
+     * {@link Double}, booleans as {@link Boolean}, strings as {@link String}, and
+     * objects as {@link PhpObject}. Arrays with the keys 0, 1, 2... in that order are
+     * returned as {@link List}, all other arrays as {@link Map} keeping the order of
+     * the elements. Array keys are either {@link Long} or {@link String}.
+     * <p>
+     * References are resolved to the value they refer to, so shared and recursive
+     * structures are restored with the same object identities. An array that is
+     * referenced from within itself is always returned as {@link Map}.
+     *
+     * @return Value that was read, may be {@code null}
+     * @throws EOFException
+     *             if there is no more value
+     * @throws IOException
+     *             if the data could not be read or is invalid
+     */
+    public Object deserialize() throws IOException {
+        Builder builder = new Builder();
+        parse(builder);
+        return builder.result;
+    }
+
+    /**
+     * Reads the next value, and passes it to a {@link Handler}.
+     *
+     * @param handler
+     *            {@link Handler} that receives the value
+     * @throws EOFException
+     *             if there is no more value
+     * @throws IOException
+     *             if the data could not be read or is invalid
+     */
+    public void parse(Handler handler) throws IOException {
+        parse(handler, 0);
+    }
+
+    /**
+     * Closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (in != null) in.close();
+        if (reader != null) reader.close();
+    }
+
+    /**
+     * Reads the next value, and passes it to a {@link Handler}.
+     *
+     * @param handler
+     *            {@link Handler} that receives the value
+     * @param depth
+     *            Number of arrays and objects the value is nested in
+     */
+    private void parse(Handler handler, int depth) throws IOException {
+        int type = read();
+        if (type < 0) throw new EOFException("no more values");
+
+        switch (type) {
+            case 'N':
+                expect(';');
+                handler.nullValue();
+                break;
+
+            case 'b':
+                expect(':');
+                long b = readLong(';');
+                if (b != 0 && b != 1) throw error("bad boolean value " + b);
+                handler.booleanValue(b == 1);
+                break;
+
+            case 'i':
+                expect(':');
+                handler.intValue(readLong(';'));
+                break;
+
+            case 'd':
+                expect(':');
+                handler.doubleValue(readDouble());
+                break;
+
+            case 's':
+                expect(':');
+                handler.stringValue(readString());
+                expect(';');
+                break;
+
+            case 'a': {
+                checkDepth(depth);
+                expect(':');
+                int size = readSize();
+                expect('{');
+                handler.startArray(size);
+                for (int ix = 0; ix < size; ix++) {
+                    parseKey(handler);
+                    parse(handler, depth + 1);
+                }
+                expect('}');
+                handler.endArray();
+                break;
+            }
+
+            case 'O': {
+                checkDepth(depth);
+                expect(':');
+                String className = readString();
+                expect(':');
+                int size = readSize();
+                expect('{');
+                handler.startObject(className, size);
+                for (int ix = 0; ix < size; ix++) {
+                    parseKey(handler);
+                    parse(handler, depth + 1);
+                }
+                expect('}');
+                handler.endObject();
+                break;
+            }
+
+            case 'r':
+            case 'R': {
+                expect(':');
+                long slot = readLong(';');
+                if (slot < 1 || slot > Integer.MAX_VALUE)
+                    throw error("bad reference " + slot);
+                handler.reference((int) slot, type == 'R');
+                break;
+            }
+
+            default:
+                throw error("unsupported type '" + (char) type + "'");
+        }
+    }
+
+    /**
+     * Makes sure that another array or object does not exceed the maximum depth.
+     */
+    private void checkDepth(int depth) throws IOException {
+        if (depth >= maxDepth)
+            throw error("nesting too deep, maximum depth is " + maxDepth);
+    }
+
+    /**
+     * Parses an array key or property name, which must be an integer or a string.
+     */
+    private void parseKey(Handler handler) throws IOException {
+        int type = read();
+        expect(':');
+        if (type == 'i') {
+            handler.intValue(readLong(';'));
+        } else if (type == 's') {
+            handler.stringValue(readString());
+            expect(';');
+        } else {
+            throw error("bad array key type");
+        }
+    }
+
+    /**
+     * Reads a string of the form {@code <length>:"<bytes>"}.
+     */
+    private String readString() throws IOException {
+        int len = readSize();
+        if (len > maxStringLength)
+            throw error("string length " + len + " exceeds maximum of " + maxStringLength);
+        expect('"');
+
+        String result;
+        if (len <= limit - pos) {
+            // --- Fast path: the string is completely in the buffer ---
+            result = new String(buffer, pos, len, charset);
+            pos += len;
+        } else {
+            // --- Grow the array as data arrives, do not trust the length in advance ---
+            byte[] bytes = new byte[Math.min(len, BUFFER_SIZE * 8)];
+            int copied = 0;
+            while (copied < len) {
+                if (pos >= limit && !fill()) throw new EOFException("string is truncated");
+                if (copied == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, (int) Math.min((long) copied * 2, len));
+                }
+                int count = Math.min(bytes.length - copied, limit - pos);
+                System.arraycopy(buffer, pos, bytes, copied, count);
+                pos += count;
+                copied += count;
+            }
+            result = new String(bytes, charset);
+        }
+
+        expect('"');
+        return result;
+    }
+
+    /**
+     * Reads a non-negative size, terminated by ':'.
+     */
+    private int readSize() throws IOException {
+        long size = readLong(':');
+        if (size < 0 || size > Integer.MAX_VALUE) throw error("bad size " + size);
+        return (int) size;
+    }
+
+    /**
+     * Reads a decimal integer, up to the terminator char.
+     */
+    private long readLong(char terminator) throws IOException {
+        int c = read();
+        boolean negative = (c == '-');
+        if (negative || c == '+') c = read();
+        if (c < '0' || c > '9') throw error("number expected");
+
+        // --- Accumulate negative, so Long.MIN_VALUE can be read too ---
+        long result = 0;
+        do {
+            int digit = c - '0';
+            if (result < (Long.MIN_VALUE + digit) / 10) throw error("number overflow");
+            result = result * 10 - digit;
+            c = read();
+        } while (c >= '0' && c <= '9');
+
+        if (c != terminator) throw error("'" + terminator + "' expected");
+
+        if (!negative) {
+            if (result == Long.MIN_VALUE) throw error("number overflow");
+            result = -result;
+        }
+        return result;
+    }
+
+    /**
+     * Reads a double value, up to the terminating ';'.
+     */
+    private double readDouble() throws IOException {
+        StringBuilder sb = new StringBuilder(24);
+        int c;
+        while ((c = read()) != ';') {
+            if (c < 0 || sb.length() > 64) throw error("bad double value");
+            sb.append((char) c);
+        }
+
+        String value = sb.toString();
+        if ("INF".equals(value)) return Double.POSITIVE_INFINITY;
+        if ("-INF".equals(value)) return Double.NEGATIVE_INFINITY;
+        if ("NAN".equals(value)) return Double.NaN;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            throw error("bad double value " + value);
+        }
+    }
+
+    private void expect(char c) throws IOException {
+        if (read() != c) throw error("'" + c + "' expected");
+    }
+
+    private IOException error(String msg) {
+        return new IOException(msg + " at offset " + (offset + pos - 1));
+    }
+
+    /**
+     * Reads a single byte.
+     *
+     * @return Byte, or -1 if the end of the stream has been reached
+     */
+    private int read() throws IOException {
+        if (pos >= limit && !fill()) return -1;
+        return buffer[pos++] & 0xFF;
+    }
+
+    /**
+     * Fills the buffer.
+     *
+     * @return {@code true} if there are more bytes, {@code false} if the end of the
+     *         stream has been reached
+     */
+    private boolean fill() throws IOException {
+        int len;
+        do {
+            len = (in != null ? in.read(buffer, 0, buffer.length) : encode());
+        } while (len == 0);
+
+        if (len < 0) return false;
+
+        offset += limit;
+        pos = 0;
+        limit = len;
+        return true;
+    }
+
+    /**
+     * Reads chars from the {@link Reader}, and encodes them into the buffer.
+     *
+     * @return Number of bytes in the buffer, or -1 if the end of the stream has been
+     *         reached
+     */
+    private int encode() throws IOException {
+        if (flushed) return -1;
+
+        ByteBuffer out = ByteBuffer.wrap(buffer);
+        while (true) {
+            CoderResult cr = encoder.encode(chars, out, eof);
+            if (cr.isError()) cr.throwException();
+            if (out.position() > 0) return out.position();
+
+            if (eof) {
+                encoder.flush(out);
+                flushed = true;
+                return out.position() > 0 ? out.position() : -1;
+            }
+
+            chars.compact();
+            if (reader.read(chars) < 0) eof = true;
+            chars.flip();
+        }
+    }
+
+    /**
+     * A {@link Handler} that builds Java objects.
+     */
+    private static class Builder implements Handler {
+        private final List<Frame> stack = new ArrayList<Frame>();
+        private final List<Object> slots = new ArrayList<Object>();
+        private Object result;
+
+        @Override
+        public void intValue(long value) {
+            add(value, true);
+        }
+
+        @Override
+        public void doubleValue(double value) {
+            add(value, true);
+        }
+
+        @Override
+        public void booleanValue(boolean value) {
+            add(value, true);
+        }
+
+        @Override
+        public void stringValue(String value) {
+            add(value, true);
+        }
+
+        @Override
+        public void nullValue() {
+            add(null, true);
+        }
+
+        @Override
+        public void startArray(int size) {
+            // --- Do not trust the size, it is only a hint ---
+            int capacity = Math.min(size, BUFFER_SIZE) * 4 / 3 + 1;
+            push(new LinkedHashMap<Object, Object>(Math.max(capacity, 16)));
+        }
+
+        @Override
+        public void endArray() {
+            Frame frame = pop();
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> map = (Map<Object, Object>) frame.container;
+
+            // --- Convert to a list if the keys are 0, 1, 2... ---
+            // (unless the map was referenced, since it must keep its identity then)
+            if (!frame.referenced) {
+                long expected = 0;
+                boolean list = true;
+                for (Object key : map.keySet()) {
+                    if (!(key instanceof Long) || ((Long) key) != expected++) {
+                        list = false;
+                        break;
+                    }
+                }
+                if (list) {
+                    List<Object> values = new ArrayList<Object>(map.values());
+                    slots.set(frame.slot, values);
+                    add(values, false);
+                    return;
+                }
+            }
+            add(map, false);
+        }
+
+        @Override
+        public void startObject(String className, int size) {
+            push(new PhpObject(className));
+        }
+
+        @Override
+        public void endObject() {
+            add(pop().container, false);
+        }
+
+        @Override
+        public void reference(int slot, boolean phpReference) throws IOException {
+            if (slot > slots.size()) throw new IOException("bad reference " + slot);
+            Object value = slots.get(slot - 1);
+
+            // --- Mark containers that are referenced while they are still open ---
+            for (Frame frame : stack) {
+                if (frame.container == value) frame.referenced = true;
+            }
+
+            add(value, !phpReference);
+        }
+
+        private void push(Object container) {
+            Frame frame = new Frame();
+            frame.container = container;
+            frame.slot = slots.size();
+            slots.add(container);
+            stack.add(frame);
+        }
+
+        private Frame pop() {
+            return stack.remove(stack.size() - 1);
+        }
+
+        /**
+         * Adds a value to the current container. Keys and values alternate.
+         *
+         * @param value
+         *            Value to add
+         * @param slot
+         *            {@code true} if the value occupies a new slot for references
+         */
+        @SuppressWarnings("unchecked")
+        private void add(Object value, boolean slot) {
+            int top = stack.size() - 1;
+            if (top < 0) {
+                if (slot) slots.add(value);
+                result = value;
+                return;
+            }
+
+            Frame frame = stack.get(top);
+            if (frame.key == null) {
+                frame.key = value;
+                return;
+            }
+
+            if (slot) slots.add(value);
+            Object key = frame.key;
+            frame.key = null;
+
+            if (frame.container instanceof PhpObject) {
+                ((PhpObject) frame.container).getProperties().put(propertyName(key), value);
+            } else {
+                ((Map<Object, Object>) frame.container).put(key, value);
+            }
+        }
+
+        /**
+         * Removes the visibility prefix of private ("\0Class\0name") and protected
+         * ("\0*\0name") property names.
+         */
+        private static String propertyName(Object key) {
+            String name = key.toString();
+            if (!name.isEmpty() && name.charAt(0) == '\0') {
+                int sep = name.indexOf('\0', 1);
+                if (sep >= 0) name = name.substring(sep + 1);
+            }
+            return name;
+        }
+    }
+
+    /**
+     * An array or object that is currently being built.
+     */
+    private static class Frame {
+        private Object container;
+        private Object key;             // Current key, null if a key is expected
+        private int slot;               // Slot index of the container
+        private boolean referenced;     // Container was referenced while being built
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A PhpObject represents a PHP object, with its class name and its properties. It is
+ * the result of unserializing a PHP object by {@link PhpDeserializer}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class PhpObject {
+    private final String className;
+    private final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+
+    /**
+     * Creates a new PhpObject without properties.
+     *
+     * @param className
+     *            PHP class name
+     */
+    public PhpObject(String className) {
+        if (className == null) throw new NullPointerException("className must not be null");
+        this.className = className;
+    }
+
+    /**
+     * Gets the PHP class name.
+     *
+     * @return Class name
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Gets the properties of this object. The map can be modified, and keeps the order
+     * of the properties.
+     *
+     * @return Map of property names and values
+     */
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Gets a property value.
+     *
+     * @param name
+     *            Property name
+     * @return Property value, or {@code null} if there is no such property
+     */
+    public Object get(String name) {
+        return properties.get(name);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !(obj instanceof PhpObject)) return false;
+        PhpObject cmp = (PhpObject) obj;
+        return className.equals(cmp.className) && properties.equals(cmp.properties);
+    }
+
+    @Override
+    public int hashCode() {
+        return className.hashCode() ^ properties.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return className + properties;
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.IOException;
+
+/**
+ * A PhpOutput writes values in the format of PHP's <code>serialize()</code> function. It
+ * is implemented by {@link PhpSerializer} and {@link PhpByteSerializer}, and is used by
+ * {@link PhpTypeSerializer} implementations to write their objects.
+ * <p>
+ * Arrays and objects are written by a start call, followed by alternating keys and
+ * values, and an end call. The number of key/value pairs must match the given size.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public interface PhpOutput {
+
+    /**
+     * Writes a long.
+     *
+     * @param i
+     *            Long value to write
+     */
+    void serialize(long i) throws IOException;
+
+    /**
+     * Writes a double.
+     *
+     * @param d
+     *            Double value to write
+     */
+    void serialize(double d) throws IOException;
+
+    /**
+     * Writes a boolean.
+     *
+     * @param b
+     *            Boolean value to write
+     */
+    void serialize(boolean b) throws IOException;
+
+    /**
+     * Writes a {@link String}.
+     *
+     * @param s
+     *            {@link String} to write, may be {@code null}
+     */
+    void serialize(String s) throws IOException;
+
+    /**
+     * Writes any object, using the serializer's rules.
+     *
+     * @param o
+     *            Object to write, may be {@code null}
+     */
+    void serialize(Object o) throws IOException;
+
+    /**
+     * Writes a mere null pointer.
+     */
+    void serializeNull() throws IOException;
+
+    /**
+     * Starts an array.
+     *
+     * @param size
+     *            Number of key/value pairs that will follow
+     */
+    void startArray(int size) throws IOException;
+
+    /**
+     * Ends an array.
+     */
+    void endArray() throws IOException;
+
+    /**
+     * Starts an object. The keys must be the property names.
+     *
+     * @param className
+     *            PHP class name
+     * @param size
+     *            Number of property name/value pairs that will follow
+     */
+    void startObject(String className, int size) throws IOException;
+
+    /**
+     * Ends an object.
+     */
+    void endObject() throws IOException;
+
+}
@@ -0,0 +1,120 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the values written by a PHP serializer, so repeated objects can be
+ * written as back-references.
+ * <p>
+ * PHP numbers all values of a serialized structure, starting from 1. Array keys and
+ * property names are not counted. Since keys and values alternate within arrays and
+ * objects, the tracker keeps a stack that tells whether the next write is a key or a
+ * value. Each write must be announced by {@link #value(int)} or {@link #reference()}.
+ * <p>
+ * Objects written as PHP object are referred to by {@code r:}, which is a value of its
+ * own. Arrays are referred to by {@code R:}, which does not count as value.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+final class PhpReferenceTracker {
+    static final int SCALAR = 0;
+    static final int ARRAY = 1;
+    static final int OBJECT = 2;
+
+    private final Map<Object, Integer> slots = new IdentityHashMap<Object, Integer>();
+    private boolean[] keyExpected = new boolean[16];
+    private int depth = 0;
+    private int slot = 0;
+    private Object pending = null;
+
+    /**
+     * Looks up an object that is about to be written. If it has been written before,
+     * its reference is returned. Otherwise it is remembered, and will be registered by
+     * the next {@link #value(int)} call of an array or object.
+     *
+     * @param o
+     *            Object to be written
+     * @return Reference, positive for an array slot, negative for an object slot, 0 if
+     *         the object has not been written yet
+     */
+    int lookup(Object o) {
+        if (depth == 0) slots.clear();      // a new top level value starts
+
+        Integer ref = slots.get(o);
+        if (ref != null) return ref;
+
+        pending = o;
+        return 0;
+    }
+
+    /**
+     * Announces that a value is going to be written.
+     *
+     * @param type
+     *            {@link #SCALAR}, {@link #ARRAY} or {@link #OBJECT}
+     */
+    void value(int type) {
+        if (depth > 0) {
+            if (keyExpected[depth - 1]) {
+                keyExpected[depth - 1] = false;     // keys do not count
+                return;
+            }
+            keyExpected[depth - 1] = true;
+        } else {
+            slot = 0;
+        }
+
+        slot++;
+
+        if (pending != null) {
+            if (type != SCALAR) slots.put(pending, type == OBJECT ? -slot : slot);
+            pending = null;
+        }
+
+        if (type != SCALAR) {
+            if (depth == keyExpected.length) {
+                keyExpected = Arrays.copyOf(keyExpected, depth * 2);
+            }
+            keyExpected[depth++] = true;
+        }
+    }
+
+    /**
+     * Announces that an {@code R:} reference is going to be written. It does not count
+     * as a value.
+     */
+    void reference() {
+        pending = null;
+        if (depth > 0) keyExpected[depth - 1] = true;
+    }
+
+    /**
+     * Announces the end of an array or object.
+     */
+    void end() {
+        if (depth > 0) depth--;
+    }
+
+}
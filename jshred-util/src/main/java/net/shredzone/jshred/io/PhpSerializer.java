@@ -21,11 +21,16 @@ package net.shredzone.jshred.io;
 
 import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -43,12 +48,24 @@ import java.util.Map;
  * best case, it's just the {@code toString()} result that is being serialized).
  * <p>
  * Recursive references to the same object (i.e. an array with an element referring to
- * that array) are not supported yet and will lead to a stack overflow.
+ * that array) lead to a stack overflow, unless {@link #setTrackReferences(boolean)} is
+ * enabled. In that mode, objects that have been serialized before are written as PHP
+ * references, which also reduces the size of structures with shared elements.
+ * <p>
+ * String lengths are written as number of chars. PHP expects the number of bytes, so
+ * strings containing non-ASCII chars might not be read correctly by PHP. Use
+ * {@link PhpByteSerializer} to write UTF-8 encoded output with correct string lengths.
  *
  * @author Richard "Shred" Körber
  * @since R14
  */
-public class PhpSerializer extends FilterWriter {
+public class PhpSerializer extends FilterWriter implements PhpOutput {
+    private static final int DEFAULT_SPOOL_THRESHOLD = 1024 * 1024;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private PhpTypeRegistry registry = null;
+    private PhpReferenceTracker tracker = null;
+    private int spoolThreshold = DEFAULT_SPOOL_THRESHOLD;
 
     /**
      * Creates a new PhpSerializer.
@@ -60,6 +77,73 @@ public class PhpSerializer extends FilterWriter {
         super(w);
     }
 
+    /**
+     * Sets a {@link PhpTypeRegistry} that is used for serializing objects that are not
+     * of a basic type.
+     *
+     * @param registry
+     *            {@link PhpTypeRegistry}, or {@code null} for none
+     * @since R20
+     */
+    public void setRegistry(PhpTypeRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Gets the {@link PhpTypeRegistry} that is used.
+     *
+     * @return {@link PhpTypeRegistry}, or {@code null} if none is set
+     * @since R20
+     */
+    public PhpTypeRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Enables tracking of references. If enabled, collections, maps, arrays and objects
+     * that are serialized by a {@link PhpTypeRegistry} are only written once per
+     * serialized structure. On each further occurrence, a reference to the first
+     * occurrence is written instead. Objects are compared by identity. This also
+     * permits circular references.
+     * <p>
+     * Java arrays, collections and maps are referred to by PHP references
+     * ({@code R:}), so on PHP side, all occurrences are references to the same array.
+     * PHP objects are referred to by object references ({@code r:}).
+     *
+     * @param track
+     *            {@code true} to enable tracking of references. Defaults to
+     *            {@code false}.
+     * @since R20
+     */
+    public void setTrackReferences(boolean track) {
+        tracker = (track ? new PhpReferenceTracker() : null);
+    }
+
+    /**
+     * Checks if references are tracked.
+     *
+     * @return {@code true} if references are tracked
+     * @since R20
+     */
+    public boolean isTrackReferences() {
+        return tracker != null;
+    }
+
+    /**
+     * Sets the number of bytes of an {@link Iterator} array that are kept in memory.
+     * Larger arrays are spooled to a temporary file, so arrays of any size can be
+     * serialized with a bounded heap. Defaults to 1 MB.
+     *
+     * @param spoolThreshold
+     *            Spool threshold, in bytes
+     * @since R20
+     */
+    public void setSpoolThreshold(int spoolThreshold) {
+        if (spoolThreshold < 0)
+            throw new IllegalArgumentException("invalid spool threshold");
+        this.spoolThreshold = spoolThreshold;
+    }
+
     /**
      * Writes an integer.
      *
@@ -67,6 +151,7 @@ public class PhpSerializer extends FilterWriter {
      *            Integer value to write
      */
     public void serialize(int i) throws IOException {
+        track(PhpReferenceTracker.SCALAR);
         write("i:");
         write(String.valueOf(i));
         write(";");
@@ -79,6 +164,7 @@ public class PhpSerializer extends FilterWriter {
      *            Long value to write
      */
     public void serialize(long i) throws IOException {
+        track(PhpReferenceTracker.SCALAR);
         write("i:");
         write(String.valueOf(i));
         write(";");
@@ -91,6 +177,7 @@ public class PhpSerializer extends FilterWriter {
      *            Boolean value to write
      */
     public void serialize(boolean b) throws IOException {
+        track(PhpReferenceTracker.SCALAR);
         write("b:");
         write(b ? "1" : "0");
         write(";");
@@ -103,6 +190,7 @@ public class PhpSerializer extends FilterWriter {
      *            Double value to write
      */
     public void serialize(double d) throws IOException {
+        track(PhpReferenceTracker.SCALAR);
         write("d:");
         write(String.valueOf(d));
         write(";");
@@ -162,6 +250,7 @@ public class PhpSerializer extends FilterWriter {
         if (s == null) {
             serializeNull();
         } else {
+            track(PhpReferenceTracker.SCALAR);
             write("s:");
             write(String.valueOf(s.length()));
             write(":\"");
@@ -182,10 +271,12 @@ public class PhpSerializer extends FilterWriter {
         if (n == null) {
             serializeNull();
         } else if (n instanceof BigDecimal) {
+            track(PhpReferenceTracker.SCALAR);
             write("d:");
             write(((BigDecimal) n).toString());
             write(";");
         } else if (n instanceof BigInteger) {
+            track(PhpReferenceTracker.SCALAR);
             write("i:");
             write(((BigInteger) n).toString());
             write(";");
@@ -199,8 +290,8 @@ public class PhpSerializer extends FilterWriter {
     /**
      * Serializes an array. Each element of that array is serialized.
      * <p>
-     * Note that circular references cannot currently be serialized (e.g. the array itself
-     * must not be an element of that array) and will lead to a stack overflow.
+     * Note that circular references (e.g. the array itself is an element of that array)
+     * will lead to a stack overflow, unless references are tracked.
      *
      * @param a
      *            Array to write, may be {@code null}
@@ -208,8 +299,8 @@ public class PhpSerializer extends FilterWriter {
     public void serialize(Object[] a) throws IOException {
         if (a == null) {
             serializeNull();
-        } else {
-            serialize(Arrays.asList(a));
+        } else if (!writeReference(a)) {
+            writeElements(Arrays.asList(a));
         }
     }
 
@@ -221,7 +312,8 @@ public class PhpSerializer extends FilterWriter {
      * The {@link Collection} may contain {@code null} values and also nested arrays,
      * collections or maps.
      * <p>
-     * Note that the {@link Collection} must not contain circular references.
+     * Note that the {@link Collection} must not contain circular references, unless
+     * references are tracked.
      *
      * @param c
      *            {@link Collection} to write, may be {@code null}
@@ -229,16 +321,49 @@ public class PhpSerializer extends FilterWriter {
     public void serialize(Collection<?> c) throws IOException {
         if (c == null) {
             serializeNull();
-        } else {
-            write("a:");
-            write(String.valueOf(c.size()));
-            write(":{");
-            long cnt = 0;
-            for (Object o : c) {
-                serialize(cnt++);
-                serialize(o);
-            }
-            write("}");
+        } else if (!writeReference(c)) {
+            writeElements(c);
+        }
+    }
+
+    /**
+     * Serializes an {@link Iterable}. On PHP side, an index array is created, with the
+     * index counting from 0. If the {@link Iterable} is a {@link Collection}, it is
+     * serialized like a {@link Collection}. Otherwise the number of elements is not known
+     * in advance, and the elements are serialized like an {@link Iterator}.
+     *
+     * @param it
+     *            {@link Iterable} to write, may be {@code null}
+     * @since R20
+     */
+    public void serialize(Iterable<?> it) throws IOException {
+        if (it instanceof Collection<?>) {
+            serialize((Collection<?>) it);
+        } else if (it == null) {
+            serializeNull();
+        } else if (!writeReference(it)) {
+            writeElements(it.iterator());
+        }
+    }
+
+    /**
+     * Serializes the remaining elements of an {@link Iterator}, like a database cursor.
+     * On PHP side, an index array is created, with the index counting from 0.
+     * <p>
+     * PHP expects the number of elements in front of the array. Since it is not known in
+     * advance, the elements are serialized into a spool first, which is moved to a
+     * temporary file if it exceeds the spool threshold. The elements are then copied to
+     * the output.
+     *
+     * @param it
+     *            {@link Iterator} to write, may be {@code null}
+     * @since R20
+     */
+    public void serialize(Iterator<?> it) throws IOException {
+        if (it == null) {
+            serializeNull();
+        } else if (!writeReference(it)) {
+            writeElements(it);
         }
     }
 
@@ -255,7 +380,8 @@ public class PhpSerializer extends FilterWriter {
      * The map's values may contain {@code null} and also nested arrays, collections or
      * maps.
      * <p>
-     * Note that the map must not contain circular references.
+     * Note that the map must not contain circular references, unless references are
+     * tracked.
      *
      * @param m
      *            {@link Map} to write, may be {@code null}
@@ -263,51 +389,52 @@ public class PhpSerializer extends FilterWriter {
     public void serialize(Map<?, ?> m) throws IOException {
         if (m == null) {
             serializeNull();
-        } else {
-            write("a:");
-            write(String.valueOf(m.size()));
-            write(":{");
+        } else if (!writeReference(m)) {
+            startArray(m.size());
             for (Object key : m.keySet()) {
                 Object value = m.get(key);
 
                 // Key needs a special treatment, since it must be serialized
                 // either as integer or as string.
-                if (key == null) {
-                    write("s:0:\"\";");
-                } else if (key instanceof Boolean) {
-                    write("i:");
-                    write(((Boolean) key).booleanValue() ? "1" : "0");
-                    write(";");
-                } else if (key instanceof Number) {
-                    if (key instanceof Float || key instanceof Double
-                        || key instanceof BigDecimal) {
-                        serialize(key.toString());
-                    } else {
-                        write("i:");
-                        write(key.toString());
-                        write(";");
-                    }
-                } else {
-                    serialize(key.toString());
-                }
+                serializeKey(key);
 
                 // Just serialize the value though
                 serialize(value);
             }
-            write("}");
+            endArray();
+        }
+    }
+
+    /**
+     * Serializes a {@link PhpObject}. On PHP side, an object of the given class is
+     * created.
+     *
+     * @param o
+     *            {@link PhpObject} to write, may be {@code null}
+     * @since R20
+     */
+    public void serialize(PhpObject o) throws IOException {
+        if (o == null) {
+            serializeNull();
+        } else if (!writeReference(o)) {
+            startObject(o.getClassName(), o.getProperties().size());
+            for (Map.Entry<String, Object> entry : o.getProperties().entrySet()) {
+                serialize(entry.getKey());
+                serialize(entry.getValue());
+            }
+            endObject();
         }
     }
 
     /**
      * Serializes an {@link Object}. If the object is found to be an instance of
      * {@link String}, {@link Character}, {@link Boolean}, {@link Number},
-     * {@link Collection} or {@link Map}, or if the object is an array, the appropriate
-     * {@code serialize()} method is used. In all other cases, the object's
-     * {@code toString()} result is serialized as a string.
-     * <p>
-     * Note that in future versions, Serializable objects may be serialized into PHP
-     * objects. For now, try to avoid to pass Serializable objects unless they are one of
-     * the basic types.
+     * {@link Collection}, {@link Map}, {@link PhpObject}, {@link Iterable} or
+     * {@link Iterator}, or if the object is an array, the appropriate
+     * {@code serialize()} method is used. Otherwise, if a {@link PhpTypeRegistry} is set
+     * and has a {@link PhpTypeSerializer} for the object's class, that serializer is
+     * used. In all other cases, the object's {@code toString()} result is serialized as
+     * a string.
      *
      * @param o
      *            Object to write, may be {@code null}
@@ -315,6 +442,8 @@ public class PhpSerializer extends FilterWriter {
     public void serialize(Object o) throws IOException {
         if (o == null) {
             serializeNull();
+        } else if (o instanceof String) {
+            serialize((String) o);
         } else if (o instanceof Number) {
             serialize((Number) o);
         } else if (o instanceof Collection<?>) {
@@ -327,8 +456,20 @@ public class PhpSerializer extends FilterWriter {
             serialize(((Boolean) o).booleanValue());
         } else if (o instanceof Character) {
             serialize(((Character) o).charValue());
+        } else if (o instanceof PhpObject) {
+            serialize((PhpObject) o);
+        } else if (o instanceof Iterable<?>) {
+            serialize((Iterable<?>) o);
+        } else if (o instanceof Iterator<?>) {
+            serialize((Iterator<?>) o);
         } else {
-            serialize(o.toString());
+            PhpTypeSerializer<Object> ser = null;
+            if (registry != null) ser = registry.lookup(o.getClass());
+            if (ser != null) {
+                if (!writeReference(o)) ser.serialize(o, this);
+            } else {
+                serialize(o.toString());
+            }
         }
     }
 
@@ -336,7 +477,173 @@ public class PhpSerializer extends FilterWriter {
      * Writes a mere null pointer.
      */
     public void serializeNull() throws IOException {
+        track(PhpReferenceTracker.SCALAR);
         write("N;");
     }
 
+    /**
+     * Starts an array. It must be followed by the given number of key/value pairs, and
+     * {@link #endArray()}.
+     *
+     * @param size
+     *            Number of key/value pairs
+     * @since R20
+     */
+    public void startArray(int size) throws IOException {
+        track(PhpReferenceTracker.ARRAY);
+        write("a:");
+        write(String.valueOf(size));
+        write(":{");
+    }
+
+    /**
+     * Ends an array.
+     *
+     * @since R20
+     */
+    public void endArray() throws IOException {
+        if (tracker != null) tracker.end();
+        write("}");
+    }
+
+    /**
+     * Starts an object. It must be followed by the given number of property name/value
+     * pairs, and {@link #endObject()}.
+     *
+     * @param className
+     *            PHP class name
+     * @param size
+     *            Number of property name/value pairs
+     * @since R20
+     */
+    public void startObject(String className, int size) throws IOException {
+        track(PhpReferenceTracker.OBJECT);
+        write("O:");
+        write(String.valueOf(className.length()));
+        write(":\"");
+        write(className);
+        write("\":");
+        write(String.valueOf(size));
+        write(":{");
+    }
+
+    /**
+     * Ends an object.
+     *
+     * @since R20
+     */
+    public void endObject() throws IOException {
+        if (tracker != null) tracker.end();
+        write("}");
+    }
+
+    /**
+     * Writes the elements of a {@link Collection} as index array.
+     */
+    private void writeElements(Collection<?> c) throws IOException {
+        startArray(c.size());
+        long cnt = 0;
+        for (Object o : c) {
+            serialize(cnt++);
+            serialize(o);
+        }
+        endArray();
+    }
+
+    /**
+     * Writes the remaining elements of an {@link Iterator} as index array. The elements
+     * are spooled first, since their number must be written in front of them.
+     */
+    private void writeElements(Iterator<?> it) throws IOException {
+        track(PhpReferenceTracker.ARRAY);
+
+        try (PhpSpool spool = new PhpSpool(spoolThreshold)) {
+            // --- Serialize the elements into the spool ---
+            PhpSerializer elements = new PhpSerializer(new OutputStreamWriter(spool, UTF8));
+            elements.registry = registry;
+            elements.tracker = tracker;
+            elements.spoolThreshold = spoolThreshold;
+            long cnt = 0;
+            while (it.hasNext()) {
+                elements.serialize(cnt++);
+                elements.serialize(it.next());
+            }
+            elements.flush();
+
+            // --- Write the array, and copy the spooled elements ---
+            write("a:");
+            write(String.valueOf(cnt));
+            write(":{");
+            try (Reader in = new InputStreamReader(spool.openInputStream(), UTF8)) {
+                char[] chars = new char[8192];
+                int len;
+                while ((len = in.read(chars, 0, chars.length)) > 0) {
+                    write(chars, 0, len);
+                }
+            }
+            endArray();
+        }
+    }
+
+    /**
+     * Serializes a map key. It is serialized either as integer or as string.
+     */
+    private void serializeKey(Object key) throws IOException {
+        if (key == null) {
+            track(PhpReferenceTracker.SCALAR);
+            write("s:0:\"\";");
+        } else if (key instanceof Boolean) {
+            track(PhpReferenceTracker.SCALAR);
+            write("i:");
+            write(((Boolean) key).booleanValue() ? "1" : "0");
+            write(";");
+        } else if (key instanceof Number) {
+            if (key instanceof Float || key instanceof Double
+                || key instanceof BigDecimal) {
+                serialize(key.toString());
+            } else {
+                track(PhpReferenceTracker.SCALAR);
+                write("i:");
+                write(key.toString());
+                write(";");
+            }
+        } else {
+            serialize(key.toString());
+        }
+    }
+
+    /**
+     * Writes a reference if references are tracked and the object has been serialized
+     * before.
+     *
+     * @param o
+     *            Object that is about to be serialized
+     * @return {@code true} if a reference was written, {@code false} if the object must
+     *         be serialized
+     */
+    private boolean writeReference(Object o) throws IOException {
+        if (tracker == null) return false;
+
+        int ref = tracker.lookup(o);
+        if (ref > 0) {
+            tracker.reference();
+            write("R:");
+            write(String.valueOf(ref));
+            write(";");
+        } else if (ref < 0) {
+            tracker.value(PhpReferenceTracker.SCALAR);
+            write("r:");
+            write(String.valueOf(-ref));
+            write(";");
+        }
+        return ref != 0;
+    }
+
+    /**
+     * Announces a value to the reference tracker, if references are tracked.
+     */
+    private void track(int type) {
+        if (tracker != null) tracker.value(type);
+    }
+
 }
@@ -0,0 +1,126 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A PhpSpool temporarily stores serialized data whose size is not known in advance. The
+ * data is kept in memory up to a threshold. Beyond that, it is moved to a temporary
+ * file, so the heap usage is bounded.
+ * <p>
+ * The temporary file is deleted when the spool is closed.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+final class PhpSpool extends OutputStream {
+    private final int threshold;
+    private byte[] buffer;
+    private int count = 0;              // Number of bytes in memory
+    private File file = null;           // Temporary file, if spooled to disk
+    private OutputStream fileOut = null;
+
+    /**
+     * Creates a new PhpSpool.
+     *
+     * @param threshold
+     *            Maximum number of bytes to be kept in memory
+     */
+    PhpSpool(int threshold) {
+        this.threshold = threshold;
+        this.buffer = new byte[Math.min(threshold, 256)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (fileOut == null && count == buffer.length) grow(count + 1);
+        if (fileOut != null) {
+            fileOut.write(b);
+        } else {
+            buffer[count++] = (byte) b;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (fileOut == null && count + len > buffer.length) grow(count + len);
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+        } else {
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Opens an {@link InputStream} for reading the spooled data. The spool must not be
+     * written to afterwards.
+     *
+     * @return {@link InputStream} of the spooled data
+     */
+    InputStream openInputStream() throws IOException {
+        if (fileOut == null) return new ByteArrayInputStream(buffer, 0, count);
+
+        fileOut.close();
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    /**
+     * Closes the spool and deletes the temporary file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (fileOut != null) fileOut.close();
+        } finally {
+            fileOut = null;
+            buffer = null;
+            if (file != null && !file.delete()) file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Makes room for the given number of bytes in memory. If the threshold would be
+     * exceeded, the data is moved to a temporary file.
+     */
+    private void grow(int required) throws IOException {
+        if (required > threshold) {
+            file = File.createTempFile("phpspool", ".tmp");
+            fileOut = new BufferedOutputStream(new FileOutputStream(file));
+            fileOut.write(buffer, 0, count);
+            buffer = null;
+            count = 0;
+        } else {
+            int size = (int) Math.min(Math.max(buffer.length * 2L, required), threshold);
+            buffer = Arrays.copyOf(buffer, size);
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A PhpTypeRegistry keeps {@link PhpTypeSerializer} for certain types. It can be set to
+ * {@link PhpSerializer} and {@link PhpByteSerializer}, which use it for all objects that
+ * are not a basic type, collection, map or array.
+ * <p>
+ * A serializer registered for a class is also used for its subclasses, and a serializer
+ * registered for an interface is used for all classes implementing it. Serializers of
+ * classes have precedence over serializers of interfaces. If no serializer is found, the
+ * default serializer is used. The result of the lookup is cached per class, so the
+ * lookup is only done once per class.
+ * <p>
+ * A PhpTypeRegistry is thread safe, and is meant to be shared.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * PhpTypeRegistry registry = new PhpTypeRegistry();
+ * registry.register(Date.class, new PhpTypeSerializer&lt;Date&gt;() {
+ *     public void serialize(Date value, PhpOutput out) throws IOException {
+ *         out.serialize(value.getTime() / 1000L);
+ *     }
+ * });
+ * registry.setDefaultSerializer(new PhpBeanSerializer(true));
+ * </pre>
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class PhpTypeRegistry {
+    private static final PhpTypeSerializer<Object> NONE = new PhpTypeSerializer<Object>() {
+        @Override
+        public void serialize(Object value, PhpOutput out) {
+            throw new UnsupportedOperationException("not supported");
+        }
+    };
+
+    private final Map<Class<?>, PhpTypeSerializer<?>> registered =
+                    new ConcurrentHashMap<Class<?>, PhpTypeSerializer<?>>();
+    private final Map<Class<?>, PhpTypeSerializer<?>> cache =
+                    new ConcurrentHashMap<Class<?>, PhpTypeSerializer<?>>();
+    private volatile PhpTypeSerializer<Object> defaultSerializer = null;
+
+    /**
+     * Registers a {@link PhpTypeSerializer} for a type.
+     *
+     * @param type
+     *            Class or interface
+     * @param serializer
+     *            {@link PhpTypeSerializer} for that type
+     */
+    public <T> void register(Class<T> type, PhpTypeSerializer<? super T> serializer) {
+        if (type == null) throw new NullPointerException("type must not be null");
+        if (serializer == null)
+            throw new NullPointerException("serializer must not be null");
+        registered.put(type, serializer);
+        cache.clear();
+    }
+
+    /**
+     * Sets the {@link PhpTypeSerializer} that is used for all types without a registered
+     * serializer.
+     *
+     * @param serializer
+     *            Default {@link PhpTypeSerializer}, or {@code null} if there is none.
+     *            Objects are then serialized by their {@code toString()} result.
+     */
+    public void setDefaultSerializer(PhpTypeSerializer<Object> serializer) {
+        this.defaultSerializer = serializer;
+        cache.clear();
+    }
+
+    /**
+     * Finds the {@link PhpTypeSerializer} for a class.
+     *
+     * @param type
+     *            Class to find a serializer for
+     * @return {@link PhpTypeSerializer}, or {@code null} if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public PhpTypeSerializer<Object> lookup(Class<?> type) {
+        PhpTypeSerializer<?> result = cache.get(type);
+        if (result == null) {
+            result = find(type);
+            if (result == null) result = defaultSerializer;
+            if (result == null) result = NONE;
+            cache.put(type, result);
+        }
+        return result != NONE ? (PhpTypeSerializer<Object>) result : null;
+    }
+
+    /**
+     * Finds a registered serializer for a class, its superclasses or its interfaces.
+     */
+    private PhpTypeSerializer<?> find(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            PhpTypeSerializer<?> result = registered.get(c);
+            if (result != null) return result;
+        }
+
+        // --- Breadth-first search through all interfaces ---
+        List<Class<?>> interfaces = new ArrayList<Class<?>>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Class<?> ifc : c.getInterfaces()) {
+                interfaces.add(ifc);
+            }
+        }
+        for (int ix = 0; ix < interfaces.size(); ix++) {
+            Class<?> ifc = interfaces.get(ix);
+            PhpTypeSerializer<?> result = registered.get(ifc);
+            if (result != null) return result;
+            for (Class<?> sup : ifc.getInterfaces()) {
+                interfaces.add(sup);
+            }
+        }
+
+        return null;
+    }
+
+}
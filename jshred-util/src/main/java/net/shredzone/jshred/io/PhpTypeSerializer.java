@@ -0,0 +1,48 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.IOException;
+
+/**
+ * A PhpTypeSerializer writes objects of a certain type in the PHP serialization format.
+ * It is registered at a {@link PhpTypeRegistry}.
+ * <p>
+ * Implementations must write exactly one value for each object, e.g. a single array or
+ * object. They should be stateless, so they can be shared between threads.
+ *
+ * @param <T>
+ *            Type of the objects to be serialized
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public interface PhpTypeSerializer<T> {
+
+    /**
+     * Serializes an object.
+     *
+     * @param value
+     *            Object to serialize, never {@code null}
+     * @param out
+     *            {@link PhpOutput} to write to
+     */
+    void serialize(T value, PhpOutput out) throws IOException;
+
+}
@@ -0,0 +1,727 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A SortedKeyFile is a sorted list of fixed-width keys that is stored in a file. The file
+ * is memory-mapped, so the keys are not loaded onto the heap. An existing file can be
+ * opened and used for lookups right away.
+ * <p>
+ * All keys of a file have the same width in bytes. Keys are sorted in unsigned
+ * lexicographical order of their bytes, and there are no duplicate keys. For
+ * {@code long} and {@code int} keys, there are convenience methods that take care for
+ * the encoding, so these keys are sorted in their natural, signed order.
+ * <p>
+ * {@link #contains(byte[])} and {@link #indexOf(byte[])} use a binary search on the
+ * mapped file. Keys can be read in ascending order by their index:
+ *
+ * <pre>
+ * for (long ix = 0; ix &lt; file.size(); ix++) {
+ *     long key = file.getLong(ix);
+ * }
+ * </pre>
+ *
+ * New keys can be appended if they are higher than the current highest key, or merged
+ * into the file in a single pass. The file grows as needed, so it may contain unused
+ * space at its end.
+ * <p>
+ * The file starts with a 16 byte header, containing a magic number, the key width and
+ * the number of keys. The keys follow right after the header.
+ * <p>
+ * Merges are done in place, by moving the existing keys towards the end of the file.
+ * This is not crash-safe! If the process is terminated or the system crashes while a
+ * merge is in progress, the file may be left with duplicate or missing keys. Merge into
+ * a copy of the file and rename it afterwards if the file must survive a crash.
+ * <p>
+ * Note that a SortedKeyFile is not synchronized!
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class SortedKeyFile implements Closeable {
+    private static final int MAGIC = 0x4a534b46;        // "JSKF"
+    private static final int HEADER_SIZE = 16;
+    private static final int SEGMENT_SIZE = 1 << 30;    // Maximum size of a mapping
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final boolean readOnly;
+    private final int keyWidth;
+    private final int keysPerSegment;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private long size;                                  // Number of keys
+    private long capacity;                              // Number of mapped keys
+
+    /**
+     * Creates a new, empty SortedKeyFile. An existing file will be overwritten.
+     *
+     * @param file
+     *            {@link File} to create
+     * @param keyWidth
+     *            Width of each key, in bytes
+     * @return SortedKeyFile that was created
+     */
+    public static SortedKeyFile create(File file, int keyWidth) throws IOException {
+        return create(file, keyWidth, SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a new, empty SortedKeyFile with the given maximum mapping size.
+     *
+     * @param file
+     *            {@link File} to create
+     * @param keyWidth
+     *            Width of each key, in bytes
+     * @param segmentSize
+     *            Maximum size of a mapping, in bytes
+     * @return SortedKeyFile that was created
+     */
+    static SortedKeyFile create(File file, int keyWidth, int segmentSize)
+            throws IOException {
+        if (keyWidth <= 0) throw new IllegalArgumentException("invalid key width");
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt(keyWidth);
+            raf.writeLong(0L);
+            return new SortedKeyFile(raf, false, segmentSize);
+        } catch (IOException ex) {
+            raf.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens an existing SortedKeyFile.
+     *
+     * @param file
+     *            {@link File} to open
+     * @param readOnly
+     *            {@code true} to open the file read-only
+     * @return SortedKeyFile that was opened
+     */
+    public static SortedKeyFile open(File file, boolean readOnly) throws IOException {
+        return open(file, readOnly, SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens an existing SortedKeyFile with the given maximum mapping size.
+     *
+     * @param file
+     *            {@link File} to open
+     * @param readOnly
+     *            {@code true} to open the file read-only
+     * @param segmentSize
+     *            Maximum size of a mapping, in bytes
+     * @return SortedKeyFile that was opened
+     */
+    static SortedKeyFile open(File file, boolean readOnly, int segmentSize)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+        try {
+            return new SortedKeyFile(raf, readOnly, segmentSize);
+        } catch (IOException ex) {
+            raf.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Creates a new SortedKeyFile and maps the file.
+     *
+     * @param raf
+     *            {@link RandomAccessFile} with a valid header
+     * @param readOnly
+     *            {@code true} if the file is read-only
+     * @param segmentSize
+     *            Maximum size of a mapping, in bytes
+     */
+    private SortedKeyFile(RandomAccessFile raf, boolean readOnly, int segmentSize)
+            throws IOException {
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.readOnly = readOnly;
+
+        if (channel.size() < HEADER_SIZE) throw new IOException("not a key file");
+
+        header = channel.map(mapMode(), 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC) throw new IOException("not a key file");
+
+        keyWidth = header.getInt(4);
+        size = header.getLong(8);
+        if (keyWidth <= 0 || size < 0) throw new IOException("corrupted key file");
+
+        keysPerSegment = Math.max(segmentSize / keyWidth, 1);
+        capacity = (channel.size() - HEADER_SIZE) / keyWidth;
+        if (capacity < size) throw new IOException("truncated key file");
+
+        mapSegments();
+    }
+
+    /**
+     * Gets the width of each key, in bytes.
+     *
+     * @return Key width
+     */
+    public int getKeyWidth() {
+        return keyWidth;
+    }
+
+    /**
+     * Gets the number of keys in this file.
+     *
+     * @return Number of keys
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Checks if this file contains no keys.
+     *
+     * @return {@code true} if the file is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the key at the given index.
+     *
+     * @param index
+     *            Index of the key
+     * @param dest
+     *            Byte array to copy the key into. Must be at least as large as the key
+     *            width.
+     */
+    public void get(long index, byte[] dest) {
+        checkIndex(index);
+        ByteBuffer buf = segment(index).duplicate();
+        buf.position(position(index));
+        buf.get(dest, 0, keyWidth);
+    }
+
+    /**
+     * Gets the key at the given index.
+     *
+     * @param index
+     *            Index of the key
+     * @return Key, as a new byte array
+     */
+    public byte[] get(long index) {
+        byte[] result = new byte[keyWidth];
+        get(index, result);
+        return result;
+    }
+
+    /**
+     * Gets the {@code long} key at the given index. The key width must be 8.
+     *
+     * @param index
+     *            Index of the key
+     * @return Key
+     */
+    public long getLong(long index) {
+        checkWidth(8);
+        checkIndex(index);
+        return segment(index).getLong(position(index)) ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Gets the {@code int} key at the given index. The key width must be 4.
+     *
+     * @param index
+     *            Index of the key
+     * @return Key
+     */
+    public int getInt(long index) {
+        checkWidth(4);
+        checkIndex(index);
+        return segment(index).getInt(position(index)) ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Checks if the file contains a key.
+     *
+     * @param key
+     *            Key to be checked
+     * @return {@code true} if the file contains the key
+     */
+    public boolean contains(byte[] key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Checks if the file contains a {@code long} key. The key width must be 8.
+     *
+     * @param key
+     *            Key to be checked
+     * @return {@code true} if the file contains the key
+     */
+    public boolean containsLong(long key) {
+        return indexOfLong(key) >= 0;
+    }
+
+    /**
+     * Checks if the file contains an {@code int} key. The key width must be 4.
+     *
+     * @param key
+     *            Key to be checked
+     * @return {@code true} if the file contains the key
+     */
+    public boolean containsInt(int key) {
+        return indexOfInt(key) >= 0;
+    }
+
+    /**
+     * Gets the index of a key.
+     *
+     * @param key
+     *            Key to be found
+     * @return index of that key, or -1 if it was not found
+     */
+    public long indexOf(byte[] key) {
+        checkKey(key);
+        long ix = approximate(key);
+        if (ix < size && compare(ix, key, 0) == 0) return ix;
+        else return -1;
+    }
+
+    /**
+     * Gets the index of a {@code long} key. The key width must be 8.
+     *
+     * @param key
+     *            Key to be found
+     * @return index of that key, or -1 if it was not found
+     */
+    public long indexOfLong(long key) {
+        checkWidth(8);
+        long min = 0;
+        long max = size;
+        while (min < max) {
+            long current = (min + max) >>> 1;
+            long cmp = segment(current).getLong(position(current)) ^ Long.MIN_VALUE;
+            if (cmp < key) {
+                min = current + 1;
+            } else if (cmp > key) {
+                max = current;
+            } else {
+                return current;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the index of an {@code int} key. The key width must be 4.
+     *
+     * @param key
+     *            Key to be found
+     * @return index of that key, or -1 if it was not found
+     */
+    public long indexOfInt(int key) {
+        checkWidth(4);
+        long min = 0;
+        long max = size;
+        while (min < max) {
+            long current = (min + max) >>> 1;
+            int cmp = segment(current).getInt(position(current)) ^ Integer.MIN_VALUE;
+            if (cmp < key) {
+                min = current + 1;
+            } else if (cmp > key) {
+                max = current;
+            } else {
+                return current;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a key to the end of the file. The key must be higher than all keys in the
+     * file.
+     *
+     * @param key
+     *            Key to be appended
+     */
+    public void append(byte[] key) throws IOException {
+        checkKey(key);
+        checkWritable();
+        if (size > 0 && compare(size - 1, key, 0) >= 0)
+            throw new IllegalArgumentException("key must be higher than the last key");
+
+        ensureCapacity(size + 1);
+        put(size, key, 0);
+        setSize(size + 1);
+    }
+
+    /**
+     * Appends a {@code long} key to the end of the file. The key must be higher than all
+     * keys in the file. The key width must be 8.
+     *
+     * @param key
+     *            Key to be appended
+     */
+    public void appendLong(long key) throws IOException {
+        checkWidth(8);
+        checkWritable();
+        if (size > 0 && getLong(size - 1) >= key)
+            throw new IllegalArgumentException("key must be higher than the last key");
+
+        ensureCapacity(size + 1);
+        segment(size).putLong(position(size), key ^ Long.MIN_VALUE);
+        setSize(size + 1);
+    }
+
+    /**
+     * Appends an {@code int} key to the end of the file. The key must be higher than all
+     * keys in the file. The key width must be 4.
+     *
+     * @param key
+     *            Key to be appended
+     */
+    public void appendInt(int key) throws IOException {
+        checkWidth(4);
+        checkWritable();
+        if (size > 0 && getInt(size - 1) >= key)
+            throw new IllegalArgumentException("key must be higher than the last key");
+
+        ensureCapacity(size + 1);
+        segment(size).putInt(position(size), key ^ Integer.MIN_VALUE);
+        setSize(size + 1);
+    }
+
+    /**
+     * Merges keys into the file. The keys do not need to be sorted, and may contain
+     * duplicates. Keys that are already present in the file are ignored.
+     * <p>
+     * The keys are sorted first, and then merged with the file content in a single pass.
+     * Very large key sets are merged in several passes. See the class documentation
+     * about crash safety.
+     *
+     * @param keys
+     *            Keys to be merged
+     */
+    public void merge(byte[][] keys) throws IOException {
+        checkWritable();
+
+        byte[][] sorted = keys.clone();
+        for (byte[] key : sorted) {
+            checkKey(key);
+        }
+        Arrays.sort(sorted, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] o1, byte[] o2) {
+                for (int ix = 0; ix < keyWidth; ix++) {
+                    int result = (o1[ix] & 0xFF) - (o2[ix] & 0xFF);
+                    if (result != 0) return result;
+                }
+                return 0;
+            }
+        });
+
+        for (int start = 0, end; start < sorted.length; start = end) {
+            end = batchEnd(start, sorted.length);
+            ByteBuffer batch = ByteBuffer.allocate((end - start) * keyWidth);
+            for (int ix = start; ix < end; ix++) {
+                if (ix == 0 || !Arrays.equals(sorted[ix - 1], sorted[ix])) {
+                    batch.put(sorted[ix], 0, keyWidth);
+                }
+            }
+            mergeSorted(batch.array(), batch.position() / keyWidth);
+        }
+    }
+
+    /**
+     * Merges {@code long} keys into the file. The keys do not need to be sorted, and may
+     * contain duplicates. Keys that are already present in the file are ignored. The key
+     * width must be 8.
+     *
+     * @param keys
+     *            Keys to be merged
+     * @see #merge(byte[][])
+     */
+    public void merge(long[] keys) throws IOException {
+        checkWidth(8);
+        checkWritable();
+
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+
+        for (int start = 0, end; start < sorted.length; start = end) {
+            end = batchEnd(start, sorted.length);
+            ByteBuffer batch = ByteBuffer.allocate((end - start) * 8);
+            for (int ix = start; ix < end; ix++) {
+                if (ix == 0 || sorted[ix - 1] != sorted[ix]) {
+                    batch.putLong(sorted[ix] ^ Long.MIN_VALUE);
+                }
+            }
+            mergeSorted(batch.array(), batch.position() / 8);
+        }
+    }
+
+    /**
+     * Merges {@code int} keys into the file. The keys do not need to be sorted, and may
+     * contain duplicates. Keys that are already present in the file are ignored. The key
+     * width must be 4.
+     *
+     * @param keys
+     *            Keys to be merged
+     * @see #merge(byte[][])
+     */
+    public void merge(int[] keys) throws IOException {
+        checkWidth(4);
+        checkWritable();
+
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+
+        for (int start = 0, end; start < sorted.length; start = end) {
+            end = batchEnd(start, sorted.length);
+            ByteBuffer batch = ByteBuffer.allocate((end - start) * 4);
+            for (int ix = start; ix < end; ix++) {
+                if (ix == 0 || sorted[ix - 1] != sorted[ix]) {
+                    batch.putInt(sorted[ix] ^ Integer.MIN_VALUE);
+                }
+            }
+            mergeSorted(batch.array(), batch.position() / 4);
+        }
+    }
+
+    /**
+     * Writes all changes to the storage device.
+     */
+    public void flush() {
+        if (!readOnly) {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            header.force();
+        }
+    }
+
+    /**
+     * Flushes and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        segments = new MappedByteBuffer[0];
+        raf.close();
+    }
+
+    /**
+     * Finds the end of a batch of keys to be merged. A batch is limited to the size of a
+     * segment, so the size of the encoded batch does not overflow.
+     *
+     * @param start
+     *            Index of the first key of the batch
+     * @param length
+     *            Total number of keys
+     * @return Index after the last key of the batch
+     */
+    private int batchEnd(int start, int length) {
+        return (int) Math.min((long) start + keysPerSegment, length);
+    }
+
+    /**
+     * Merges sorted keys into the file. The keys are merged from the end of the file, so
+     * no key is overwritten before it was moved.
+     *
+     * @param batch
+     *            Encoded keys, sorted and without duplicates
+     * @param count
+     *            Number of keys
+     */
+    private void mergeSorted(byte[] batch, int count) throws IOException {
+        if (count == 0) return;
+
+        // --- Count the keys that are already present ---
+        long ixOld = 0;
+        int ixNew = 0;
+        int duplicates = 0;
+        while (ixOld < size && ixNew < count) {
+            int result = compare(ixOld, batch, ixNew * keyWidth);
+            if (result < 0) {
+                ixOld++;
+            } else if (result > 0) {
+                ixNew++;
+            } else {
+                duplicates++;
+                ixOld++;
+                ixNew++;
+            }
+        }
+
+        // --- Merge from the end ---
+        long newSize = size + count - duplicates;
+        ensureCapacity(newSize);
+
+        byte[] temp = new byte[keyWidth];
+        ixOld = size - 1;
+        ixNew = count - 1;
+        long ixDest = newSize - 1;
+        while (ixNew >= 0) {
+            int result = (ixOld >= 0 ? compare(ixOld, batch, ixNew * keyWidth) : -1);
+            if (result > 0) {
+                get(ixOld--, temp);
+                put(ixDest--, temp, 0);
+            } else {
+                if (result == 0) ixOld--;
+                put(ixDest--, batch, ixNew * keyWidth);
+                ixNew--;
+            }
+        }
+
+        setSize(newSize);
+    }
+
+    /**
+     * Approximates the position of the given key. The key at the returned index is either
+     * equal to the given key, or it is the next higher key.
+     *
+     * @param key
+     *            Key to approximate
+     * @return Index of the approximation, or {@link #size()} if the key is higher than
+     *         all keys
+     */
+    private long approximate(byte[] key) {
+        long min = 0;
+        long max = size;
+        while (min < max) {
+            long current = (min + max) >>> 1;
+            if (compare(current, key, 0) < 0) {
+                min = current + 1;
+            } else {
+                max = current;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Compares the key at the given index with a key in a byte array.
+     *
+     * @param index
+     *            Key index
+     * @param key
+     *            Byte array containing the other key
+     * @param offset
+     *            Offset of the other key in the byte array
+     * @return negative if the key at the index is less than the other key, positive if
+     *         it is greater, zero if both keys are equal.
+     */
+    private int compare(long index, byte[] key, int offset) {
+        ByteBuffer buf = segment(index);
+        int pos = position(index);
+        for (int ix = 0; ix < keyWidth; ix++) {
+            int result = (buf.get(pos + ix) & 0xFF) - (key[offset + ix] & 0xFF);
+            if (result != 0) return result;
+        }
+        return 0;
+    }
+
+    /**
+     * Writes a key to the given index.
+     */
+    private void put(long index, byte[] key, int offset) {
+        ByteBuffer buf = segment(index).duplicate();
+        buf.position(position(index));
+        buf.put(key, offset, keyWidth);
+    }
+
+    /**
+     * Sets a new size, and updates the header.
+     */
+    private void setSize(long newSize) {
+        size = newSize;
+        header.putLong(8, size);
+    }
+
+    /**
+     * Makes sure the file is large enough for the given number of keys.
+     */
+    private void ensureCapacity(long needed) throws IOException {
+        if (needed <= capacity) return;
+
+        capacity = Math.max(needed, capacity + Math.max(capacity / 2, 1024));
+        raf.setLength(HEADER_SIZE + capacity * keyWidth);
+        mapSegments();
+    }
+
+    /**
+     * Maps all segments of the file.
+     */
+    private void mapSegments() throws IOException {
+        int count = (int) ((capacity + keysPerSegment - 1) / keysPerSegment);
+        segments = new MappedByteBuffer[count];
+        for (int ix = 0; ix < count; ix++) {
+            long first = (long) ix * keysPerSegment;
+            long keys = Math.min(keysPerSegment, capacity - first);
+            segments[ix] = channel.map(mapMode(),
+                            HEADER_SIZE + first * keyWidth, keys * keyWidth);
+        }
+    }
+
+    private FileChannel.MapMode mapMode() {
+        return (readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE);
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments[(int) (index / keysPerSegment)];
+    }
+
+    private int position(long index) {
+        return (int) (index % keysPerSegment) * keyWidth;
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    private void checkKey(byte[] key) {
+        if (key.length != keyWidth)
+            throw new IllegalArgumentException("key must have " + keyWidth + " bytes");
+    }
+
+    private void checkWidth(int width) {
+        if (keyWidth != width)
+            throw new IllegalStateException("key width is " + keyWidth + ", not " + width);
+    }
+
+    private void checkWritable() {
+        if (readOnly) throw new IllegalStateException("file was opened read-only");
+    }
+
+}
@@ -0,0 +1,827 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.xml.sax.Attributes;
+
+/**
+ * A StreamingXMLWriter writes cleanly formatted XML output, like {@link XMLWriter}.
+ * <p>
+ * Unlike {@link XMLWriter}, all tokens are written to the output as soon as they are
+ * known. There is no look-ahead, so documents of any size can be written with constant
+ * memory. The output is collected in a fixed-size internal buffer, so there is no need
+ * to wrap the {@link Writer} in a {@link java.io.BufferedWriter}. No objects are created
+ * per element, except for growing the element stack when the nesting gets deeper than
+ * before.
+ * <p>
+ * Attributes can be added fluently, and are written directly into the output buffer.
+ * Numbers are formatted without creating intermediate strings:
+ *
+ * <pre>
+ * xw.startElement("url").attr("id", 42).attr("href", href);
+ * </pre>
+ *
+ * Namespaces are supported by {@link #startElementNS(String, String)} and
+ * {@link #attrNS(String, String, String)}. Namespaces are declared automatically on the
+ * first element that needs them, using the prefixes set by
+ * {@link #bindPrefix(String, String)}. To avoid repeated declarations on sibling
+ * elements, a namespace can be declared on a parent element by
+ * {@link #declareNamespace(String)}:
+ *
+ * <pre>
+ * xw.bindPrefix("", "http://www.w3.org/2005/Atom");
+ * xw.bindPrefix("media", "http://search.yahoo.com/mrss/");
+ * xw.startElementNS("http://www.w3.org/2005/Atom", "feed")
+ *   .declareNamespace("http://search.yahoo.com/mrss/");
+ * </pre>
+ *
+ * Elements started by {@link #startElement(String)} are written with the name as given.
+ * <p>
+ * The output can also be written UTF-8 encoded to an {@link OutputStream} or a
+ * {@link WritableByteChannel}, optionally gzip compressed. In that case, the chars are
+ * encoded by the writer itself, with a fast path for ASCII chars, instead of passing
+ * them through a {@link java.nio.charset.CharsetEncoder}.
+ * <p>
+ * The formatting is the same as in {@link XMLWriter}, with one exception. If an element
+ * contains text content followed by further content, the first text content is written
+ * in the line of the start tag.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class StreamingXMLWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Writer out;
+    private final OutputStream byteOut;
+    private final WritableByteChannel channel;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final byte[] bytes;         // UTF-8 encoded buffer, for byte output
+    private final char[] number = new char[20];
+    private final String lineSeparator = System.getProperty("line.separator");
+    private String indent = "  ";
+    private String encoding = "UTF-8";
+    private final XMLNamespaceStack namespaces = new XMLNamespaceStack();
+    private final Map<String, String> preferredPrefixes = new HashMap<String, String>();
+    private String[] elements = new String[16];
+    private String[] prefixes = new String[16];
+    private int generatedPrefixes = 0;
+    private int pos = 0;                // Number of chars in the buffer
+    private int level = 0;              // Number of open elements
+    private boolean tagOpen = false;    // Start tag is not closed by '>' yet
+    private boolean inline = false;     // Content was written in the line of the start tag
+
+    /**
+     * Creates a new StreamingXMLWriter.
+     *
+     * @param out
+     *            {@link Writer} to send the XML data to
+     */
+    public StreamingXMLWriter(Writer out) {
+        if (out == null) throw new NullPointerException("out must not be null");
+        this.out = out;
+        this.byteOut = null;
+        this.channel = null;
+        this.bytes = null;
+    }
+
+    /**
+     * Creates a new StreamingXMLWriter that writes UTF-8 encoded data to an
+     * {@link OutputStream}.
+     *
+     * @param out
+     *            {@link OutputStream} to send the XML data to
+     * @param gzip
+     *            {@code true} to gzip compress the output
+     */
+    public StreamingXMLWriter(OutputStream out, boolean gzip) throws IOException {
+        if (out == null) throw new NullPointerException("out must not be null");
+        this.out = null;
+        this.byteOut = (gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out);
+        this.channel = null;
+        this.bytes = new byte[BUFFER_SIZE * 3];
+    }
+
+    /**
+     * Creates a new StreamingXMLWriter that writes UTF-8 encoded data to a
+     * {@link WritableByteChannel}.
+     * <p>
+     * The channel must be in blocking mode, since the writer waits until each buffer
+     * has been written completely.
+     *
+     * @param channel
+     *            {@link WritableByteChannel} to send the XML data to
+     * @param gzip
+     *            {@code true} to gzip compress the output
+     * @throws IllegalArgumentException
+     *             if the channel is a {@link SelectableChannel} in non-blocking mode
+     */
+    public StreamingXMLWriter(WritableByteChannel channel, boolean gzip)
+    throws IOException {
+        if (channel == null) throw new NullPointerException("channel must not be null");
+        if (channel instanceof SelectableChannel
+            && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException("channel must be in blocking mode");
+        }
+        this.out = null;
+        if (gzip) {
+            OutputStream cout = Channels.newOutputStream(channel);
+            this.byteOut = new GZIPOutputStream(cout, BUFFER_SIZE);
+            this.channel = null;
+        } else {
+            this.byteOut = null;
+            this.channel = channel;
+        }
+        this.bytes = new byte[BUFFER_SIZE * 3];
+    }
+
+    /**
+     * Sets the indention string. This string is used to indent lines according to their
+     * nesting. Defaults to two spaces, but you can also set several spaces, tabs or an
+     * empty string.
+     *
+     * @param indent
+     *            New Indention String
+     */
+    public void setIndent(String indent) {
+        this.indent = indent;
+    }
+
+    /**
+     * Sets the encoding that is given in the XML header. Defaults to UTF-8. It must match
+     * the encoding of the underlying {@link Writer}.
+     *
+     * @param encoding
+     *            New encoding
+     * @throws IllegalStateException
+     *             if the writer writes UTF-8 encoded bytes
+     */
+    public void setEncoding(String encoding) {
+        if (out == null) throw new IllegalStateException("byte output is always UTF-8");
+        this.encoding = encoding;
+    }
+
+    /**
+     * Sets the prefix to be used for a namespace. The namespace is not declared yet, but
+     * automatically on the first element that needs it. If no prefix is set for a
+     * namespace, a prefix is generated.
+     *
+     * @param prefix
+     *            Prefix, or an empty string for using the namespace as default
+     *            namespace
+     * @param uri
+     *            Namespace URI
+     * @throws IllegalArgumentException
+     *             if the prefix is already bound to another namespace
+     */
+    public void bindPrefix(String prefix, String uri) {
+        if (prefix == null) throw new NullPointerException("prefix must not be null");
+        if (uri == null || uri.isEmpty())
+            throw new IllegalArgumentException("uri must not be empty");
+        for (Map.Entry<String, String> entry : preferredPrefixes.entrySet()) {
+            if (entry.getValue().equals(prefix) && !entry.getKey().equals(uri))
+                throw new IllegalArgumentException("prefix '" + prefix
+                                + "' is already bound to " + entry.getKey());
+        }
+        preferredPrefixes.put(uri, prefix);
+    }
+
+    /**
+     * Starts an XML document. The XML header will be written.
+     */
+    public void startDocument() throws IOException {
+        put("<?xml version=\"1.0\" encoding=\"");
+        put(encoding.equalsIgnoreCase("UTF8") ? "UTF-8" : encoding);
+        put("\"?>");
+        newLine();
+        newLine();
+    }
+
+    /**
+     * Finishes an XML document. The output is flushed.
+     */
+    public void endDocument() throws IOException {
+        if (level > 0) throw new IOException("Still open elements");
+        flush();
+    }
+
+    /**
+     * Starts a new XML element. Attributes can be added by the {@code attr()} methods,
+     * as long as no content has been written to the element.
+     *
+     * @param element
+     *            Element name
+     * @return itself, for adding attributes
+     */
+    public StreamingXMLWriter startElement(String element) throws IOException {
+        openTag(null, element);
+        return this;
+    }
+
+    /**
+     * Starts a new XML element in a namespace. If the namespace is not in scope yet, it
+     * is declared on this element.
+     *
+     * @param uri
+     *            Namespace URI, or {@code null} or an empty string for no namespace
+     * @param localName
+     *            Local element name
+     * @return itself, for adding attributes
+     */
+    public StreamingXMLWriter startElementNS(String uri, String localName)
+    throws IOException {
+        String ns = (uri != null ? uri : "");
+        String prefix;
+        boolean declare;
+        if (ns.isEmpty()) {
+            // --- Undeclare the default namespace, if there is one ---
+            String defaultUri = namespaces.getUri("");
+            prefix = "";
+            declare = (defaultUri != null && !defaultUri.isEmpty());
+        } else {
+            prefix = namespaces.getPrefix(ns, true);
+            declare = (prefix == null);
+            if (declare) prefix = choosePrefix(ns, true, false);
+        }
+
+        openTag(prefix.isEmpty() ? null : prefix, localName);
+        if (declare) writeDeclaration(prefix, ns);
+        return this;
+    }
+
+    /**
+     * Declares a namespace on the current element, so it is in scope for all its child
+     * elements. Nothing happens if the namespace is already in scope. The default
+     * namespace is never changed by this method.
+     *
+     * @param uri
+     *            Namespace URI
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been closed
+     */
+    public StreamingXMLWriter declareNamespace(String uri) throws IOException {
+        checkTagOpen();
+        if (namespaces.getPrefix(uri, true) == null) {
+            writeDeclaration(choosePrefix(uri, false, true), uri);
+        }
+        return this;
+    }
+
+    /**
+     * Adds an attribute to the current element. The value is escaped.
+     *
+     * @param name
+     *            Attribute name
+     * @param value
+     *            Attribute value. If {@code null}, the attribute is omitted.
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been closed
+     */
+    public StreamingXMLWriter attr(String name, String value) throws IOException {
+        checkTagOpen();
+        if (value != null) writeAttribute(name, value);
+        return this;
+    }
+
+    /**
+     * Adds an attribute in a namespace to the current element. The value is escaped. If
+     * the namespace is not in scope yet, it is declared on the current element.
+     *
+     * @param uri
+     *            Namespace URI, or {@code null} or an empty string for no namespace
+     * @param localName
+     *            Local attribute name
+     * @param value
+     *            Attribute value. If {@code null}, the attribute is omitted.
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been closed
+     */
+    public StreamingXMLWriter attrNS(String uri, String localName, String value)
+    throws IOException {
+        checkTagOpen();
+        if (value == null) return this;
+
+        if (uri == null || uri.isEmpty()) {
+            writeAttribute(localName, value);
+            return this;
+        }
+
+        // --- Attributes are not in the default namespace, so a prefix is required ---
+        String prefix = namespaces.getPrefix(uri, false);
+        if (prefix == null) {
+            prefix = choosePrefix(uri, false, true);
+            writeDeclaration(prefix, uri);
+        }
+
+        put(' ');
+        put(prefix);
+        put(':');
+        writeAttributeValue(localName, value);
+        return this;
+    }
+
+    /**
+     * Adds an {@code int} attribute to the current element.
+     *
+     * @param name
+     *            Attribute name
+     * @param value
+     *            Attribute value
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been closed
+     */
+    public StreamingXMLWriter attr(String name, int value) throws IOException {
+        return attr(name, (long) value);
+    }
+
+    /**
+     * Adds a {@code long} attribute to the current element.
+     *
+     * @param name
+     *            Attribute name
+     * @param value
+     *            Attribute value
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been closed
+     */
+    public StreamingXMLWriter attr(String name, long value) throws IOException {
+        checkTagOpen();
+        put(' ');
+        put(name);
+        put('=', '"');
+        putLong(value);
+        put('"');
+        return this;
+    }
+
+    /**
+     * Adds a {@code boolean} attribute to the current element. It is written as "true"
+     * or "false".
+     *
+     * @param name
+     *            Attribute name
+     * @param value
+     *            Attribute value
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been closed
+     */
+    public StreamingXMLWriter attr(String name, boolean value) throws IOException {
+        checkTagOpen();
+        writeAttribute(name, value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Starts a new XML element with attributes. Attribute values are escaped.
+     *
+     * @param element
+     *            Element name
+     * @param attr
+     *            Attribute name/value pairs
+     */
+    public void startElement(String element, String... attr) throws IOException {
+        if (attr.length % 2 == 1)
+            throw new IllegalArgumentException("Number of attr/value pairs must be even!");
+
+        startElement(element);
+        for (int ix = 0; ix < attr.length; ix += 2) {
+            writeAttribute(attr[ix], attr[ix + 1]);
+        }
+    }
+
+    /**
+     * Starts a new XML element with attributes. Attribute values are escaped.
+     *
+     * @param element
+     *            Element name
+     * @param attrs
+     *            Map with attributes and corresponding values
+     */
+    public void startElement(String element, Map<String, String> attrs)
+    throws IOException {
+        startElement(element);
+        for (Map.Entry<String, String> entry : attrs.entrySet()) {
+            writeAttribute(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Starts a new XML element with attributes. Attribute values are escaped.
+     *
+     * @param element
+     *            Element name
+     * @param attr
+     *            Attributes, may be {@code null}
+     */
+    public void startElement(String element, Attributes attr) throws IOException {
+        startElement(element);
+        if (attr != null) {
+            for (int ix = 0, cnt = attr.getLength(); ix < cnt; ix++) {
+                writeAttribute(attr.getQName(ix), attr.getValue(ix));
+            }
+        }
+    }
+
+    /**
+     * Closes the most recent XML element. Empty elements are written in their short
+     * form.
+     */
+    public void endElement() throws IOException {
+        if (level == 0) throw new IOException("Too many elements closed");
+
+        String element = elements[--level];
+        String prefix = prefixes[level];
+        elements[level] = null;
+        prefixes[level] = null;
+        namespaces.pop();
+
+        if (tagOpen) {
+            put('/', '>');
+            tagOpen = false;
+        } else {
+            if (!inline) writeIndent();
+            put('<', '/');
+            if (prefix != null) {
+                put(prefix);
+                put(':');
+            }
+            put(element);
+            put('>');
+            inline = false;
+        }
+        newLine();
+    }
+
+    /**
+     * Writes the content of an XML container. Leading and trailing spaces will be trimmed.
+     * Empty contents will be ignored. Special chars will automatically be escaped. The
+     * first content is written in the line of the start tag, further contents are written
+     * into separate lines.
+     *
+     * @param content
+     *            Content of the current XML container
+     */
+    public void writeContent(String content) throws IOException {
+        // --- Ignore empty container ---
+        content = content.trim();
+        if (content.isEmpty()) return;
+
+        if (tagOpen) {
+            put('>');
+            tagOpen = false;
+            putEscaped(content);
+            inline = true;
+        } else {
+            closeLine();
+            writeIndent();
+            putEscaped(content);
+            newLine();
+        }
+    }
+
+    /**
+     * Writes a comment. Content will be escaped properly.
+     *
+     * @param comment
+     *            The comment's content.
+     */
+    public void writeComment(String comment) throws IOException {
+        // --- Ignore comment ---
+        comment = comment.trim();
+        if (comment.isEmpty()) return;
+
+        closeTag();
+        writeIndent();
+        put("<!-- ");
+        putEscaped(comment);
+        put(" -->");
+        newLine();
+    }
+
+    /**
+     * Writes the buffer to the underlying {@link Writer} or stream, and flushes it.
+     * Note that gzip compressed output is only complete after {@link #close()}.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer(true);
+        if (out != null) out.flush();
+        if (byteOut != null) byteOut.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying {@link Writer} or stream.
+     */
+    @Override
+    public void close() throws IOException {
+        flushBuffer(true);
+        if (out != null) out.close();
+        if (byteOut != null) byteOut.close();
+        if (channel != null) channel.close();
+    }
+
+    /**
+     * Writes an attribute to the current start tag.
+     */
+    private void writeAttribute(String name, String value) throws IOException {
+        put(' ');
+        writeAttributeValue(name, value);
+    }
+
+    /**
+     * Writes the name and the escaped value of an attribute.
+     */
+    private void writeAttributeValue(String name, String value) throws IOException {
+        put(name);
+        put('=', '"');
+        putEscaped(value);
+        put('"');
+    }
+
+    /**
+     * Writes a start tag, and enters a new element scope.
+     *
+     * @param prefix
+     *            Namespace prefix, or {@code null} if there is none
+     * @param localName
+     *            Element name
+     */
+    private void openTag(String prefix, String localName) throws IOException {
+        closeTag();
+        writeIndent();
+        put('<');
+        if (prefix != null) {
+            put(prefix);
+            put(':');
+        }
+        put(localName);
+
+        if (level == elements.length) {
+            elements = Arrays.copyOf(elements, level * 2);
+            prefixes = Arrays.copyOf(prefixes, level * 2);
+        }
+        elements[level] = localName;
+        prefixes[level] = prefix;
+        level++;
+        namespaces.push();
+        tagOpen = true;
+    }
+
+    /**
+     * Declares a namespace on the current element.
+     */
+    private void writeDeclaration(String prefix, String uri) throws IOException {
+        namespaces.declare(prefix, uri);
+        put(" xmlns");
+        if (!prefix.isEmpty()) {
+            put(':');
+            put(prefix);
+        }
+        put('=', '"');
+        putEscaped(uri);
+        put('"');
+    }
+
+    /**
+     * Chooses a prefix for a namespace that is to be declared. The prefix set by
+     * {@link #bindPrefix(String, String)} is used if possible, otherwise a prefix is
+     * generated. Generated prefixes never collide with prefixes that are in scope or
+     * that were set by {@link #bindPrefix(String, String)}.
+     * <p>
+     * If the namespace is declared on the current element, no prefix that is in scope
+     * is rebound. Otherwise the current element, or one of its attributes, would be
+     * moved to another namespace.
+     *
+     * @param uri
+     *            Namespace URI
+     * @param allowDefault
+     *            {@code true} if the namespace may become the default namespace
+     * @param currentScope
+     *            {@code true} if the namespace is declared on the current element,
+     *            {@code false} if it is declared on a new element
+     * @return Prefix
+     */
+    private String choosePrefix(String uri, boolean allowDefault, boolean currentScope) {
+        String prefix = preferredPrefixes.get(uri);
+        if (prefix == null
+            || (prefix.isEmpty() && !allowDefault)
+            || (currentScope && isPrefixInUse(prefix))) {
+            do {
+                prefix = "ns" + (++generatedPrefixes);
+            } while (namespaces.getUri(prefix) != null
+                            || preferredPrefixes.containsValue(prefix));
+        }
+        return prefix;
+    }
+
+    /**
+     * Checks if a prefix must not be declared on the current element, because it is
+     * used by the element's name, or because it is already in scope and may be used by
+     * the element's attributes.
+     */
+    private boolean isPrefixInUse(String prefix) {
+        String elementPrefix = (level > 0 ? prefixes[level - 1] : null);
+        return prefix.equals(elementPrefix) || namespaces.getUri(prefix) != null;
+    }
+
+    private void checkTagOpen() {
+        if (!tagOpen) throw new IllegalStateException("no open start tag");
+    }
+
+    /**
+     * Closes a pending start tag, and terminates a line with inline content.
+     */
+    private void closeTag() throws IOException {
+        if (tagOpen) {
+            put('>');
+            newLine();
+            tagOpen = false;
+        }
+        closeLine();
+    }
+
+    /**
+     * Terminates a line with inline content.
+     */
+    private void closeLine() throws IOException {
+        if (inline) {
+            newLine();
+            inline = false;
+        }
+    }
+
+    private void writeIndent() throws IOException {
+        for (int cnt = 0; cnt < level; cnt++) {
+            put(indent);
+        }
+    }
+
+    private void newLine() throws IOException {
+        put(lineSeparator);
+    }
+
+    /**
+     * Writes a string, escaping all special chars.
+     */
+    private void putEscaped(String text) throws IOException {
+        int start = 0;
+        int ix;
+        while ((ix = XMLWriter.nextEscape(text, start)) >= 0) {
+            put(text, start, ix);
+            put(XMLWriter.replacement(text.charAt(ix)));
+            start = ix + 1;
+        }
+        put(text, start, text.length());
+    }
+
+    /**
+     * Writes a long value as decimal number.
+     */
+    private void putLong(long value) throws IOException {
+        int start = number.length;
+        long v = (value > 0 ? -value : value);     // negative, so MIN_VALUE works too
+        do {
+            number[--start] = (char) ('0' - (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (value < 0) number[--start] = '-';
+
+        if (pos + number.length > buffer.length) flushBuffer(false);
+        System.arraycopy(number, start, buffer, pos, number.length - start);
+        pos += number.length - start;
+    }
+
+    private void put(char c) throws IOException {
+        if (pos == buffer.length) flushBuffer(false);
+        buffer[pos++] = c;
+    }
+
+    private void put(char c1, char c2) throws IOException {
+        if (pos + 2 > buffer.length) flushBuffer(false);
+        buffer[pos++] = c1;
+        buffer[pos++] = c2;
+    }
+
+    private void put(String str) throws IOException {
+        put(str, 0, str.length());
+    }
+
+    private void put(String str, int start, int end) throws IOException {
+        while (start < end) {
+            if (pos == buffer.length) flushBuffer(false);
+            int len = Math.min(end - start, buffer.length - pos);
+            str.getChars(start, start + len, buffer, pos);
+            pos += len;
+            start += len;
+        }
+    }
+
+    /**
+     * Writes the buffer to the output.
+     *
+     * @param all
+     *            {@code false}: a high surrogate at the end of the buffer is kept, since
+     *            its low surrogate is still to come
+     */
+    private void flushBuffer(boolean all) throws IOException {
+        if (pos == 0) return;
+
+        if (out != null) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+            return;
+        }
+
+        int end = pos;
+        boolean keep = !all && Character.isHighSurrogate(buffer[end - 1]);
+        if (keep) end--;
+
+        int len = encode(end);
+        if (channel != null) {
+            ByteBuffer bb = ByteBuffer.wrap(bytes, 0, len);
+            while (bb.hasRemaining()) {
+                channel.write(bb);
+            }
+        } else {
+            byteOut.write(bytes, 0, len);
+        }
+
+        pos = 0;
+        if (keep) buffer[pos++] = buffer[end];
+    }
+
+    /**
+     * Encodes the buffer to UTF-8. Unpaired surrogates are replaced by '?'.
+     *
+     * @param end
+     *            Number of chars to encode
+     * @return Number of bytes
+     */
+    private int encode(int end) {
+        int bp = 0;
+        int ix = 0;
+        while (ix < end) {
+            char c = buffer[ix++];
+            if (c < 0x80) {
+                bytes[bp++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[bp++] = (byte) (0xC0 | (c >> 6));
+                bytes[bp++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && ix < end
+                                && Character.isLowSurrogate(buffer[ix])) {
+                    int cp = Character.toCodePoint(c, buffer[ix++]);
+                    bytes[bp++] = (byte) (0xF0 | (cp >> 18));
+                    bytes[bp++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    bytes[bp++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    bytes[bp++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    bytes[bp++] = '?';
+                }
+            } else {
+                bytes[bp++] = (byte) (0xE0 | (c >> 12));
+                bytes[bp++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[bp++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return bp;
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the namespace declarations that are in scope while writing an XML
+ * document.
+ * <p>
+ * All declarations are kept in two flat arrays, and each element scope just remembers
+ * the number of declarations when it was entered. This way, entering and leaving a scope
+ * does not create any objects.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+final class XMLNamespaceStack {
+    private String[] prefixes = new String[8];
+    private String[] uris = new String[8];
+    private int count = 0;                  // Number of declarations in scope
+    private int[] marks = new int[16];
+    private int depth = 0;                  // Number of open scopes
+
+    /**
+     * Enters a new element scope.
+     */
+    void push() {
+        if (depth == marks.length) marks = Arrays.copyOf(marks, depth * 2);
+        marks[depth++] = count;
+    }
+
+    /**
+     * Leaves the current element scope. All its declarations are discarded.
+     */
+    void pop() {
+        int old = count;
+        count = marks[--depth];
+        Arrays.fill(prefixes, count, old, null);
+        Arrays.fill(uris, count, old, null);
+    }
+
+    /**
+     * Declares a namespace in the current element scope.
+     *
+     * @param prefix
+     *            Prefix, or an empty string for the default namespace
+     * @param uri
+     *            Namespace URI, or an empty string for no namespace
+     */
+    void declare(String prefix, String uri) {
+        if (count == prefixes.length) {
+            prefixes = Arrays.copyOf(prefixes, count * 2);
+            uris = Arrays.copyOf(uris, count * 2);
+        }
+        prefixes[count] = prefix;
+        uris[count] = uri;
+        count++;
+    }
+
+    /**
+     * Gets the namespace URI a prefix is bound to.
+     *
+     * @param prefix
+     *            Prefix, or an empty string for the default namespace
+     * @return Namespace URI, or {@code null} if the prefix is not bound
+     */
+    String getUri(String prefix) {
+        for (int ix = count - 1; ix >= 0; ix--) {
+            if (prefixes[ix].equals(prefix)) return uris[ix];
+        }
+        return null;
+    }
+
+    /**
+     * Gets a prefix that is bound to a namespace URI. Prefixes that have been rebound to
+     * another URI in an inner scope are skipped.
+     *
+     * @param uri
+     *            Namespace URI
+     * @param allowDefault
+     *            {@code true} if the default namespace may be returned
+     * @return Prefix, an empty string for the default namespace, or {@code null} if no
+     *         prefix is bound to the URI
+     */
+    String getPrefix(String uri, boolean allowDefault) {
+        for (int ix = count - 1; ix >= 0; ix--) {
+            if (uris[ix].equals(uri)) {
+                String prefix = prefixes[ix];
+                if ((allowDefault || !prefix.isEmpty()) && !isShadowed(prefix, ix)) {
+                    return prefix;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a prefix has been declared again after the given declaration.
+     */
+    private boolean isShadowed(String prefix, int index) {
+        for (int ix = index + 1; ix < count; ix++) {
+            if (prefixes[ix].equals(prefix)) return true;
+        }
+        return false;
+    }
+
+}
@@ -25,8 +25,8 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Stack;
 
 import org.xml.sax.Attributes;
 
@@ -36,19 +36,49 @@ import org.xml.sax.Attributes;
  * This writer will do for creating simple XML files, but please note that it is not
  * perfect at all. It does not support namespace, DTDs and it is unable to read DOM
  * structures as in the {@code org.w3c.dom} package. And last but not least it does
- * not validate your XML against a DTD.
+ * not validate your XML against a DTD. {@link StreamingXMLWriter} offers namespace
+ * support.
  * <p>
  * What it <em>does</em> is indention of the text, proper escaping of XML special chars
  * and correct charset encoding.
+ * <p>
+ * Attributes can be added fluently, without creating a SAX {@link Attributes} object:
+ *
+ * <pre>
+ * xw.openElement("url").attr("id", 42).attr("href", href);
+ * </pre>
+ *
+ * The current start tag and text content are held back until the writer knows whether
+ * the element is empty. The start tag is collected in a reusable buffer, but held back
+ * text content is kept as {@link String}. {@link StreamingXMLWriter} writes all tokens
+ * immediately, which is better suited for very large documents.
  *
  * @author Richard "Shred" Körber
  */
 public class XMLWriter extends BufferedWriter {
+    private static final String[] ESCAPES = new String[128];
+    static {
+        // --- Control chars are not allowed in XML, except of tab, CR and LF ---
+        for (int ix = 0; ix < 0x20; ix++) {
+            ESCAPES[ix] = "";
+        }
+        ESCAPES['\t'] = null;
+        ESCAPES['\n'] = null;
+        ESCAPES['\r'] = null;
+        ESCAPES['&'] = "&amp;";
+        ESCAPES['<'] = "&lt;";
+        ESCAPES['>'] = "&gt;";
+        ESCAPES['"'] = "&quot;";
+        ESCAPES['\''] = "&apos;";
+    }
+
     private String indent = "  ";
     private String charset = "UTF-8";
     private int level = 0;
-    private Stack<String> sElements = new Stack<>();
-    private StringBuilder bTag = new StringBuilder();
+    private String[] elements = new String[16];
+    private int open = 0;               // Number of open elements
+    private final StringBuilder bTag = new StringBuilder();
+    private final char[] tagChars = new char[256];  // Copy buffer for writing bTag
     private String store = null;
 
     /**
@@ -133,19 +163,106 @@ public class XMLWriter extends BufferedWriter {
      */
     public void endDocument() throws IOException {
         flushTag();
-        if (!sElements.isEmpty()) {
+        if (open > 0) {
             throw new IOException("Still open elements");
         }
     }
 
     /**
-     * Starts a new XML element. There are no attributes added to this element.
+     * Starts a new XML element. There are no attributes added to this element, but they
+     * can be added by the {@code attr()} methods, as long as no content has been written
+     * to the element.
      *
      * @param element
      *            Element name
      */
     public void startElement(String element) throws IOException {
-        startElement(element, (Attributes) null);
+        openTag(element);
+    }
+
+    /**
+     * Starts a new XML element, like {@link #startElement(String)}. Returns itself, so
+     * attributes can be added fluently by the {@code attr()} methods.
+     *
+     * @param element
+     *            Element name
+     * @return itself, for adding attributes
+     * @since R20
+     */
+    public XMLWriter openElement(String element) throws IOException {
+        openTag(element);
+        return this;
+    }
+
+    /**
+     * Adds an attribute to the current element. The value is escaped.
+     *
+     * @param name
+     *            Attribute name
+     * @param value
+     *            Attribute value. If {@code null}, the attribute is omitted.
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been written
+     * @since R20
+     */
+    public XMLWriter attr(String name, String value) {
+        checkTagOpen();
+        if (value != null) appendAttribute(name, value);
+        return this;
+    }
+
+    /**
+     * Adds an {@code int} attribute to the current element.
+     *
+     * @param name
+     *            Attribute name
+     * @param value
+     *            Attribute value
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been written
+     * @since R20
+     */
+    public XMLWriter attr(String name, int value) {
+        return attr(name, (long) value);
+    }
+
+    /**
+     * Adds a {@code long} attribute to the current element.
+     *
+     * @param name
+     *            Attribute name
+     * @param value
+     *            Attribute value
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been written
+     * @since R20
+     */
+    public XMLWriter attr(String name, long value) {
+        checkTagOpen();
+        bTag.append(' ').append(name).append("=\"").append(value).append('"');
+        return this;
+    }
+
+    /**
+     * Adds a {@code boolean} attribute to the current element. It is written as "true"
+     * or "false".
+     *
+     * @param name
+     *            Attribute name
+     * @param value
+     *            Attribute value
+     * @return itself
+     * @throws IllegalStateException
+     *             if the start tag of the current element has already been written
+     * @since R20
+     */
+    public XMLWriter attr(String name, boolean value) {
+        checkTagOpen();
+        bTag.append(' ').append(name).append("=\"").append(value).append('"');
+        return this;
     }
 
     /**
@@ -162,11 +279,10 @@ public class XMLWriter extends BufferedWriter {
         if (attr.length % 2 == 1)
             throw new IllegalArgumentException("Number of attr/value pairs must be even!");
 
-        org.xml.sax.helpers.AttributesImpl xmla = new org.xml.sax.helpers.AttributesImpl();
+        openTag(element);
         for (int ix = 0; ix < attr.length; ix += 2) {
-            xmla.addAttribute("", "", attr[ix], "CDATA", attr[ix + 1]);
+            appendAttribute(attr[ix], attr[ix + 1]);
         }
-        startElement(element, xmla);
     }
 
     /**
@@ -183,11 +299,10 @@ public class XMLWriter extends BufferedWriter {
      */
     public void startElement(String element, Map<String, String> attrs)
     throws IOException {
-        org.xml.sax.helpers.AttributesImpl xmla = new org.xml.sax.helpers.AttributesImpl();
-        for (String key : attrs.keySet()) {
-            xmla.addAttribute("", "", key, "CDATA", attrs.get(key));
+        openTag(element);
+        for (Map.Entry<String, String> entry : attrs.entrySet()) {
+            appendAttribute(entry.getKey(), entry.getValue());
         }
-        startElement(element, xmla);
     }
 
     /**
@@ -200,62 +315,84 @@ public class XMLWriter extends BufferedWriter {
      *            Attributes
      */
     public void startElement(String element, Attributes attr) throws IOException {
-        flushTag();
-        sElements.push(element);
-        writeIndent();
-        bTag.append(element);
+        openTag(element);
 
         // --- Append attributes ---
         if (attr != null && attr.getLength() > 0) {
             int cnt = attr.getLength();
             for (int ix = 0; ix < cnt; ix++) {
-                bTag.append(' ');
-                bTag.append(attr.getQName(ix));
-                bTag.append("=\"");
-                bTag.append(escape(attr.getValue(ix)));
-                bTag.append('"');
+                appendAttribute(attr.getQName(ix), attr.getValue(ix));
             }
         }
+    }
+
+    /**
+     * Starts a new XML element. The start tag is kept in the tag buffer, so attributes
+     * can be appended.
+     */
+    private void openTag(String element) throws IOException {
+        flushTag();
+        if (open == elements.length) elements = Arrays.copyOf(elements, open * 2);
+        elements[open++] = element;
+        writeIndent();
+        bTag.append(element);
         level++;
     }
 
+    /**
+     * Appends an attribute to the tag buffer.
+     */
+    private void appendAttribute(String name, String value) {
+        bTag.append(' ').append(name).append("=\"");
+        escape(value, bTag);
+        bTag.append('"');
+    }
+
+    private void checkTagOpen() {
+        if (bTag.length() == 0 || store != null)
+            throw new IllegalStateException("no open start tag");
+    }
+
     /**
      * Closes the most recent XML element. The XMLWriter recognizes empty elements and will
      * send a shortcut to the output.
      */
     public void endElement() throws IOException {
-        String element = sElements.pop();
-        if (element == null) {
+        if (open == 0) {
             throw new IOException("Too many elements closed");
         }
+        String element = elements[--open];
+        elements[open] = null;
 
         if (store != null && bTag.length() > 0) {
             level--;
             write('<');
-            write(bTag.toString());
+            writeTag();
             write('>');
-            write(escape(store));
+            writeEscaped(store);
             write("</");
             write(element);
             write('>');
             store = null;
-            bTag = new StringBuilder();
+            bTag.setLength(0);
         } else {
             if (store != null) {
                 writeIndent();
-                write(escape(store));
+                writeEscaped(store);
                 newLine();
                 store = null;
             }
             level--;
             if (bTag.length() > 0) {
                 write('<');
-                write(bTag.toString());
+                writeTag();
                 write("/>");
-                bTag = new StringBuilder();
+                bTag.setLength(0);
             } else {
                 writeIndent();
-                write("</" + element + '>');
+                write("</");
+                write(element);
+                write('>');
             }
         }
         newLine();
@@ -282,7 +419,7 @@ public class XMLWriter extends BufferedWriter {
             // --- Write it ---
             flushTag();
             writeIndent();
-            write(escape(content));
+            writeEscaped(content);
             newLine();
         }
     }
@@ -301,24 +438,102 @@ public class XMLWriter extends BufferedWriter {
         // --- Write it ---
         flushTag();
         writeIndent();
-        write("<!-- " + escape(comment) + " -->");
+        write("<!-- ");
+        writeEscaped(comment);
+        write(" -->");
         newLine();
     }
 
     /**
-     * Escapes a String so it can be used in XML context. All &amp;, &lt;, &gt; and &quot;
-     * will be converted into their respective entity.
+     * Escapes a String so it can be used in XML context. All &amp;, &lt;, &gt;, &quot;
+     * and &apos; will be converted into their respective entity. Control chars that are
+     * not allowed in XML are removed.
+     * <p>
+     * The text is scanned only once. If nothing needs to be escaped, the text itself is
+     * returned.
      *
      * @param text
      *            Text to be escaped
      * @return Escapted text
      */
     public static String escape(String text) {
-        text = text.replaceAll("\\&", "&amp;");
-        text = text.replaceAll("\\<", "&lt;");
-        text = text.replaceAll("\\>", "&gt;");
-        text = text.replaceAll("\\\"", "&quot;");
-        return text;
+        int ix = nextEscape(text, 0);
+        if (ix < 0) return text;
+
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        escape(text, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Escapes a String and writes the result directly to the output, without creating
+     * an intermediate string.
+     *
+     * @param text
+     *            Text to be escaped
+     * @see #escape(String)
+     * @since R20
+     */
+    protected void writeEscaped(String text) throws IOException {
+        int start = 0;
+        int ix;
+        while ((ix = nextEscape(text, start)) >= 0) {
+            write(text, start, ix - start);
+            write(replacement(text.charAt(ix)));
+            start = ix + 1;
+        }
+        write(text, start, text.length() - start);
+    }
+
+    /**
+     * Escapes a String and appends the result to a {@link StringBuilder}.
+     */
+    private static void escape(String text, StringBuilder sb) {
+        int start = 0;
+        int ix;
+        while ((ix = nextEscape(text, start)) >= 0) {
+            sb.append(text, start, ix).append(replacement(text.charAt(ix)));
+            start = ix + 1;
+        }
+        sb.append(text, start, text.length());
+    }
+
+    /**
+     * Finds the next char that needs to be escaped.
+     *
+     * @param text
+     *            Text to scan
+     * @param from
+     *            Index to start from
+     * @return Index of the next char to be escaped, or -1 if there is none
+     */
+    static int nextEscape(String text, int from) {
+        for (int ix = from, len = text.length(); ix < len; ix++) {
+            char c = text.charAt(ix);
+            if (c < ESCAPES.length ? ESCAPES[c] != null : (c == 0xFFFE || c == 0xFFFF)) {
+                return ix;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the replacement of a char that needs to be escaped.
+     */
+    static String replacement(char c) {
+        return (c < ESCAPES.length ? ESCAPES[c] : "");
+    }
+
+    /**
+     * Writes the content of the tag buffer, without creating a {@link String}.
+     */
+    private void writeTag() throws IOException {
+        int len = bTag.length();
+        for (int start = 0; start < len; start += tagChars.length) {
+            int end = Math.min(start + tagChars.length, len);
+            bTag.getChars(start, end, tagChars, 0);
+            write(tagChars, 0, end - start);
+        }
     }
 
     /**
@@ -328,14 +543,14 @@ public class XMLWriter extends BufferedWriter {
     protected void flushTag() throws IOException {
         if (bTag.length() > 0) {
             write("<");
-            write(bTag.toString());
+            writeTag();
             write(">");
             newLine();
-            bTag = new StringBuilder();
+            bTag.setLength(0);
         }
         if (store != null) {
             writeIndent();
-            write(escape(store));
+            writeEscaped(store);
             newLine();
             store = null;
         }
@@ -0,0 +1,228 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A CSVByteParser parses CSV records directly from a {@link ByteBuffer}, without decoding
+ * the bytes to chars first.
+ * <p>
+ * The buffer is scanned for delimiter, quote and line break bytes only. The parsed
+ * records are stored in a {@link CSVByteRecord}, which only keeps the byte offsets of its
+ * columns. A column is decoded only if its content is actually requested, and numbers
+ * are parsed directly from the bytes. The buffer may be a {@link java.nio.MappedByteBuffer}
+ * of a memory-mapped file.
+ * <p>
+ * The same delimiter and quoting rules as in {@link CSVLine} and {@link CSVReader} are
+ * used, and quoted columns may contain line breaks. The delimiter must be an ASCII char,
+ * and the charset must encode ASCII chars as single bytes (like UTF-8 or ISO-8859-1).
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * try (FileChannel fc = new RandomAccessFile(file, "r").getChannel()) {
+ *     ByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+ *     CSVByteParser parser = new CSVByteParser(buf, ',');
+ *     CSVByteRecord record = new CSVByteRecord();
+ *     while (parser.next(record)) {
+ *         long id = record.getLong(0);
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVByteParser {
+    private final ByteBuffer buf;
+    private final byte delim;
+    private final Charset charset;
+    private final int limit;
+    private int pos;
+
+    /**
+     * Creates a new CSVByteParser for UTF-8 encoded data.
+     *
+     * @param buf
+     *            {@link ByteBuffer} to parse, from its current position up to its limit.
+     *            The position of the buffer itself is not changed.
+     * @param delim
+     *            Delimiter, must be an ASCII char
+     */
+    public CSVByteParser(ByteBuffer buf, char delim) {
+        this(buf, delim, Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Creates a new CSVByteParser.
+     *
+     * @param buf
+     *            {@link ByteBuffer} to parse, from its current position up to its limit.
+     *            The position of the buffer itself is not changed.
+     * @param delim
+     *            Delimiter, must be an ASCII char
+     * @param charset
+     *            {@link Charset} of the CSV data, must encode ASCII chars as single
+     *            bytes
+     */
+    public CSVByteParser(ByteBuffer buf, char delim, Charset charset) {
+        checkDelimiter(delim, charset);
+        this.buf = buf;
+        this.delim = (byte) delim;
+        this.charset = charset;
+        this.pos = buf.position();
+        this.limit = buf.limit();
+    }
+
+    /**
+     * Gets the position of the next record in the buffer.
+     *
+     * @return Position
+     */
+    public int position() {
+        return pos;
+    }
+
+    /**
+     * Checks if there are more records.
+     *
+     * @return {@code true} if there are more records
+     */
+    public boolean hasNext() {
+        return pos < limit;
+    }
+
+    /**
+     * Parses the next record into the given {@link CSVByteRecord}. The previous content
+     * of the {@link CSVByteRecord} is replaced. An empty line results in a record without
+     * columns.
+     * <p>
+     * This method does not allocate any objects, except for growing the
+     * {@link CSVByteRecord} offset tables if a record has more columns than all records
+     * before.
+     *
+     * @param rec
+     *            {@link CSVByteRecord} to parse the record into
+     * @return {@code true} if a record was parsed, {@code false} if the end of the
+     *         buffer has been reached
+     * @throws IOException
+     *             if the record was badly quoted. The position is not changed then.
+     */
+    public boolean next(CSVByteRecord rec) throws IOException {
+        rec.reset(buf, charset);
+        if (pos >= limit) return false;
+
+        int p = pos;
+        byte b = buf.get(p);
+        if (b != '\r' && b != '\n') {
+            while (true) {
+                if (p < limit && buf.get(p) == '"') {
+                    // --- Quoted Column ---
+                    int quote = p++;
+                    boolean escaped = false;
+                    while (true) {
+                        if (p >= limit)
+                            throw new IOException("ending quote char missing at offset "
+                                + quote);
+
+                        if (buf.get(p++) == '"') {
+                            if (p >= limit || buf.get(p) != '"') break;
+                            escaped = true;
+                            p++;
+                        }
+                    }
+                    if (p < limit && !isColumnEnd(buf.get(p)))
+                        throw new IOException("bad quoting at offset " + quote);
+                    rec.addColumn(quote + 1, p - 1, escaped);
+
+                } else {
+                    // --- Unquoted Column ---
+                    int start = p;
+                    while (p < limit && !isColumnEnd(buf.get(p))) {
+                        p++;
+                    }
+                    rec.addColumn(start, p, false);
+                }
+
+                if (p >= limit || buf.get(p) != delim) break;
+
+                // --- A delimiter at the end of the line means an empty column ---
+                p++;
+                if (p >= limit || buf.get(p) == '\r' || buf.get(p) == '\n') {
+                    rec.addColumn(p, p, false);
+                    break;
+                }
+            }
+        }
+
+        // --- Skip the line break ---
+        if (p < limit && buf.get(p) == '\r') p++;
+        if (p < limit && buf.get(p) == '\n') p++;
+        pos = p;
+        return true;
+    }
+
+    /**
+     * Parses the next record into a {@link CSVLine}. All columns are decoded.
+     *
+     * @return {@link CSVLine} containing the record, or {@code null} if the end of the
+     *         buffer has been reached
+     * @throws IOException
+     *             if the record was badly quoted
+     */
+    public CSVLine nextLine() throws IOException {
+        CSVByteRecord rec = new CSVByteRecord();
+        if (!next(rec)) return null;
+        return rec.toCSVLine((char) delim);
+    }
+
+    private boolean isColumnEnd(byte b) {
+        return b == delim || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Checks that the delimiter is valid, and that the charset encodes the delimiter,
+     * quote and line break chars as single ASCII bytes.
+     *
+     * @param delim
+     *            Delimiter
+     * @param charset
+     *            {@link Charset} of the CSV data
+     */
+    static void checkDelimiter(char delim, Charset charset) {
+        if (delim == '"')
+            throw new IllegalArgumentException("quote char is not a valid delimiter");
+        if (delim == '\r' || delim == '\n')
+            throw new IllegalArgumentException("line break is not a valid delimiter");
+        if (delim >= 0x80)
+            throw new IllegalArgumentException("delimiter must be an ASCII char");
+
+        byte[] test = ("\"\r\n" + delim).getBytes(charset);
+        if (!Arrays.equals(test, new byte[] {'"', '\r', '\n', (byte) delim}))
+            throw new IllegalArgumentException("charset " + charset
+                + " is not ASCII compatible");
+    }
+
+}
@@ -0,0 +1,332 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A CSVByteRecord holds the columns of one CSV record that was parsed by a
+ * {@link CSVByteParser}.
+ * <p>
+ * Only the byte offsets of the columns are stored. The content is read from the parsed
+ * {@link ByteBuffer} when it is requested, so columns that are never accessed are never
+ * decoded. Like {@link CSVRecord}, a CSVByteRecord is meant to be reused for each record,
+ * and its content is only valid until the next record is parsed into it.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVByteRecord {
+    private ByteBuffer buf;
+    private Charset charset;
+    private int[] starts = new int[16];             // Start offset of each column
+    private int[] ends = new int[16];               // End offset of each column
+    private boolean[] escaped = new boolean[16];    // Column contains doubled quotes
+    private int count = 0;                          // Number of columns
+    private byte[] scratch = new byte[256];
+    private final NumberParser parser = new NumberParser() {
+        @Override
+        protected int charAt(int index) {
+            return buf.get(index) & 0xFF;
+        }
+
+        @Override
+        protected String getString(int col) {
+            return CSVByteRecord.this.getString(col);
+        }
+    };
+
+    /**
+     * Gets the number of columns.
+     *
+     * @return Number of columns
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Checks if a column is empty.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code true} if the column is empty
+     */
+    public boolean isEmpty(int col) {
+        checkColumn(col);
+        return starts[col] == ends[col];
+    }
+
+    /**
+     * Gets the offset of the first byte of a column in the parsed {@link ByteBuffer}.
+     * For quoted columns, this is the offset after the opening quote.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return Offset of the column
+     */
+    public int getOffset(int col) {
+        checkColumn(col);
+        return starts[col];
+    }
+
+    /**
+     * Gets the number of bytes of a column. Quote chars are not counted.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return Length of that column, in bytes
+     */
+    public int getByteLength(int col) {
+        checkColumn(col);
+        if (!escaped[col]) return ends[col] - starts[col];
+        return unescape(col);
+    }
+
+    /**
+     * Copies the bytes of a column into a byte array. Quote chars are unescaped.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @param dest
+     *            Destination array, must be large enough for
+     *            {@link #getByteLength(int)} bytes
+     * @param offset
+     *            Offset in the destination array
+     * @return Number of bytes that were copied
+     */
+    public int copyTo(int col, byte[] dest, int offset) {
+        int len = getByteLength(col);
+        if (escaped[col]) {
+            System.arraycopy(scratch, 0, dest, offset, len);
+        } else {
+            ByteBuffer dup = buf.duplicate();
+            dup.position(starts[col]);
+            dup.get(dest, offset, len);
+        }
+        return len;
+    }
+
+    /**
+     * Gets a column as {@link String}. Only this column is decoded.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@link String} of that column
+     */
+    public String getString(int col) {
+        checkColumn(col);
+        if (!escaped[col] && buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + starts[col],
+                ends[col] - starts[col], charset);
+        }
+
+        int len;
+        if (escaped[col]) {
+            len = unescape(col);
+        } else {
+            len = ends[col] - starts[col];
+            ensureScratch(len);
+            for (int ix = 0; ix < len; ix++) {
+                scratch[ix] = buf.get(starts[col] + ix);
+            }
+        }
+        return new String(scratch, 0, len, charset);
+    }
+
+    /**
+     * Checks if a column is equal to the given ASCII string, without decoding the
+     * column.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @param ascii
+     *            String to compare with, must only contain ASCII chars
+     * @return {@code true} if both are equal
+     */
+    public boolean equalsAscii(int col, String ascii) {
+        checkColumn(col);
+        int start = starts[col];
+        int len = ends[col] - start;
+        if (escaped[col]) {
+            len = unescape(col);
+            if (len != ascii.length()) return false;
+            for (int ix = 0; ix < len; ix++) {
+                if (scratch[ix] != ascii.charAt(ix)) return false;
+            }
+            return true;
+        }
+
+        if (len != ascii.length()) return false;
+        for (int ix = 0; ix < len; ix++) {
+            if (buf.get(start + ix) != ascii.charAt(ix)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets a column as {@code int}. The value is parsed directly from the bytes.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code int} value of that column
+     * @throws NumberFormatException
+     *             if the column does not contain a valid {@code int} value
+     */
+    public int getInt(int col) {
+        checkColumn(col);
+        return parser.parseInt(col, starts[col], ends[col]);
+    }
+
+    /**
+     * Gets a column as {@code long}. The value is parsed directly from the bytes.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code long} value of that column
+     * @throws NumberFormatException
+     *             if the column does not contain a valid {@code long} value
+     */
+    public long getLong(int col) {
+        checkColumn(col);
+        return parser.parseLong(col, starts[col], ends[col]);
+    }
+
+    /**
+     * Gets a column as {@code double}. Simple decimal numbers like "-123.45" are parsed
+     * directly from the bytes. All other formats are parsed by
+     * {@link Double#parseDouble(String)}.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code double} value of that column
+     * @throws NumberFormatException
+     *             if the column does not contain a valid {@code double} value
+     */
+    public double getDouble(int col) {
+        checkColumn(col);
+        return parser.parseDouble(col, starts[col], ends[col]);
+    }
+
+    /**
+     * Gets a column as {@code boolean}. "true" (in any case) and "1" are {@code true},
+     * all other values are {@code false}.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code boolean} value of that column
+     */
+    public boolean getBoolean(int col) {
+        checkColumn(col);
+        return parser.parseBoolean(starts[col], ends[col]);
+    }
+
+    /**
+     * Creates a {@link CSVLine} with the content of this record. All columns are
+     * decoded.
+     *
+     * @param delim
+     *            Delimiter of the {@link CSVLine}
+     * @return {@link CSVLine} of this record
+     */
+    public CSVLine toCSVLine(char delim) {
+        CSVLine line = new CSVLine(delim);
+        line.ensureCapacity(count);
+        for (int ix = 0; ix < count; ix++) {
+            line.add(getString(ix));
+        }
+        return line;
+    }
+
+    @Override
+    public String toString() {
+        return toCSVLine(';').toString();
+    }
+
+    /**
+     * Removes all columns, and sets the buffer the columns will refer to.
+     *
+     * @param buf
+     *            {@link ByteBuffer} that is parsed
+     * @param charset
+     *            {@link Charset} of the CSV data
+     */
+    void reset(ByteBuffer buf, Charset charset) {
+        this.buf = buf;
+        this.charset = charset;
+        count = 0;
+    }
+
+    /**
+     * Adds a column.
+     *
+     * @param start
+     *            Offset of the first byte of the column
+     * @param end
+     *            Offset after the last byte of the column
+     * @param esc
+     *            {@code true} if the column contains doubled quote chars
+     */
+    void addColumn(int start, int end, boolean esc) {
+        if (count == starts.length) {
+            int newSize = count * 2;
+            starts = Arrays.copyOf(starts, newSize);
+            ends = Arrays.copyOf(ends, newSize);
+            escaped = Arrays.copyOf(escaped, newSize);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        escaped[count] = esc;
+        count++;
+    }
+
+    /**
+     * Copies a column into the scratch buffer, unescaping doubled quote chars.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return Number of bytes in the scratch buffer
+     */
+    private int unescape(int col) {
+        int end = ends[col];
+        ensureScratch(end - starts[col]);
+        int len = 0;
+        for (int ix = starts[col]; ix < end; ix++) {
+            byte b = buf.get(ix);
+            scratch[len++] = b;
+            if (b == '"') ix++;     // skip the second quote char
+        }
+        return len;
+    }
+
+    private void ensureScratch(int size) {
+        if (scratch.length < size) {
+            scratch = new byte[Math.max(size, scratch.length * 2)];
+        }
+    }
+
+    private void checkColumn(int col) {
+        if (col < 0 || col >= count)
+            throw new IndexOutOfBoundsException("Column: " + col + ", Size: " + count);
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+
+/**
+ * A CSVDialect describes the format of a CSV file. It is usually detected by a
+ * {@link CSVSniffer}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVDialect implements Serializable {
+    private static final long serialVersionUID = 3270586046251046741L;
+
+    private final char delim;
+    private final boolean quoted;
+    private final boolean header;
+    private final String lineSeparator;
+
+    /**
+     * Creates a new CSVDialect.
+     *
+     * @param delim
+     *            Delimiter
+     * @param quoted
+     *            {@code true} if quoted columns are used. Writers of this dialect will
+     *            quote all columns.
+     * @param header
+     *            {@code true} if the first record is a header record
+     * @param lineSeparator
+     *            Line separator, "\n", "\r\n" or "\r"
+     */
+    public CSVDialect(char delim, boolean quoted, boolean header, String lineSeparator) {
+        if (lineSeparator == null)
+            throw new NullPointerException("lineSeparator must not be null");
+        this.delim = delim;
+        this.quoted = quoted;
+        this.header = header;
+        this.lineSeparator = lineSeparator;
+    }
+
+    /**
+     * Gets the delimiter.
+     *
+     * @return Delimiter
+     */
+    public char getDelimiter() {
+        return delim;
+    }
+
+    /**
+     * Checks if quoted columns are used.
+     *
+     * @return {@code true} if quoted columns were found
+     */
+    public boolean isQuoted() {
+        return quoted;
+    }
+
+    /**
+     * Checks if the first record is a header record.
+     *
+     * @return {@code true} if there is a header record
+     */
+    public boolean hasHeader() {
+        return header;
+    }
+
+    /**
+     * Gets the line separator.
+     *
+     * @return Line separator
+     */
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+    /**
+     * Creates a {@link CSVReader} for this dialect.
+     *
+     * @param in
+     *            {@link Reader} to read from
+     * @return {@link CSVReader}
+     */
+    public CSVReader createReader(Reader in) {
+        return new CSVReader(in, delim);
+    }
+
+    /**
+     * Creates a {@link CSVWriter} for this dialect. If the dialect uses quoted columns,
+     * the writer quotes all columns.
+     *
+     * @param out
+     *            {@link Writer} to write to
+     * @return {@link CSVWriter}
+     */
+    public CSVWriter createWriter(Writer out) {
+        CSVWriter writer = new CSVWriter(out, delim);
+        writer.setLineSeparator(lineSeparator);
+        writer.setQuoteAll(quoted);
+        return writer;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !(obj instanceof CSVDialect)) return false;
+        CSVDialect cmp = (CSVDialect) obj;
+        return delim == cmp.delim && quoted == cmp.quoted && header == cmp.header
+            && lineSeparator.equals(cmp.lineSeparator);
+    }
+
+    @Override
+    public int hashCode() {
+        return delim ^ (quoted ? 0x10000 : 0) ^ (header ? 0x20000 : 0)
+            ^ lineSeparator.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CSVDialect[delim=");
+        if (delim == '\t') sb.append("\\t");
+        else sb.append(delim);
+        sb.append(", quoted=").append(quoted);
+        sb.append(", header=").append(header);
+        sb.append(", lineSeparator=");
+        sb.append(lineSeparator.replace("\r", "\\r").replace("\n", "\\n"));
+        return sb.append(']').toString();
+    }
+
+}
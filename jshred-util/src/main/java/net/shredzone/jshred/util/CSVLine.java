@@ -117,9 +117,7 @@ public class CSVLine extends ArrayList<String> {
                 if (end < (max - 1) && text.charAt(end + 1) != delim)
                     throw new IllegalArgumentException("bad quoting");
 
-                String content = text.substring(start + 1, end);
-                content = content.replaceAll("\\\"\\\"", "\"");
-                add(content);
+                add(unquote(text, start + 1, end));
                 start = end + 1;
                 if (start < max && text.charAt(start) == delim) {
                     start++;
@@ -128,7 +126,7 @@ public class CSVLine extends ArrayList<String> {
 
             } else {
                 // --- Unquoted Column ---
-                end = text.indexOf(String.valueOf(delim), start);
+                end = text.indexOf(delim, start);
                 if (end >= 0) {
                     add(text.substring(start, end));
                     start = end + 1;
@@ -141,6 +139,50 @@ public class CSVLine extends ArrayList<String> {
         }
     }
 
+    /**
+     * Returns the content of a quoted column, with all doubled quote chars unescaped.
+     *
+     * @param text
+     *            Line containing the column
+     * @param start
+     *            Start of the column content, after the opening quote char
+     * @param end
+     *            End of the column content, at the closing quote char
+     * @return Unquoted column content
+     */
+    private static String unquote(String text, int start, int end) {
+        int quote = text.indexOf('"', start);
+        if (quote < 0 || quote >= end) {
+            return text.substring(start, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        while (quote >= 0 && quote < end) {
+            sb.append(text, start, quote + 1);
+            start = quote + 2;
+            quote = text.indexOf('"', start);
+        }
+        sb.append(text, start, end);
+        return sb.toString();
+    }
+
+    /**
+     * Checks if a column needs to be quoted. This is the case if it contains the quote
+     * char, the delimiter or a line break.
+     *
+     * @param col
+     *            Column content
+     * @return {@code true} if the column must be quoted
+     */
+    private boolean needsQuoting(String col) {
+        int len = col.length();
+        for (int ix = 0; ix < len; ix++) {
+            char c = col.charAt(ix);
+            if (c == '"' || c == delim || c == '\r' || c == '\n') return true;
+        }
+        return false;
+    }
+
     /**
      * Sets the delimiter character. The quote character '"' is not allowed as a
      * delimiter, and will throw an IllegalArgumentException.
@@ -166,6 +208,7 @@ public class CSVLine extends ArrayList<String> {
 
     /**
      * Gets a valid CSV line of the current content, using the current delimiter char.
+     * Columns containing the delimiter, a quote char or a line break are quoted.
      * <p>
      * <em>Note:</em> There is no newline character at the end of the line!
      *
@@ -181,11 +224,17 @@ public class CSVLine extends ArrayList<String> {
             }
 
             if (col == null) col = "";
-            if (col.indexOf('"') >= 0) {
+            if (needsQuoting(col)) {
                 // --- Escaping needed ---
-                col = col.replaceAll("\\\"", "\"\"");
                 buffer.append('"');
-                buffer.append(col);
+                int start = 0;
+                int quote;
+                while ((quote = col.indexOf('"', start)) >= 0) {
+                    buffer.append(col, start, quote + 1);
+                    buffer.append('"');
+                    start = quote + 1;
+                }
+                buffer.append(col, start, col.length());
                 buffer.append('"');
             } else {
                 // --- No escaping needed ---
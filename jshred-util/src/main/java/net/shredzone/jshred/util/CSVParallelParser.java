@@ -0,0 +1,348 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A CSVParallelParser parses a large CSV file on all available cores.
+ * <p>
+ * The file is memory-mapped and split into chunks. Each chunk is parsed by a task of a
+ * {@link ForkJoinPool}. Since a quoted column may contain line breaks, the start of a
+ * record cannot be safely detected from within a chunk. Each chunk is parsed from the
+ * first line start within the chunk, and up to the first record that starts after the
+ * chunk. If it turns out that the previous chunk actually ended somewhere else, the
+ * chunk is parsed again from the correct position. This way, the result is always
+ * identical to the result of {@link CSVReader}.
+ * <p>
+ * The same delimiter and quoting rules as in {@link CSVLine} and {@link CSVReader} are
+ * used. The file is scanned on byte level by a {@link CSVByteParser}, so the delimiter
+ * must be an ASCII char, and the charset must encode ASCII chars as single bytes (like
+ * UTF-8 or ISO-8859-1).
+ * <p>
+ * The records are passed to a {@link Handler}, either in their original order, or
+ * unordered as soon as they are available. In the latter case, the {@link Handler} is
+ * invoked concurrently and must be thread-safe.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVParallelParser {
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final char delim;
+    private final Charset charset;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private ForkJoinPool pool = null;
+
+    /**
+     * A Handler receives the parsed records.
+     */
+    public interface Handler {
+
+        /**
+         * Handles a record.
+         *
+         * @param line
+         *            {@link CSVLine} containing the record
+         */
+        void handle(CSVLine line);
+    }
+
+    /**
+     * Creates a new CSVParallelParser for UTF-8 encoded files.
+     *
+     * @param delim
+     *            Delimiter
+     */
+    public CSVParallelParser(char delim) {
+        this(delim, Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Creates a new CSVParallelParser.
+     *
+     * @param delim
+     *            Delimiter, must be an ASCII char
+     * @param charset
+     *            {@link Charset} of the CSV files, must encode ASCII chars as single
+     *            bytes
+     */
+    public CSVParallelParser(char delim, Charset charset) {
+        CSVByteParser.checkDelimiter(delim, charset);
+
+        this.delim = delim;
+        this.charset = charset;
+    }
+
+    /**
+     * Sets the size of the chunks the file is split into. Defaults to 4 MB.
+     *
+     * @param chunkSize
+     *            Chunk size, in bytes
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("invalid chunk size");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the {@link ForkJoinPool} to be used. If not set, a new {@link ForkJoinPool}
+     * with one thread per core is created for each file.
+     *
+     * @param pool
+     *            {@link ForkJoinPool} to be used
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Parses a CSV file.
+     *
+     * @param file
+     *            CSV file to parse
+     * @param handler
+     *            {@link Handler} that receives the records
+     * @param ordered
+     *            {@code true}: records are passed to the handler in their original order,
+     *            {@code false}: records are passed to the handler concurrently, in any
+     *            order
+     * @throws IOException
+     *             if the file could not be read, or if a record was badly quoted
+     */
+    public void parse(File file, Handler handler, boolean ordered) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            parse(raf.getChannel(), handler, ordered);
+        }
+    }
+
+    /**
+     * Parses a CSV file.
+     *
+     * @param channel
+     *            {@link FileChannel} of the CSV file to parse
+     * @param handler
+     *            {@link Handler} that receives the records
+     * @param ordered
+     *            {@code true}: records are passed to the handler in their original order,
+     *            {@code false}: records are passed to the handler concurrently, in any
+     *            order
+     * @throws IOException
+     *             if the file could not be read, or if a record was badly quoted
+     */
+    public void parse(FileChannel channel, Handler handler, boolean ordered)
+    throws IOException {
+        ForkJoinPool usePool = (pool != null ? pool : new ForkJoinPool());
+        try {
+            long size = channel.size();
+            int wave = usePool.getParallelism() * 2;
+            long start = 0;     // Nominal start of the next chunk
+            long end = 0;       // Actual end of the previous chunk
+
+            while (start < size) {
+                // --- Create the next wave of chunks ---
+                List<Chunk> chunks = new ArrayList<>(wave);
+                for (int ix = 0; ix < wave && start < size; ix++) {
+                    long chunkEnd = Math.min(start + chunkSize, size);
+                    chunks.add(new Chunk(channel, size, start, chunkEnd));
+                    start = chunkEnd;
+                }
+
+                // --- The first chunk's start is known for sure ---
+                chunks.get(0).knownStart = end;
+
+                // --- Parse all chunks in parallel ---
+                await(usePool.invokeAll(chunks));
+
+                // --- Verify the chunk starts, parse again if necessary ---
+                for (Chunk chunk : chunks) {
+                    if (chunk.start != end) {
+                        chunk.parseFrom(end);
+                    }
+                    if (chunk.error != null) throw chunk.error;
+                    end = chunk.end;
+                }
+
+                // --- Deliver the records ---
+                if (ordered) {
+                    for (Chunk chunk : chunks) {
+                        chunk.deliver(handler);
+                    }
+                } else {
+                    List<Callable<Void>> deliveries = new ArrayList<>(chunks.size());
+                    for (Chunk chunk : chunks) {
+                        deliveries.add(chunk.delivery(handler));
+                    }
+                    await(usePool.invokeAll(deliveries));
+                }
+            }
+        } finally {
+            if (pool == null) usePool.shutdown();
+        }
+    }
+
+    /**
+     * Waits for all tasks to be completed, and rethrows their exceptions.
+     *
+     * @param futures
+     *            {@link Future} of all tasks
+     */
+    private void await(List<? extends Future<?>> futures) throws IOException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while parsing");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IOException("parse failed", cause);
+            }
+        }
+    }
+
+    /**
+     * A chunk of the file, and the result of parsing it.
+     */
+    private class Chunk implements Callable<Void> {
+        private final FileChannel channel;
+        private final long size;            // File size
+        private final long nominalStart;    // Start of this chunk
+        private final long nominalEnd;      // End of this chunk
+        private long knownStart = -1;       // Start of the first record, if known
+        private long start;                 // Start of the first parsed record
+        private long end;                   // End of the last parsed record
+        private List<CSVLine> lines;
+        private IOException error;
+
+        public Chunk(FileChannel channel, long size, long nominalStart, long nominalEnd) {
+            this.channel = channel;
+            this.size = size;
+            this.nominalStart = nominalStart;
+            this.nominalEnd = nominalEnd;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            parseFrom(knownStart >= 0 ? knownStart : findLineStart());
+            return null;
+        }
+
+        /**
+         * Delivers all records of this chunk to the handler.
+         */
+        public void deliver(Handler handler) {
+            for (CSVLine line : lines) {
+                handler.handle(line);
+            }
+            lines = null;
+        }
+
+        /**
+         * Returns a task that delivers all records of this chunk to the handler.
+         */
+        public Callable<Void> delivery(final Handler handler) {
+            return new Callable<Void>() {
+                @Override
+                public Void call() {
+                    deliver(handler);
+                    return null;
+                }
+            };
+        }
+
+        /**
+         * Finds the first position within the chunk that is at the start of a line.
+         *
+         * @return Position of the line start, or the file size if there is none
+         */
+        private long findLineStart() throws IOException {
+            long base = nominalStart - 1;
+            ByteBuffer buf = map(base);
+            int limit = buf.limit();
+            for (int p = 0; p < limit; p++) {
+                byte b = buf.get(p);
+                if (b == '\n') {
+                    return base + p + 1;
+                } else if (b == '\r') {
+                    if (p + 1 < limit && buf.get(p + 1) == '\n') p++;
+                    return base + p + 1;
+                }
+            }
+            return size;
+        }
+
+        /**
+         * Parses all records that start within this chunk, starting at the given
+         * position. Parse errors are stored, since they might be caused by a wrong start
+         * position.
+         *
+         * @param from
+         *            Start position of the first record
+         */
+        public void parseFrom(long from) throws IOException {
+            start = from;
+            end = from;
+            lines = new ArrayList<>();
+            error = null;
+
+            if (from >= nominalEnd) return;
+
+            CSVByteParser parser = new CSVByteParser(map(from), delim, charset);
+            CSVByteRecord rec = new CSVByteRecord();
+            int stop = (int) (nominalEnd - from);
+
+            try {
+                while (parser.position() < stop && parser.next(rec)) {
+                    lines.add(rec.toCSVLine(delim));
+                }
+            } catch (IOException ex) {
+                error = new IOException("bad record at offset "
+                    + (from + parser.position()), ex);
+            }
+
+            end = from + parser.position();
+        }
+
+        /**
+         * Maps the file, from the given position up to its end, but not more than 2 GB.
+         */
+        private ByteBuffer map(long base) throws IOException {
+            long len = Math.min(size - base, Integer.MAX_VALUE);
+            return channel.map(FileChannel.MapMode.READ_ONLY, base, len);
+        }
+    }
+
+}
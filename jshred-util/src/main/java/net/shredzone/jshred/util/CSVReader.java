@@ -0,0 +1,319 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * A CSVReader reads CSV records from a {@link Reader}, one at a time.
+ * <p>
+ * The same delimiter and quoting rules as in {@link CSVLine} are used. Additionally,
+ * quoted columns may contain line breaks, so a record may span several lines. Records
+ * are separated by "\n", "\r\n" or "\r".
+ * <p>
+ * The input is read through an internal buffer, so there is no need to wrap the
+ * {@link Reader} in a {@link java.io.BufferedReader}. Only the current record is kept in
+ * memory, so files of any size can be processed.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * try (CSVReader reader = new CSVReader(new FileReader(file), ',')) {
+ *     CSVLine line;
+ *     while ((line = reader.readLine()) != null) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;
+    private final char delim;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final CSVRecord record = new CSVRecord();
+    private int pos = 0;            // Position of the next char in the buffer
+    private int limit = 0;          // Number of chars in the buffer
+    private long lineNumber = 1;    // Current line number
+
+    /**
+     * Creates a new CSVReader with ';' as delimiter.
+     *
+     * @param in
+     *            {@link Reader} to read the CSV data from
+     */
+    public CSVReader(Reader in) {
+        this(in, ';');
+    }
+
+    /**
+     * Creates a new CSVReader with the given delimiter.
+     *
+     * @param in
+     *            {@link Reader} to read the CSV data from
+     * @param delim
+     *            Delimiter
+     */
+    public CSVReader(Reader in, char delim) {
+        if (delim == '"')
+            throw new IllegalArgumentException("quote char is not a valid delimiter");
+        if (delim == '\r' || delim == '\n')
+            throw new IllegalArgumentException("line break is not a valid delimiter");
+
+        this.in = in;
+        this.delim = delim;
+    }
+
+    /**
+     * Creates a new CSVReader that reads from an {@link InputStream}.
+     *
+     * @param in
+     *            {@link InputStream} to read the CSV data from
+     * @param charset
+     *            {@link Charset} of the CSV data
+     * @param delim
+     *            Delimiter
+     */
+    public CSVReader(InputStream in, Charset charset, char delim) {
+        this(new InputStreamReader(in, charset), delim);
+    }
+
+    /**
+     * Gets the delimiter character.
+     *
+     * @return Delimiter
+     */
+    public char getDelimiter() {
+        return delim;
+    }
+
+    /**
+     * Gets the current line number. Lines are counted from 1. Line breaks within quoted
+     * columns are counted as well.
+     *
+     * @return Line number
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Reads the next record. An empty line results in a {@link CSVLine} without
+     * columns.
+     *
+     * @return {@link CSVLine} containing the record, or {@code null} if the end of the
+     *         stream has been reached
+     * @throws IOException
+     *             if the stream could not be read, or if the record was badly quoted
+     */
+    public CSVLine readLine() throws IOException {
+        if (!read(record)) return null;
+        return record.toCSVLine(delim);
+    }
+
+    /**
+     * Reads the next record into the given {@link CSVRecord}. The previous content of
+     * the {@link CSVRecord} is replaced. An empty line results in a record without
+     * columns.
+     * <p>
+     * This method does not allocate any objects, except for growing the
+     * {@link CSVRecord} buffers if a record is larger than all records before.
+     *
+     * @param rec
+     *            {@link CSVRecord} to read the record into
+     * @return {@code true} if a record was read, {@code false} if the end of the stream
+     *         has been reached
+     * @throws IOException
+     *             if the stream could not be read, or if the record was badly quoted
+     */
+    public boolean read(CSVRecord rec) throws IOException {
+        rec.clear();
+
+        int c = peek();
+        if (c < 0) return false;
+
+        // --- Empty line ---
+        if (c == '\r' || c == '\n') {
+            skipLineBreak();
+            return true;
+        }
+
+        while (true) {
+            rec.startColumn();
+
+            if (c == '"') {
+                // --- Quoted Column ---
+                pos++;
+                readQuoted(rec);
+                c = peek();
+                if (c >= 0 && c != delim && c != '\r' && c != '\n')
+                    throw new IOException("bad quoting in line " + lineNumber);
+
+            } else {
+                // --- Unquoted Column ---
+                c = readUnquoted(rec);
+            }
+
+            rec.endColumn();
+
+            if (c != delim) break;
+
+            // --- A delimiter at the end of the line means an empty column ---
+            pos++;
+            c = peek();
+            if (c < 0 || c == '\r' || c == '\n') {
+                rec.startColumn();
+                rec.endColumn();
+                break;
+            }
+        }
+
+        skipLineBreak();
+        return true;
+    }
+
+    /**
+     * Closes the underlying {@link Reader}.
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads an unquoted column, up to the next delimiter or line break.
+     *
+     * @param rec
+     *            {@link CSVRecord} to append the column content to
+     * @return The char that ended the column, or -1 if the end of the stream has been
+     *         reached
+     */
+    private int readUnquoted(CSVRecord rec) throws IOException {
+        while (pos < limit || fill()) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == delim || c == '\r' || c == '\n') {
+                    rec.append(buffer, start, pos - start);
+                    return c;
+                }
+                pos++;
+            }
+            rec.append(buffer, start, pos - start);
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a quoted column, up to the closing quote char. The opening quote char must
+     * already be consumed. Doubled quote chars are unescaped.
+     *
+     * @param rec
+     *            {@link CSVRecord} to append the column content to
+     */
+    private void readQuoted(CSVRecord rec) throws IOException {
+        char last = 0;
+        while (pos < limit || fill()) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"') break;
+                if (c == '\r' || (c == '\n' && last != '\r')) lineNumber++;
+                last = c;
+                pos++;
+            }
+            rec.append(buffer, start, pos - start);
+
+            if (pos < limit) {
+                // --- Quote char found, it is either doubled or the closing one ---
+                pos++;
+                if (peek() != '"') return;
+                rec.append('"');
+                pos++;
+                last = '"';
+            }
+        }
+        throw new IOException("ending quote char missing in line " + lineNumber);
+    }
+
+    /**
+     * Skips a line break at the current position, if there is one.
+     */
+    private void skipLineBreak() throws IOException {
+        int c = peek();
+        if (c == '\r') {
+            next();
+            if (peek() == '\n') next();
+            lineNumber++;
+        } else if (c == '\n') {
+            next();
+            lineNumber++;
+        }
+    }
+
+    /**
+     * Returns the next char without consuming it.
+     *
+     * @return Next char, or -1 if the end of the stream has been reached
+     */
+    private int peek() throws IOException {
+        if (pos >= limit && !fill()) return -1;
+        return buffer[pos];
+    }
+
+    /**
+     * Returns the next char and consumes it.
+     *
+     * @return Next char, or -1 if the end of the stream has been reached
+     */
+    private int next() throws IOException {
+        if (pos >= limit && !fill()) return -1;
+        return buffer[pos++];
+    }
+
+    /**
+     * Fills the buffer.
+     *
+     * @return {@code true} if there are more chars, {@code false} if the end of the
+     *         stream has been reached
+     */
+    private boolean fill() throws IOException {
+        int len;
+        do {
+            len = in.read(buffer, 0, buffer.length);
+        } while (len == 0);
+
+        if (len < 0) return false;
+
+        pos = 0;
+        limit = len;
+        return true;
+    }
+
+}
@@ -0,0 +1,418 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A CSVRecord holds the columns of one CSV record. Unlike {@link CSVLine}, it is meant to
+ * be reused for each record that is read, so reading does not allocate any objects.
+ * <p>
+ * All columns are stored in a single char buffer, which grows if necessary. Quoted
+ * columns are already unquoted. {@link #get(int)} returns a {@link CharSequence} view of
+ * a column, and {@link #getString(int)} creates a {@link String} only if it is really
+ * needed.
+ * <p>
+ * The content and all views are only valid until the next record is read into this
+ * CSVRecord.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * CSVRecord record = new CSVRecord();
+ * while (reader.read(record)) {
+ *     CharSequence name = record.get(0);
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVRecord {
+    private char[] buffer = new char[256];
+    private int length = 0;                 // Number of used chars in the buffer
+    private int[] starts = new int[16];     // Start of each column
+    private int[] ends = new int[16];       // End of each column
+    private Column[] views = new Column[16];
+    private int count = 0;                  // Number of columns
+    private final NumberParser parser = new NumberParser() {
+        @Override
+        protected int charAt(int index) {
+            return buffer[index];
+        }
+
+        @Override
+        protected String getString(int col) {
+            return CSVRecord.this.getString(col);
+        }
+    };
+
+    /**
+     * Gets the number of columns.
+     *
+     * @return Number of columns
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets a column. The returned {@link CharSequence} is a view on the internal buffer.
+     * It is only valid until the next record is read, and it is reused for the next
+     * record.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@link CharSequence} of that column
+     */
+    public CharSequence get(int col) {
+        checkColumn(col);
+        Column view = views[col];
+        if (view == null) {
+            view = new Column(col);
+            views[col] = view;
+        }
+        return view;
+    }
+
+    /**
+     * Gets a column as {@link String}.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@link String} of that column
+     */
+    public String getString(int col) {
+        checkColumn(col);
+        return new String(buffer, starts[col], ends[col] - starts[col]);
+    }
+
+    /**
+     * Gets the length of a column.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return Length of that column
+     */
+    public int length(int col) {
+        checkColumn(col);
+        return ends[col] - starts[col];
+    }
+
+    /**
+     * Checks if a column is empty.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code true} if the column is empty
+     */
+    public boolean isEmpty(int col) {
+        return length(col) == 0;
+    }
+
+    /**
+     * Gets a column as {@code int}. The value is parsed directly from the internal
+     * buffer, without creating a {@link String}.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code int} value of that column
+     * @throws NumberFormatException
+     *             if the column does not contain a valid {@code int} value
+     */
+    public int getInt(int col) {
+        checkColumn(col);
+        return parser.parseInt(col, starts[col], ends[col]);
+    }
+
+    /**
+     * Gets a column as {@code long}. The value is parsed directly from the internal
+     * buffer, without creating a {@link String}.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code long} value of that column
+     * @throws NumberFormatException
+     *             if the column does not contain a valid {@code long} value
+     */
+    public long getLong(int col) {
+        checkColumn(col);
+        return parser.parseLong(col, starts[col], ends[col]);
+    }
+
+    /**
+     * Gets a column as {@code double}. Simple decimal numbers like "-123.45" are parsed
+     * directly from the internal buffer. All other formats are parsed by
+     * {@link Double#parseDouble(String)}.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code double} value of that column
+     * @throws NumberFormatException
+     *             if the column does not contain a valid {@code double} value
+     */
+    public double getDouble(int col) {
+        checkColumn(col);
+        return parser.parseDouble(col, starts[col], ends[col]);
+    }
+
+    /**
+     * Gets a column as {@code boolean}. "true" (in any case) and "1" are {@code true},
+     * all other values are {@code false}.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@code boolean} value of that column
+     */
+    public boolean getBoolean(int col) {
+        checkColumn(col);
+        return parser.parseBoolean(starts[col], ends[col]);
+    }
+
+    /**
+     * Gets a column as {@link Date}.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @param format
+     *            {@link DateFormat} to parse the column with
+     * @return {@link Date} of that column
+     * @throws ParseException
+     *             if the column could not be parsed
+     */
+    public Date getDate(int col, DateFormat format) throws ParseException {
+        return format.parse(getString(col));
+    }
+
+    /**
+     * Checks if a column is equal to the given {@link CharSequence}.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @param cs
+     *            {@link CharSequence} to compare with
+     * @return {@code true} if both are equal
+     */
+    public boolean contentEquals(int col, CharSequence cs) {
+        int len = length(col);
+        if (cs.length() != len) return false;
+
+        int start = starts[col];
+        for (int ix = 0; ix < len; ix++) {
+            if (buffer[start + ix] != cs.charAt(ix)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the content of a column into a char array.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @param dest
+     *            Destination array
+     * @param offset
+     *            Offset in the destination array
+     * @return Number of chars that were copied
+     */
+    public int copyTo(int col, char[] dest, int offset) {
+        int len = length(col);
+        System.arraycopy(buffer, starts[col], dest, offset, len);
+        return len;
+    }
+
+    /**
+     * Creates a {@link CSVLine} with the content of this record.
+     *
+     * @param delim
+     *            Delimiter of the {@link CSVLine}
+     * @return {@link CSVLine} of this record
+     */
+    public CSVLine toCSVLine(char delim) {
+        CSVLine line = new CSVLine(delim);
+        line.ensureCapacity(count);
+        for (int ix = 0; ix < count; ix++) {
+            line.add(getString(ix));
+        }
+        return line;
+    }
+
+    /**
+     * Removes all columns.
+     */
+    public void clear() {
+        length = 0;
+        count = 0;
+    }
+
+    /**
+     * Parses a single CSV line into this record. The previous content is removed. The
+     * same rules as in {@link CSVLine#addLine(String)} are used.
+     *
+     * @param text
+     *            Line to be parsed
+     * @param delim
+     *            Delimiter
+     */
+    public void parse(CharSequence text, char delim) {
+        clear();
+
+        int max = text.length();
+        int ix = 0;
+
+        while (ix < max) {
+            startColumn();
+
+            if (text.charAt(ix) == '"') {
+                // --- Quoted Column ---
+                ix++;
+                while (true) {
+                    if (ix >= max)
+                        throw new IllegalArgumentException("ending quote char missing");
+
+                    char c = text.charAt(ix++);
+                    if (c == '"') {
+                        if (ix >= max || text.charAt(ix) != '"') break;
+                        ix++;
+                    }
+                    append(c);
+                }
+                if (ix < max && text.charAt(ix) != delim)
+                    throw new IllegalArgumentException("bad quoting");
+
+            } else {
+                // --- Unquoted Column ---
+                while (ix < max && text.charAt(ix) != delim) {
+                    append(text.charAt(ix++));
+                }
+            }
+
+            endColumn();
+
+            if (ix < max) {
+                // --- Skip the delimiter, add an empty column if it ends the line ---
+                ix++;
+                if (ix >= max) {
+                    startColumn();
+                    endColumn();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toCSVLine(';').toString();
+    }
+
+    /**
+     * Starts a new column.
+     */
+    void startColumn() {
+        if (count == starts.length) {
+            int newSize = count * 2;
+            starts = Arrays.copyOf(starts, newSize);
+            ends = Arrays.copyOf(ends, newSize);
+            views = Arrays.copyOf(views, newSize);
+        }
+        starts[count] = length;
+    }
+
+    /**
+     * Finishes the current column.
+     */
+    void endColumn() {
+        ends[count++] = length;
+    }
+
+    /**
+     * Appends a char to the current column.
+     *
+     * @param c
+     *            char to append
+     */
+    void append(char c) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, length * 2);
+        }
+        buffer[length++] = c;
+    }
+
+    /**
+     * Appends chars to the current column.
+     *
+     * @param src
+     *            Source array
+     * @param offset
+     *            Offset in the source array
+     * @param len
+     *            Number of chars to append
+     */
+    void append(char[] src, int offset, int len) {
+        if (length + len > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + len));
+        }
+        System.arraycopy(src, offset, buffer, length, len);
+        length += len;
+    }
+
+    private void checkColumn(int col) {
+        if (col < 0 || col >= count)
+            throw new IndexOutOfBoundsException("Column: " + col + ", Size: " + count);
+    }
+
+    /**
+     * A {@link CharSequence} view of a column.
+     */
+    private class Column implements CharSequence {
+        private final int col;
+
+        public Column(int col) {
+            this.col = col;
+        }
+
+        @Override
+        public int length() {
+            return CSVRecord.this.length(col);
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length())
+                throw new IndexOutOfBoundsException("Index: " + index);
+            return buffer[starts[col] + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return getString(col);
+        }
+    }
+
+}
@@ -0,0 +1,369 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A CSVSchema describes the columns of a CSV file by name and type.
+ * <p>
+ * Columns are declared once, and then bound to the header record of the file. This
+ * resolves the column names to column indices, so the header names need not to be
+ * looked up again for each record. The returned {@link Column} handles read typed values
+ * from a {@link CSVRecord}, and primitive values are parsed directly from the record
+ * buffer.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * CSVSchema schema = new CSVSchema();
+ * CSVSchema.Column id = schema.addColumn("id", CSVSchema.Type.LONG);
+ * CSVSchema.Column price = schema.addColumn("price", CSVSchema.Type.DOUBLE);
+ * schema.readHeader(reader);
+ *
+ * CSVRecord record = new CSVRecord();
+ * while (reader.read(record)) {
+ *     long idValue = id.getLong(record);
+ *     double priceValue = price.getDouble(record);
+ *     ...
+ * }
+ * </pre>
+ *
+ * A CSVSchema is not thread safe.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVSchema {
+
+    /**
+     * The type of a column.
+     */
+    public enum Type {
+        INT, LONG, DOUBLE, BOOLEAN, DATE, STRING
+    }
+
+    private final List<Column> columns = new ArrayList<>();
+    private boolean bound = false;
+
+    /**
+     * Adds a column to the schema.
+     *
+     * @param name
+     *            Column name, as found in the header record
+     * @param type
+     *            Column {@link Type}. {@link Type#DATE} columns use the format
+     *            "yyyy-MM-dd".
+     * @return {@link Column} handle
+     */
+    public Column addColumn(String name, Type type) {
+        if (type == Type.DATE) {
+            return addDateColumn(name, new SimpleDateFormat("yyyy-MM-dd"));
+        }
+        return add(name, type, null);
+    }
+
+    /**
+     * Adds a {@link Type#DATE} column to the schema.
+     *
+     * @param name
+     *            Column name, as found in the header record
+     * @param format
+     *            {@link DateFormat} used for parsing the column
+     * @return {@link Column} handle
+     */
+    public Column addDateColumn(String name, DateFormat format) {
+        if (format == null) throw new NullPointerException("format must not be null");
+        return add(name, Type.DATE, format);
+    }
+
+    /**
+     * Gets all declared columns, in the order they were added.
+     *
+     * @return List of {@link Column}
+     */
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Checks if the schema has been bound to column indices.
+     *
+     * @return {@code true} if bound
+     */
+    public boolean isBound() {
+        return bound;
+    }
+
+    /**
+     * Binds the columns to the given header record. Each declared column is looked up
+     * by its name. The header may contain further columns that are not declared.
+     *
+     * @param header
+     *            {@link CSVRecord} containing the column names
+     * @throws IllegalArgumentException
+     *             if a declared column is missing in the header
+     */
+    public void bind(CSVRecord header) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int ix = header.size() - 1; ix >= 0; ix--) {
+            index.put(header.getString(ix).trim(), ix);     // first occurrence wins
+        }
+
+        for (Column col : columns) {
+            Integer pos = index.get(col.name);
+            if (pos == null)
+                throw new IllegalArgumentException("column '" + col.name
+                                + "' not found in header");
+            col.index = pos;
+        }
+        bound = true;
+    }
+
+    /**
+     * Binds the columns to their position, for CSV files without a header record. The
+     * first declared column is bound to the first CSV column, and so on.
+     */
+    public void bindByPosition() {
+        for (int ix = 0; ix < columns.size(); ix++) {
+            columns.get(ix).index = ix;
+        }
+        bound = true;
+    }
+
+    /**
+     * Reads the header record from a {@link CSVReader}, and binds the columns to it.
+     *
+     * @param reader
+     *            {@link CSVReader} positioned at the header record
+     * @throws IOException
+     *             if the header record could not be read, or a declared column is
+     *             missing in the header
+     */
+    public void readHeader(CSVReader reader) throws IOException {
+        CSVRecord header = new CSVRecord();
+        if (!reader.read(header)) throw new IOException("header record missing");
+        try {
+            bind(header);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private Column add(String name, Type type, DateFormat format) {
+        if (name == null) throw new NullPointerException("name must not be null");
+        if (type == null) throw new NullPointerException("type must not be null");
+        for (Column col : columns) {
+            if (col.name.equals(name))
+                throw new IllegalArgumentException("column '" + name
+                                + "' already declared");
+        }
+
+        Column col = new Column(name, type, format);
+        columns.add(col);
+        bound = false;
+        return col;
+    }
+
+    /**
+     * A Column handle of a {@link CSVSchema}. It reads the values of its column from a
+     * {@link CSVRecord}. The schema must be bound before.
+     */
+    public static class Column {
+        private final String name;
+        private final Type type;
+        private DateFormat format;          // Date format, created on demand
+        private int index = -1;
+
+        private Column(String name, Type type, DateFormat format) {
+            this.name = name;
+            this.type = type;
+            this.format = format;
+        }
+
+        /**
+         * Gets the column name.
+         *
+         * @return Column name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the column type.
+         *
+         * @return {@link Type}
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Gets the column index the column is bound to.
+         *
+         * @return Column index, or -1 if the schema is not bound yet
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Checks if the column is empty in the given record. Empty columns are regarded
+         * as missing values. A column that is beyond the end of the record is empty as
+         * well.
+         *
+         * @param rec
+         *            {@link CSVRecord} to read from
+         * @return {@code true} if the column is empty
+         */
+        public boolean isEmpty(CSVRecord rec) {
+            return checkIndex() >= rec.size() || rec.isEmpty(index);
+        }
+
+        /**
+         * Gets the column as {@code int}.
+         *
+         * @param rec
+         *            {@link CSVRecord} to read from
+         * @return {@code int} value
+         * @throws NumberFormatException
+         *             if the column does not contain an {@code int} value
+         */
+        public int getInt(CSVRecord rec) {
+            return rec.getInt(checkIndex());
+        }
+
+        /**
+         * Gets the column as {@code long}.
+         *
+         * @param rec
+         *            {@link CSVRecord} to read from
+         * @return {@code long} value
+         * @throws NumberFormatException
+         *             if the column does not contain a {@code long} value
+         */
+        public long getLong(CSVRecord rec) {
+            return rec.getLong(checkIndex());
+        }
+
+        /**
+         * Gets the column as {@code double}.
+         *
+         * @param rec
+         *            {@link CSVRecord} to read from
+         * @return {@code double} value
+         * @throws NumberFormatException
+         *             if the column does not contain a {@code double} value
+         */
+        public double getDouble(CSVRecord rec) {
+            return rec.getDouble(checkIndex());
+        }
+
+        /**
+         * Gets the column as {@code boolean}.
+         *
+         * @param rec
+         *            {@link CSVRecord} to read from
+         * @return {@code boolean} value
+         * @see CSVRecord#getBoolean(int)
+         */
+        public boolean getBoolean(CSVRecord rec) {
+            return rec.getBoolean(checkIndex());
+        }
+
+        /**
+         * Gets the column as {@link Date}. If the column was not declared as
+         * {@link Type#DATE}, the format "yyyy-MM-dd" is used.
+         *
+         * @param rec
+         *            {@link CSVRecord} to read from
+         * @return {@link Date}, or {@code null} if the column is empty
+         * @throws ParseException
+         *             if the column could not be parsed
+         */
+        public Date getDate(CSVRecord rec) throws ParseException {
+            if (isEmpty(rec)) return null;
+            if (format == null) {
+                format = new SimpleDateFormat("yyyy-MM-dd");
+            }
+            return rec.getDate(index, format);
+        }
+
+        /**
+         * Gets the column as {@link String}.
+         *
+         * @param rec
+         *            {@link CSVRecord} to read from
+         * @return {@link String}
+         */
+        public String getString(CSVRecord rec) {
+            return rec.getString(checkIndex());
+        }
+
+        /**
+         * Gets the column as object of its declared {@link Type}. Primitive values are
+         * boxed, so the typed getters should be preferred.
+         *
+         * @param rec
+         *            {@link CSVRecord} to read from
+         * @return Column value, or {@code null} if the column is empty
+         * @throws IllegalArgumentException
+         *             if the column could not be parsed
+         */
+        public Object getValue(CSVRecord rec) {
+            if (isEmpty(rec)) return null;
+            try {
+                switch (type) {
+                    case INT:     return rec.getInt(index);
+                    case LONG:    return rec.getLong(index);
+                    case DOUBLE:  return rec.getDouble(index);
+                    case BOOLEAN: return rec.getBoolean(index);
+                    case DATE:    return rec.getDate(index, format);
+                    default:      return rec.getString(index);
+                }
+            } catch (ParseException ex) {
+                throw new IllegalArgumentException("bad date in column '" + name + "'", ex);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("bad number in column '" + name + "'", ex);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name + ':' + type;
+        }
+
+        private int checkIndex() {
+            if (index < 0) throw new IllegalStateException("schema is not bound");
+            return index;
+        }
+    }
+
+}
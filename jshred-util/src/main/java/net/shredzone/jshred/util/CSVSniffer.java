@@ -0,0 +1,315 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A CSVSniffer detects the {@link CSVDialect} of a CSV file, by looking at the first
+ * chars of the file.
+ * <p>
+ * Only a bounded prefix of the file is read. The {@link Reader} must support
+ * {@link Reader#mark(int)}, and is reset to its original position afterwards, so the
+ * file can be read from the beginning by a {@link CSVReader}. The delimiter is detected
+ * among a list of candidates, by choosing the one that splits the sampled records into
+ * the most consistent number of columns. The header detection compares the first record
+ * with the types and lengths of the other records.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * BufferedReader in = new BufferedReader(new FileReader(file));
+ * CSVDialect dialect = new CSVSniffer().sniff(in);
+ * CSVReader reader = dialect.createReader(in);
+ * if (dialect.hasHeader()) {
+ *     schema.readHeader(reader);
+ * }
+ * </pre>
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVSniffer {
+    private static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+    private static final int MAX_RECORDS = 1000;
+
+    private int sampleSize = DEFAULT_SAMPLE_SIZE;
+    private char[] candidates = {',', ';', '\t', '|'};
+
+    /**
+     * Sets the maximum number of chars that are read for detection. Defaults to 64 K
+     * chars.
+     *
+     * @param sampleSize
+     *            Sample size
+     */
+    public void setSampleSize(int sampleSize) {
+        if (sampleSize <= 0) throw new IllegalArgumentException("invalid sample size");
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Sets the delimiter candidates. If several candidates are equally good, the first
+     * one is preferred. Defaults to ',', ';', tab and '|'.
+     *
+     * @param candidates
+     *            Delimiter candidates
+     */
+    public void setCandidates(char... candidates) {
+        if (candidates.length == 0) throw new IllegalArgumentException("no candidates");
+        for (char c : candidates) {
+            if (c == '"' || c == '\r' || c == '\n')
+                throw new IllegalArgumentException("invalid delimiter candidate");
+        }
+        this.candidates = candidates.clone();
+    }
+
+    /**
+     * Detects the {@link CSVDialect} of the data of a {@link Reader}. The reader is
+     * reset to its original position afterwards.
+     *
+     * @param in
+     *            {@link Reader} to read from. It must support {@link Reader#mark(int)}.
+     * @return Detected {@link CSVDialect}
+     * @throws IOException
+     *             if the reader could not be read
+     */
+    public CSVDialect sniff(Reader in) throws IOException {
+        if (!in.markSupported())
+            throw new IllegalArgumentException("reader does not support mark");
+
+        char[] sample = new char[sampleSize];
+        int len = 0;
+        in.mark(sampleSize);
+        try {
+            while (len < sample.length) {
+                int read = in.read(sample, len, sample.length - len);
+                if (read < 0) break;
+                len += read;
+            }
+        } catch (IOException ex) {
+            // --- Try to reset, but do not hide the original exception ---
+            try {
+                in.reset();
+            } catch (IOException ex2) {
+                ex.addSuppressed(ex2);
+            }
+            throw ex;
+        }
+        in.reset();
+
+        return sniff(new String(sample, 0, len), len == sample.length);
+    }
+
+    /**
+     * Detects the {@link CSVDialect} of a CSV text sample.
+     *
+     * @param sample
+     *            Sample of the CSV file, starting at the beginning of the file
+     * @param truncated
+     *            {@code true} if the sample does not contain the entire file, so the
+     *            last record might be incomplete
+     * @return Detected {@link CSVDialect}
+     */
+    public CSVDialect sniff(String sample, boolean truncated) {
+        char delim = candidates[0];
+        List<CSVLine> records = null;
+        double bestScore = 0.0;
+
+        for (char candidate : candidates) {
+            List<CSVLine> parsed = parse(sample, candidate, truncated);
+            double score = score(parsed);
+            if (score > bestScore) {
+                bestScore = score;
+                delim = candidate;
+                records = parsed;
+            }
+        }
+
+        if (records == null) {
+            // --- No candidate splits the records, so it is a single column file ---
+            records = parse(sample, delim, truncated);
+            if (records == null) records = new ArrayList<>();
+        }
+
+        return new CSVDialect(delim, isQuoted(sample, delim), hasHeader(records),
+                        findLineSeparator(sample));
+    }
+
+    /**
+     * Creates a {@link CSVReader} for a {@link Reader} of unknown dialect.
+     *
+     * @param in
+     *            {@link Reader} to read from. If it does not support marks, it is
+     *            wrapped into a {@link BufferedReader}.
+     * @return {@link CSVReader} for the detected dialect
+     */
+    public CSVReader open(Reader in) throws IOException {
+        Reader markable = (in.markSupported() ? in : new BufferedReader(in, sampleSize));
+        return sniff(markable).createReader(markable);
+    }
+
+    /**
+     * Creates a {@link CSVReader} for an {@link InputStream} of unknown dialect.
+     *
+     * @param in
+     *            {@link InputStream} to read from
+     * @param charset
+     *            {@link Charset} of the CSV data
+     * @return {@link CSVReader} for the detected dialect
+     */
+    public CSVReader open(InputStream in, Charset charset) throws IOException {
+        return open(new BufferedReader(new InputStreamReader(in, charset), sampleSize));
+    }
+
+    /**
+     * Parses the sample with the given delimiter.
+     *
+     * @return List of records, or {@code null} if the sample is not a valid CSV file
+     *         with that delimiter
+     */
+    private List<CSVLine> parse(String sample, char delim, boolean truncated) {
+        List<CSVLine> result = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(new StringReader(sample), delim)) {
+            CSVLine line;
+            while (result.size() < MAX_RECORDS && (line = reader.readLine()) != null) {
+                if (!line.isEmpty()) result.add(line);
+            }
+        } catch (IOException ex) {
+            // --- Bad quoting, unless the sample was cut within the last record ---
+            if (!truncated) return null;
+            return result;
+        }
+
+        // --- The last record might be incomplete ---
+        if (truncated && result.size() > 1) {
+            result.remove(result.size() - 1);
+        }
+        return result;
+    }
+
+    /**
+     * Rates how well a delimiter splits the records. The score is the share of records
+     * that have the most common number of columns, weighted by the number of columns.
+     *
+     * @return Score, 0 if the delimiter does not split the records at all
+     */
+    private double score(List<CSVLine> records) {
+        if (records == null || records.isEmpty()) return 0.0;
+
+        int[] counts = new int[64];
+        for (CSVLine line : records) {
+            int cols = Math.min(line.size(), counts.length - 1);
+            counts[cols]++;
+        }
+
+        int mode = 0;
+        for (int ix = 1; ix < counts.length; ix++) {
+            if (counts[ix] > counts[mode]) mode = ix;
+        }
+        if (mode <= 1) return 0.0;
+
+        double consistency = (double) counts[mode] / records.size();
+        return consistency * consistency * Math.log(mode);
+    }
+
+    /**
+     * Checks if any column of the sample is quoted.
+     */
+    private boolean isQuoted(String sample, char delim) {
+        char last = '\n';
+        for (int ix = 0; ix < sample.length(); ix++) {
+            char c = sample.charAt(ix);
+            if (c == '"' && (last == delim || last == '\n' || last == '\r')) return true;
+            last = c;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the first record is a header. For each column, the first record votes
+     * for a header if the other records are all numeric and the first is not, or if the
+     * other records all have the same length and the first has a different length.
+     */
+    private boolean hasHeader(List<CSVLine> records) {
+        if (records.size() < 2) return false;
+
+        CSVLine first = records.get(0);
+        int votes = 0;
+        for (int col = 0; col < first.size(); col++) {
+            boolean numeric = true;
+            int length = -1;
+            for (int ix = 1; ix < records.size(); ix++) {
+                CSVLine line = records.get(ix);
+                if (line.size() != first.size()) continue;
+                String value = line.get(col);
+                numeric &= isNumeric(value);
+                if (length == -1) length = value.length();
+                else if (length != value.length()) length = -2;
+            }
+
+            String title = first.get(col);
+            if (numeric && length != -1) {
+                votes += isNumeric(title) ? -1 : 1;
+            } else if (length >= 0) {
+                votes += (title.length() != length) ? 1 : -1;
+            }
+        }
+        return votes > 0;
+    }
+
+    private static boolean isNumeric(String value) {
+        if (value.isEmpty()) return false;
+        try {
+            Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Finds the first line separator of the sample, outside of quoted columns.
+     */
+    private String findLineSeparator(String sample) {
+        boolean inQuote = false;
+        for (int ix = 0; ix < sample.length(); ix++) {
+            char c = sample.charAt(ix);
+            if (c == '"') {
+                inQuote = !inQuote;
+            } else if (!inQuote && c == '\r') {
+                boolean crlf = (ix + 1 < sample.length() && sample.charAt(ix + 1) == '\n');
+                return crlf ? "\r\n" : "\r";
+            } else if (!inQuote && c == '\n') {
+                return "\n";
+            }
+        }
+        return "\n";
+    }
+
+}
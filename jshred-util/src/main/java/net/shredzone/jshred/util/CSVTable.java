@@ -0,0 +1,815 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A CSVTable keeps the content of a CSV file in memory, column by column.
+ * <p>
+ * The columns are described by a {@link CSVSchema}. Numeric, boolean and date columns
+ * are stored in primitive arrays, and string columns are dictionary encoded, so each
+ * distinct string is only stored once. Empty columns are regarded as {@code null}
+ * values, and are marked in a bitmap. This takes a fraction of the memory of a list of
+ * {@link CSVLine}, and column scans run over consecutive arrays.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * CSVSchema schema = new CSVSchema();
+ * schema.addColumn("product", CSVSchema.Type.STRING);
+ * schema.addColumn("price", CSVSchema.Type.DOUBLE);
+ *
+ * CSVTable table = CSVTable.load(new CSVReader(new FileReader(file), ','), schema);
+ * double total = table.getColumn("price").sum();
+ * int products = table.getColumn("product").countDistinct();
+ * </pre>
+ *
+ * A CSVTable cannot be modified after loading.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVTable {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<Column> columns;
+    private final Map<String, Column> names;
+    private int rows = 0;
+
+    /**
+     * Creates a new, empty CSVTable for the given schema.
+     */
+    private CSVTable(CSVSchema schema) {
+        List<CSVSchema.Column> cols = schema.getColumns();
+        columns = new ArrayList<Column>(cols.size());
+        names = new HashMap<String, Column>();
+        for (CSVSchema.Column col : cols) {
+            Column column;
+            switch (col.getType()) {
+                case INT:       column = new IntColumn(col);     break;
+                case LONG:
+                case DATE:      column = new LongColumn(col);    break;
+                case DOUBLE:    column = new DoubleColumn(col);  break;
+                case BOOLEAN:   column = new BooleanColumn(col); break;
+                default:        column = new StringColumn(col);  break;
+            }
+            columns.add(column);
+            names.put(col.getName(), column);
+        }
+    }
+
+    /**
+     * Loads a CSV file into a new CSVTable. If the schema is not bound yet, the first
+     * record is read as header record, and the schema is bound to it. Otherwise all
+     * records are read as data records.
+     *
+     * @param reader
+     *            {@link CSVReader} to read the CSV file from. It is not closed.
+     * @param schema
+     *            {@link CSVSchema} describing the columns to be loaded. Columns that
+     *            are not declared in the schema are skipped.
+     * @return CSVTable with the loaded data
+     * @throws IOException
+     *             if the file could not be read, or a column could not be parsed
+     */
+    public static CSVTable load(CSVReader reader, CSVSchema schema) throws IOException {
+        if (!schema.isBound()) {
+            schema.readHeader(reader);
+        }
+
+        CSVTable table = new CSVTable(schema);
+        CSVRecord rec = new CSVRecord();
+        while (true) {
+            long line = reader.getLineNumber();
+            if (!reader.read(rec)) break;
+            if (rec.size() == 0) continue;      // skip empty lines
+
+            for (Column col : table.columns) {
+                try {
+                    col.read(rec);
+                } catch (NumberFormatException | ParseException ex) {
+                    throw new IOException("bad value in line " + line + ", column '"
+                        + col.getName() + "'", ex);
+                }
+            }
+            table.rows++;
+        }
+
+        for (Column col : table.columns) {
+            col.trim();
+        }
+        return table;
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return Number of rows
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Gets all columns, in the order of the schema.
+     *
+     * @return List of {@link Column}
+     */
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Gets a column by its index in the schema.
+     *
+     * @param index
+     *            Column index, starting from 0
+     * @return {@link Column}
+     */
+    public Column getColumn(int index) {
+        return columns.get(index);
+    }
+
+    /**
+     * Gets a column by its name.
+     *
+     * @param name
+     *            Column name
+     * @return {@link Column}
+     * @throws IllegalArgumentException
+     *             if there is no such column
+     */
+    public Column getColumn(String name) {
+        Column col = names.get(name);
+        if (col == null)
+            throw new IllegalArgumentException("unknown column '" + name + "'");
+        return col;
+    }
+
+    /**
+     * A column of a {@link CSVTable}. Rows are counted from 0.
+     */
+    public abstract static class Column {
+        private final CSVSchema.Column source;
+        private long[] nulls = new long[INITIAL_CAPACITY / 64];
+        protected int size = 0;
+
+        private Column(CSVSchema.Column source) {
+            this.source = source;
+        }
+
+        /**
+         * Gets the column name.
+         *
+         * @return Column name
+         */
+        public String getName() {
+            return source.getName();
+        }
+
+        /**
+         * Gets the column type.
+         *
+         * @return Column {@link CSVSchema.Type}
+         */
+        public CSVSchema.Type getType() {
+            return source.getType();
+        }
+
+        /**
+         * Checks if a value is {@code null}, because the CSV column was empty.
+         *
+         * @param row
+         *            Row number
+         * @return {@code true} if the value is {@code null}
+         */
+        public boolean isNull(int row) {
+            checkRow(row);
+            return (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+
+        /**
+         * Counts the {@code null} values of this column.
+         *
+         * @return Number of {@code null} values
+         */
+        public int countNulls() {
+            int result = 0;
+            for (long word : nulls) {
+                result += Long.bitCount(word);
+            }
+            return result;
+        }
+
+        /**
+         * Gets a value as object. Primitive values are boxed, and dates are returned as
+         * {@link Date}.
+         *
+         * @param row
+         *            Row number
+         * @return Value, or {@code null} if the value is {@code null}
+         */
+        public abstract Object getValue(int row);
+
+        /**
+         * Sums up all values that are not {@code null}.
+         *
+         * @return Sum
+         * @throws UnsupportedOperationException
+         *             if the column is not numeric
+         */
+        public double sum() {
+            throw new UnsupportedOperationException("not supported");
+        }
+
+        /**
+         * Gets the minimum of all values that are not {@code null}.
+         *
+         * @return Minimum, or {@link Double#NaN} if there are no values
+         * @throws UnsupportedOperationException
+         *             if the column is not numeric
+         */
+        public double min() {
+            throw new UnsupportedOperationException("not supported");
+        }
+
+        /**
+         * Gets the maximum of all values that are not {@code null}.
+         *
+         * @return Maximum, or {@link Double#NaN} if there are no values
+         * @throws UnsupportedOperationException
+         *             if the column is not numeric
+         */
+        public double max() {
+            throw new UnsupportedOperationException("not supported");
+        }
+
+        /**
+         * Counts the distinct values that are not {@code null}.
+         *
+         * @return Number of distinct values
+         */
+        public abstract int countDistinct();
+
+        /**
+         * Reads the value of this column from the record, and appends it.
+         */
+        abstract void read(CSVRecord rec) throws ParseException;
+
+        /**
+         * Changes the capacity of the value arrays.
+         */
+        abstract void resize(int capacity);
+
+        /**
+         * Makes room for another value, and marks it as {@code null} if the CSV column
+         * is empty.
+         *
+         * @return {@code true} if the CSV column is empty
+         */
+        protected boolean prepare(CSVRecord rec) {
+            if (size == nulls.length * 64) {
+                nulls = Arrays.copyOf(nulls, nulls.length * 2);
+                resize(nulls.length * 64);
+            }
+            if (source.isEmpty(rec)) {
+                nulls[size >>> 6] |= 1L << size;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Shrinks the value arrays to the number of values.
+         */
+        void trim() {
+            nulls = Arrays.copyOf(nulls, (size + 63) >>> 6);
+            resize(size);
+        }
+
+        protected CSVSchema.Column source() {
+            return source;
+        }
+
+        protected void checkRow(int row) {
+            if (row < 0 || row >= size)
+                throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+    }
+
+    /**
+     * A column of {@code int} values.
+     */
+    public static class IntColumn extends Column {
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        private IntColumn(CSVSchema.Column source) {
+            super(source);
+        }
+
+        /**
+         * Gets a value. {@code null} values are returned as 0.
+         *
+         * @param row
+         *            Row number
+         * @return Value
+         */
+        public int getInt(int row) {
+            checkRow(row);
+            return values[row];
+        }
+
+        @Override
+        public Object getValue(int row) {
+            return isNull(row) ? null : Integer.valueOf(values[row]);
+        }
+
+        /**
+         * Sums up all values, without losing precision.
+         *
+         * @return Sum
+         */
+        public long sumLong() {
+            long result = 0;
+            for (int ix = 0; ix < size; ix++) {
+                result += values[ix];
+            }
+            return result;
+        }
+
+        @Override
+        public double sum() {
+            return sumLong();
+        }
+
+        @Override
+        public double min() {
+            boolean found = false;
+            int result = Integer.MAX_VALUE;
+            for (int ix = 0; ix < size; ix++) {
+                if (!isNull(ix)) {
+                    result = Math.min(result, values[ix]);
+                    found = true;
+                }
+            }
+            return found ? result : Double.NaN;
+        }
+
+        @Override
+        public double max() {
+            boolean found = false;
+            int result = Integer.MIN_VALUE;
+            for (int ix = 0; ix < size; ix++) {
+                if (!isNull(ix)) {
+                    result = Math.max(result, values[ix]);
+                    found = true;
+                }
+            }
+            return found ? result : Double.NaN;
+        }
+
+        @Override
+        public int countDistinct() {
+            int[] sorted = new int[size];
+            int len = 0;
+            for (int ix = 0; ix < size; ix++) {
+                if (!isNull(ix)) sorted[len++] = values[ix];
+            }
+            Arrays.sort(sorted, 0, len);
+            int result = 0;
+            for (int ix = 0; ix < len; ix++) {
+                if (ix == 0 || sorted[ix] != sorted[ix - 1]) result++;
+            }
+            return result;
+        }
+
+        @Override
+        void read(CSVRecord rec) {
+            if (!prepare(rec)) values[size] = source().getInt(rec);
+            size++;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    /**
+     * A column of {@code long} values. Date columns are stored as milliseconds since
+     * epoch.
+     */
+    public static class LongColumn extends Column {
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        private LongColumn(CSVSchema.Column source) {
+            super(source);
+        }
+
+        /**
+         * Gets a value. {@code null} values are returned as 0.
+         *
+         * @param row
+         *            Row number
+         * @return Value
+         */
+        public long getLong(int row) {
+            checkRow(row);
+            return values[row];
+        }
+
+        /**
+         * Gets a value as {@link Date}.
+         *
+         * @param row
+         *            Row number
+         * @return {@link Date}, or {@code null} if the value is {@code null}
+         */
+        public Date getDate(int row) {
+            return isNull(row) ? null : new Date(values[row]);
+        }
+
+        @Override
+        public Object getValue(int row) {
+            if (isNull(row)) return null;
+            if (getType() == CSVSchema.Type.DATE) return new Date(values[row]);
+            return Long.valueOf(values[row]);
+        }
+
+        /**
+         * Sums up all values, as {@code long}.
+         *
+         * @return Sum
+         */
+        public long sumLong() {
+            long result = 0;
+            for (int ix = 0; ix < size; ix++) {
+                result += values[ix];
+            }
+            return result;
+        }
+
+        @Override
+        public double sum() {
+            return sumLong();
+        }
+
+        @Override
+        public double min() {
+            boolean found = false;
+            long result = Long.MAX_VALUE;
+            for (int ix = 0; ix < size; ix++) {
+                if (!isNull(ix)) {
+                    result = Math.min(result, values[ix]);
+                    found = true;
+                }
+            }
+            return found ? result : Double.NaN;
+        }
+
+        @Override
+        public double max() {
+            boolean found = false;
+            long result = Long.MIN_VALUE;
+            for (int ix = 0; ix < size; ix++) {
+                if (!isNull(ix)) {
+                    result = Math.max(result, values[ix]);
+                    found = true;
+                }
+            }
+            return found ? result : Double.NaN;
+        }
+
+        @Override
+        public int countDistinct() {
+            long[] sorted = new long[size];
+            int len = 0;
+            for (int ix = 0; ix < size; ix++) {
+                if (!isNull(ix)) sorted[len++] = values[ix];
+            }
+            Arrays.sort(sorted, 0, len);
+            int result = 0;
+            for (int ix = 0; ix < len; ix++) {
+                if (ix == 0 || sorted[ix] != sorted[ix - 1]) result++;
+            }
+            return result;
+        }
+
+        @Override
+        void read(CSVRecord rec) throws ParseException {
+            if (!prepare(rec)) {
+                if (getType() == CSVSchema.Type.DATE) {
+                    values[size] = source().getDate(rec).getTime();
+                } else {
+                    values[size] = source().getLong(rec);
+                }
+            }
+            size++;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    /**
+     * A column of {@code double} values.
+     */
+    public static class DoubleColumn extends Column {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        private DoubleColumn(CSVSchema.Column source) {
+            super(source);
+        }
+
+        /**
+         * Gets a value. {@code null} values are returned as 0.
+         *
+         * @param row
+         *            Row number
+         * @return Value
+         */
+        public double getDouble(int row) {
+            checkRow(row);
+            return values[row];
+        }
+
+        @Override
+        public Object getValue(int row) {
+            return isNull(row) ? null : Double.valueOf(values[row]);
+        }
+
+        @Override
+        public double sum() {
+            double result = 0.0;
+            for (int ix = 0; ix < size; ix++) {
+                result += values[ix];
+            }
+            return result;
+        }
+
+        @Override
+        public double min() {
+            double result = Double.NaN;
+            for (int ix = 0; ix < size; ix++) {
+                if (!isNull(ix) && !(values[ix] >= result)) result = values[ix];
+            }
+            return result;
+        }
+
+        @Override
+        public double max() {
+            double result = Double.NaN;
+            for (int ix = 0; ix < size; ix++) {
+                if (!isNull(ix) && !(values[ix] <= result)) result = values[ix];
+            }
+            return result;
+        }
+
+        @Override
+        public int countDistinct() {
+            double[] sorted = new double[size];
+            int len = 0;
+            for (int ix = 0; ix < size; ix++) {
+                if (!isNull(ix)) sorted[len++] = values[ix];
+            }
+            Arrays.sort(sorted, 0, len);
+            int result = 0;
+            for (int ix = 0; ix < len; ix++) {
+                if (ix == 0 || Double.compare(sorted[ix], sorted[ix - 1]) != 0) result++;
+            }
+            return result;
+        }
+
+        @Override
+        void read(CSVRecord rec) {
+            if (!prepare(rec)) values[size] = source().getDouble(rec);
+            size++;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    /**
+     * A column of {@code boolean} values, stored in a bitmap.
+     */
+    public static class BooleanColumn extends Column {
+        private long[] values = new long[INITIAL_CAPACITY / 64];
+
+        private BooleanColumn(CSVSchema.Column source) {
+            super(source);
+        }
+
+        /**
+         * Gets a value. {@code null} values are returned as {@code false}.
+         *
+         * @param row
+         *            Row number
+         * @return Value
+         */
+        public boolean getBoolean(int row) {
+            checkRow(row);
+            return (values[row >>> 6] & (1L << row)) != 0;
+        }
+
+        @Override
+        public Object getValue(int row) {
+            return isNull(row) ? null : Boolean.valueOf(getBoolean(row));
+        }
+
+        /**
+         * Sums up all {@code true} values as 1.
+         */
+        @Override
+        public double sum() {
+            int result = 0;
+            for (long word : values) {
+                result += Long.bitCount(word);
+            }
+            return result;
+        }
+
+        @Override
+        public int countDistinct() {
+            int trues = (int) sum();
+            int falses = size - countNulls() - trues;
+            return (trues > 0 ? 1 : 0) + (falses > 0 ? 1 : 0);
+        }
+
+        @Override
+        void read(CSVRecord rec) {
+            if (!prepare(rec) && source().getBoolean(rec)) {
+                values[size >>> 6] |= 1L << size;
+            }
+            size++;
+        }
+
+        @Override
+        void resize(int capacity) {
+            values = Arrays.copyOf(values, (capacity + 63) >>> 6);
+        }
+    }
+
+    /**
+     * A column of {@link String} values. Each distinct string is stored once in a
+     * dictionary, and the rows only refer to the dictionary index.
+     */
+    public static class StringColumn extends Column {
+        private int[] codes = new int[INITIAL_CAPACITY];
+        private String[] dictionary = new String[64];
+        private int dictSize = 0;
+        private int[] hashTable = new int[128];    // dictionary index + 1, 0 if unused
+
+        private StringColumn(CSVSchema.Column source) {
+            super(source);
+        }
+
+        /**
+         * Gets a value.
+         *
+         * @param row
+         *            Row number
+         * @return Value, or {@code null} if the value is {@code null}
+         */
+        public String getString(int row) {
+            return isNull(row) ? null : dictionary[codes[row]];
+        }
+
+        /**
+         * Gets the dictionary index of a value. Rows with equal strings have equal
+         * indexes, so they can be compared and grouped without comparing the strings.
+         *
+         * @param row
+         *            Row number
+         * @return Dictionary index, or -1 if the value is {@code null}
+         */
+        public int getCode(int row) {
+            return isNull(row) ? -1 : codes[row];
+        }
+
+        /**
+         * Gets the string of a dictionary index.
+         *
+         * @param code
+         *            Dictionary index
+         * @return String
+         */
+        public String getDictionaryString(int code) {
+            if (code < 0 || code >= dictSize)
+                throw new IndexOutOfBoundsException("Code: " + code + ", Size: "
+                    + dictSize);
+            return dictionary[code];
+        }
+
+        @Override
+        public Object getValue(int row) {
+            return getString(row);
+        }
+
+        /**
+         * Counts the distinct strings. This is the size of the dictionary.
+         */
+        @Override
+        public int countDistinct() {
+            return dictSize;
+        }
+
+        @Override
+        void read(CSVRecord rec) {
+            if (!prepare(rec)) codes[size] = lookup(rec, source().getIndex());
+            size++;
+        }
+
+        /**
+         * Finds the dictionary index of a record column, and adds it to the dictionary
+         * if it is not present yet. A {@link String} is only created for new strings.
+         */
+        private int lookup(CSVRecord rec, int col) {
+            // --- Same hash as String.hashCode(), but without creating a String ---
+            CharSequence cs = rec.get(col);
+            int hash = 0;
+            for (int ix = 0, len = cs.length(); ix < len; ix++) {
+                hash = 31 * hash + cs.charAt(ix);
+            }
+
+            int mask = hashTable.length - 1;
+            int slot = mix(hash) & mask;
+            while (hashTable[slot] != 0) {
+                String str = dictionary[hashTable[slot] - 1];
+                if (str.hashCode() == hash && rec.contentEquals(col, str)) {
+                    return hashTable[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (dictSize == dictionary.length) {
+                dictionary = Arrays.copyOf(dictionary, dictSize * 2);
+            }
+            dictionary[dictSize] = rec.getString(col);
+            hashTable[slot] = ++dictSize;
+
+            if (dictSize * 2 > hashTable.length) rehash();
+            return dictSize - 1;
+        }
+
+        private void rehash() {
+            hashTable = new int[hashTable.length * 2];
+            int mask = hashTable.length - 1;
+            for (int ix = 0; ix < dictSize; ix++) {
+                int slot = mix(dictionary[ix].hashCode()) & mask;
+                while (hashTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashTable[slot] = ix + 1;
+            }
+        }
+
+        private static int mix(int hash) {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+        @Override
+        void trim() {
+            super.trim();
+            dictionary = Arrays.copyOf(dictionary, dictSize);
+            hashTable = null;   // no more lookups after loading
+        }
+
+        @Override
+        void resize(int capacity) {
+            codes = Arrays.copyOf(codes, capacity);
+        }
+    }
+
+}
@@ -0,0 +1,380 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * A CSVWriter writes CSV records to a {@link Writer}.
+ * <p>
+ * Columns are written one by one, and {@link #endRecord()} finishes the current record.
+ * A column is quoted if it contains the delimiter, a quote char or a line break. Quote
+ * chars within the column are doubled. The result can be read by {@link CSVReader}, and
+ * by {@link CSVLine} as long as no column contains a line break.
+ * <p>
+ * The output is collected in an internal buffer, so there is no need to wrap the
+ * {@link Writer} in a {@link java.io.BufferedWriter}. Numbers are formatted directly into
+ * the buffer, without boxing them.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * try (CSVWriter writer = new CSVWriter(new FileWriter(file), ',')) {
+ *     writer.writeColumn(id);
+ *     writer.writeColumn(name);
+ *     writer.endRecord();
+ * }
+ * </pre>
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Writer out;
+    private final char delim;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final char[] number = new char[20];
+    private String lineSeparator = "\n";
+    private int pos = 0;                // Number of chars in the buffer
+    private int columns = 0;            // Number of columns in the current record
+    private boolean lastEmpty = false;  // Last column was empty
+    private boolean quoteAll = false;   // Always quote the columns
+
+    /**
+     * Creates a new CSVWriter with ';' as delimiter.
+     *
+     * @param out
+     *            {@link Writer} to write the CSV data to
+     */
+    public CSVWriter(Writer out) {
+        this(out, ';');
+    }
+
+    /**
+     * Creates a new CSVWriter with the given delimiter.
+     *
+     * @param out
+     *            {@link Writer} to write the CSV data to
+     * @param delim
+     *            Delimiter
+     */
+    public CSVWriter(Writer out, char delim) {
+        if (delim == '"')
+            throw new IllegalArgumentException("quote char is not a valid delimiter");
+        if (delim == '\r' || delim == '\n')
+            throw new IllegalArgumentException("line break is not a valid delimiter");
+
+        this.out = out;
+        this.delim = delim;
+    }
+
+    /**
+     * Creates a new CSVWriter that writes to an {@link OutputStream}.
+     *
+     * @param out
+     *            {@link OutputStream} to write the CSV data to
+     * @param charset
+     *            {@link Charset} of the CSV data
+     * @param delim
+     *            Delimiter
+     */
+    public CSVWriter(OutputStream out, Charset charset, char delim) {
+        this(new OutputStreamWriter(out, charset), delim);
+    }
+
+    /**
+     * Gets the delimiter character.
+     *
+     * @return Delimiter
+     */
+    public char getDelimiter() {
+        return delim;
+    }
+
+    /**
+     * Sets the line separator that is written at the end of each record. Defaults to
+     * "\n".
+     *
+     * @param lineSeparator
+     *            Line separator
+     */
+    public void setLineSeparator(String lineSeparator) {
+        this.lineSeparator = lineSeparator;
+    }
+
+    /**
+     * Sets whether all columns are to be quoted, even if it is not necessary. Columns
+     * that are {@code null} are still written as empty, unquoted columns. Defaults to
+     * {@code false}.
+     *
+     * @param quoteAll
+     *            {@code true} to quote all columns
+     */
+    public void setQuoteAll(boolean quoteAll) {
+        this.quoteAll = quoteAll;
+    }
+
+    /**
+     * Writes a column. It is quoted if necessary.
+     *
+     * @param value
+     *            Column content, {@code null} is written as empty column
+     */
+    public void writeColumn(CharSequence value) throws IOException {
+        startColumn();
+
+        if (value == null) {
+            lastEmpty = true;
+            return;
+        }
+
+        int len = value.length();
+        lastEmpty = (len == 0 && !quoteAll);
+
+        // --- Find the first char that requires quoting ---
+        int ix = 0;
+        while (ix < len && !isSpecial(value.charAt(ix))) {
+            ix++;
+        }
+
+        if (ix == len && !quoteAll) {
+            // --- No escaping needed ---
+            put(value, 0, len);
+            return;
+        }
+
+        // --- Escaping needed ---
+        put('"');
+        put(value, 0, ix);
+        for (; ix < len; ix++) {
+            char c = value.charAt(ix);
+            if (c == '"') put('"');
+            put(c);
+        }
+        put('"');
+    }
+
+    /**
+     * Writes a section of a char array as column. It is quoted if necessary.
+     *
+     * @param value
+     *            Array of chars to write
+     * @param offset
+     *            First index to write
+     * @param count
+     *            Number of chars to write
+     */
+    public void writeColumn(char[] value, int offset, int count) throws IOException {
+        startColumn();
+        lastEmpty = (count == 0 && !quoteAll);
+
+        int end = offset + count;
+        int ix = offset;
+        while (ix < end && !isSpecial(value[ix])) {
+            ix++;
+        }
+
+        if (ix == end && !quoteAll) {
+            putChars(value, offset, count);
+            return;
+        }
+
+        put('"');
+        putChars(value, offset, ix - offset);
+        for (; ix < end; ix++) {
+            char c = value[ix];
+            if (c == '"') put('"');
+            put(c);
+        }
+        put('"');
+    }
+
+    /**
+     * Writes an {@code int} column.
+     *
+     * @param value
+     *            Value to write
+     */
+    public void writeColumn(int value) throws IOException {
+        writeColumn((long) value);
+    }
+
+    /**
+     * Writes a {@code long} column.
+     *
+     * @param value
+     *            Value to write
+     */
+    public void writeColumn(long value) throws IOException {
+        int start = number.length;
+        long v = (value > 0 ? -value : value);     // negative, so MIN_VALUE works too
+        do {
+            number[--start] = (char) ('0' - (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (value < 0) number[--start] = '-';
+
+        writeColumn(number, start, number.length - start);
+    }
+
+    /**
+     * Writes a {@code double} column.
+     *
+     * @param value
+     *            Value to write
+     */
+    public void writeColumn(double value) throws IOException {
+        writeColumn(String.valueOf(value));
+    }
+
+    /**
+     * Writes a {@code boolean} column, as "true" or "false".
+     *
+     * @param value
+     *            Value to write
+     */
+    public void writeColumn(boolean value) throws IOException {
+        writeColumn(value ? "true" : "false");
+    }
+
+    /**
+     * Finishes the current record and writes the line separator.
+     */
+    public void endRecord() throws IOException {
+        // --- A single empty column must be quoted, so it won't be read as empty line ---
+        if (columns == 1 && lastEmpty) {
+            put('"');
+            put('"');
+        }
+        put(lineSeparator, 0, lineSeparator.length());
+        columns = 0;
+        lastEmpty = false;
+    }
+
+    /**
+     * Writes all columns of a {@link CSVRecord} as a complete record.
+     *
+     * @param rec
+     *            {@link CSVRecord} to write
+     */
+    public void writeRecord(CSVRecord rec) throws IOException {
+        for (int ix = 0; ix < rec.size(); ix++) {
+            writeColumn(rec.get(ix));
+        }
+        endRecord();
+    }
+
+    /**
+     * Writes all elements of an {@link Iterable} as a complete record. Each element is
+     * converted using {@code toString()}, {@code null} elements are written as empty
+     * columns. A {@link CSVLine} can be passed in as well.
+     *
+     * @param cols
+     *            Columns to write
+     */
+    public void writeRecord(Iterable<?> cols) throws IOException {
+        for (Object col : cols) {
+            writeColumn(col != null ? col.toString() : null);
+        }
+        endRecord();
+    }
+
+    /**
+     * Writes the buffer to the underlying {@link Writer}, and flushes it.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying {@link Writer}.
+     */
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        out.close();
+    }
+
+    /**
+     * Checks if a char requires the column to be quoted.
+     */
+    private boolean isSpecial(char c) {
+        return c == delim || c == '"' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * Writes a delimiter if this is not the first column of the record.
+     */
+    private void startColumn() throws IOException {
+        if (columns > 0) put(delim);
+        columns++;
+    }
+
+    private void put(char c) throws IOException {
+        if (pos == buffer.length) flushBuffer();
+        buffer[pos++] = c;
+    }
+
+    private void put(CharSequence cs, int start, int end) throws IOException {
+        if (cs instanceof String) {
+            String str = (String) cs;
+            while (start < end) {
+                if (pos == buffer.length) flushBuffer();
+                int len = Math.min(end - start, buffer.length - pos);
+                str.getChars(start, start + len, buffer, pos);
+                pos += len;
+                start += len;
+            }
+        } else {
+            for (int ix = start; ix < end; ix++) {
+                put(cs.charAt(ix));
+            }
+        }
+    }
+
+    private void putChars(char[] src, int offset, int count) throws IOException {
+        if (count > buffer.length) {
+            flushBuffer();
+            out.write(src, offset, count);
+            return;
+        }
+        if (pos + count > buffer.length) flushBuffer();
+        System.arraycopy(src, offset, buffer, pos, count);
+        pos += count;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+    }
+
+}
@@ -0,0 +1,681 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A ChunkedSortedList is a {@link List} which sorts its elements according to a certain
+ * order, just like a {@link SortedList}. The natural sorting order of the elements is
+ * used unless a {@link Comparator} was given in the constructor.
+ * <p>
+ * Unlike {@link SortedList}, the elements are not kept in a single array, but in a
+ * sequence of chunks of up to a few thousand elements each. Inserting or removing an
+ * element only shifts the elements within its chunk, and the chunk offsets are kept in
+ * a Fenwick tree, so the costs only grow logarithmically with the size of the list. Use
+ * this class for large lists that are frequently changed. For lists that are mostly
+ * read, {@link SortedList} is still the better choice.
+ * <p>
+ * The ChunkedSortedList does not allow {@code null} elements or duplicate elements. An
+ * element is considered equal if the comparison returns {@code 0}.
+ * <p>
+ * Note that a ChunkedSortedList is not synchronized! Use
+ * {@link Collections#synchronizedList(java.util.List)} if you need synchronized access.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class ChunkedSortedList<T> extends AbstractList<T> {
+    private static final int CHUNK_SIZE = 2048;     // Maximum number of elements per chunk
+    private static final int FILL_SIZE = 1536;      // Chunk fill level of bulk operations
+
+    private final ArrayList<Chunk> chunks = new ArrayList<>();
+    private final Comparator<T> comparator;         // Comparator to be used
+    private int[] tree = new int[1];                // Fenwick tree of the chunk sizes
+    private int size = 0;
+
+    /**
+     * Creates an empty ChunkedSortedList with natural order.
+     */
+    public ChunkedSortedList() {
+        comparator = null;
+    }
+
+    /**
+     * Creates a new ChunkedSortedList and initialize it with the given
+     * {@link Collection}. The collection entries will be properly sorted in this list
+     * even if the {@link Collection} was unsorted.
+     *
+     * @param col
+     *            {@link Collection} to initialize the ChunkedSortedList with.
+     */
+    public ChunkedSortedList(Collection<? extends T> col) {
+        comparator = null;
+        addAll(col);
+    }
+
+    /**
+     * Creates a ChunkedSortedList that uses the given {@link Comparator} instead of the
+     * element's natural order. Note that once set, a {@link Comparator} cannot be changed
+     * or removed.
+     *
+     * @param c
+     *            Comparator to be used
+     */
+    public ChunkedSortedList(Comparator<T> c) {
+        comparator = c;
+    }
+
+    /**
+     * Gets the {@link Comparator} used for comparison, or {@code null} if natural order
+     * is to be used.
+     *
+     * @return Comparator or {@code null}
+     */
+    public Comparator<T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the element at the given index. The chunk containing the element is found by
+     * a search in the Fenwick tree of the chunk sizes.
+     *
+     * @param index
+     *            Index of the element
+     * @return Element at that index
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        int ci = chunkOfIndex(index);
+        return (T) chunks.get(ci).data[index - offsetOf(ci)];
+    }
+
+    /**
+     * Adds an element to a certain index of this list. This method is not permitted in a
+     * ChunkedSortedList and thus throws an exception.
+     *
+     * @param index
+     *            Index to add an element to
+     * @param element
+     *            Element to be added
+     */
+    @Override
+    public void add(int index, T element) {
+        throw new UnsupportedOperationException("not supported");
+    }
+
+    /**
+     * Adds an element to the ChunkedSortedList. The element will be sorted to its proper
+     * position. If an equal element has already been added to this list, it will be
+     * replaced by this element. A {@code null} element is not permitted, and will throw
+     * a {@link NullPointerException}.
+     *
+     * @param elem
+     *            Element to be added.
+     * @return Always true.
+     * @throws ClassCastException
+     * @see java.util.Collection#add(java.lang.Object)
+     */
+    @Override
+    public boolean add(T elem) {
+        // --- Assert an element ---
+        if (elem == null) throw new NullPointerException("null is not permitted");
+
+        boolean rebuild = false;
+        if (chunks.isEmpty()) {
+            chunks.add(new Chunk());
+            rebuild = true;
+        }
+
+        // --- Find its position in the list ---
+        int ci = chunkOfElement(elem);
+        Chunk chunk = chunks.get(ci);
+        int ix = approximate(chunk, elem);
+
+        if (ix < chunk.size && compare(chunk.get(ix), elem) == 0) {
+            // --- Replace an existing element ---
+            chunk.data[ix] = elem;
+            return true;
+        }
+
+        // --- Split a full chunk ---
+        if (chunk.size == CHUNK_SIZE) {
+            Chunk upper = chunk.split();
+            chunks.add(ci + 1, upper);
+            rebuild = true;
+            if (ix > chunk.size) {
+                ix -= chunk.size;
+                chunk = upper;
+                ci++;
+            }
+        }
+
+        // --- Insert the element ---
+        chunk.insert(ix, elem);
+        size++;
+        modCount++;
+        if (rebuild) {
+            rebuildOffsets();
+        } else {
+            updateOffsets(ci, 1);
+        }
+        return true;
+    }
+
+    /**
+     * Adds all elements of a {@link Collection} to the ChunkedSortedList. The entries are
+     * sorted to their proper position. If the {@link Collection} contains equal elements,
+     * or elements that are equal to elements of this list, the last one found in the
+     * {@link Collection} replaces the others.
+     * <p>
+     * Large {@link Collection}s are sorted first, and then merged with the current
+     * content of this list in a single pass.
+     *
+     * @param c
+     *            Collection to be added.
+     * @return true if this list was changed
+     * @throws ClassCastException
+     * @see java.util.Collection#addAll(java.util.Collection)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean addAll(Collection<? extends T> c) {
+        T[] batch = (T[]) c.toArray();
+        if (batch.length == 0) return true;
+
+        // --- Assert the elements ---
+        for (T elem : batch) {
+            if (elem == null) throw new NullPointerException("null is not permitted");
+        }
+
+        // --- Sort the batch, the sort is stable so the order of equal elements is kept ---
+        if (comparator != null) {
+            Arrays.sort(batch, comparator);
+        } else {
+            // A ClassCastException is intentional
+            Arrays.sort(batch);
+        }
+
+        // --- Remove duplicates, the last equal element wins ---
+        int count = 0;
+        for (T elem : batch) {
+            if (count > 0 && compare(batch[count - 1], elem) == 0) {
+                batch[count - 1] = elem;
+            } else {
+                batch[count++] = elem;
+            }
+        }
+
+        // --- Few elements are just inserted ---
+        if ((long) count * CHUNK_SIZE < size) {
+            for (int ix = 0; ix < count; ix++) {
+                add(batch[ix]);
+            }
+            return true;
+        }
+
+        // --- Merge with the current content into new chunks ---
+        ArrayList<Chunk> merged = new ArrayList<>();
+        Iterator<T> it = iterator();
+        T old = (it.hasNext() ? it.next() : null);
+        int ixNew = 0;
+        int newSize = 0;
+
+        while (old != null || ixNew < count) {
+            T next;
+            if (old == null) {
+                next = batch[ixNew++];
+            } else if (ixNew == count) {
+                next = old;
+                old = (it.hasNext() ? it.next() : null);
+            } else {
+                int result = compare(old, batch[ixNew]);
+                if (result < 0) {
+                    next = old;
+                    old = (it.hasNext() ? it.next() : null);
+                } else if (result > 0) {
+                    next = batch[ixNew++];
+                } else {
+                    // --- Replace an existing element ---
+                    next = batch[ixNew++];
+                    old = (it.hasNext() ? it.next() : null);
+                }
+            }
+
+            if (merged.isEmpty() || merged.get(merged.size() - 1).size == FILL_SIZE) {
+                merged.add(new Chunk());
+            }
+            Chunk chunk = merged.get(merged.size() - 1);
+            chunk.data[chunk.size++] = next;
+            newSize++;
+        }
+
+        chunks.clear();
+        chunks.addAll(merged);
+        size = newSize;
+        modCount++;
+        rebuildOffsets();
+        return true;
+    }
+
+    /**
+     * This method is not supported by a ChunkedSortedList.
+     */
+    @Override
+    public T set(int index, T element) {
+        throw new UnsupportedOperationException("not supported");
+    }
+
+    /**
+     * Removes the element at the given index.
+     *
+     * @param index
+     *            Index of the element to be removed
+     * @return The removed element
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T remove(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        int ci = chunkOfIndex(index);
+        Chunk chunk = chunks.get(ci);
+        int ix = index - offsetOf(ci);
+        T result = (T) chunk.data[ix];
+        removeAt(ci, ix);
+        return result;
+    }
+
+    /**
+     * Removes an element from the list.
+     *
+     * @param elem
+     *            Element to be removed
+     * @return {@code true} if the list contained the element
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object elem) {
+        if (elem == null) throw new NullPointerException("null is not permitted");
+        if (chunks.isEmpty()) return false;
+
+        // ClassCastException is intentional
+        int ci = chunkOfElement((T) elem);
+        Chunk chunk = chunks.get(ci);
+        int ix = approximate(chunk, (T) elem);
+        if (ix < chunk.size && compare(chunk.get(ix), (T) elem) == 0) {
+            removeAt(ci, ix);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        chunks.clear();
+        size = 0;
+        modCount++;
+        rebuildOffsets();
+    }
+
+    /**
+     * Checks if a ChunkedSortedList contains an element.
+     *
+     * @param elem
+     *            Element to be checked
+     * @return {@code true} if the list contains the element
+     */
+    @Override
+    public boolean contains(Object elem) {
+        return indexOf(elem) >= 0;
+    }
+
+    /**
+     * Gets the index of an element.
+     *
+     * @param elem
+     *            Element to be found
+     * @return index of that element, or -1 if it was not found
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int indexOf(Object elem) {
+        if (elem == null) throw new NullPointerException("null is not permitted");
+        if (chunks.isEmpty()) return -1;
+
+        // ClassCastException is intentional
+        int ci = chunkOfElement((T) elem);
+        Chunk chunk = chunks.get(ci);
+        int ix = approximate(chunk, (T) elem);
+        if (ix < chunk.size && compare(chunk.get(ix), (T) elem) == 0) {
+            return offsetOf(ci) + ix;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the index of the last occurance of an element. Since there are no duplicate
+     * entries in a ChunkedSortedList, the result is the same as from
+     * {@link #indexOf(Object)}.
+     *
+     * @param elem
+     *            Element to be found
+     * @return index of that element, or -1 if it was not found
+     */
+    @Override
+    public int lastIndexOf(Object elem) {
+        return indexOf(elem);
+    }
+
+    /**
+     * Returns an {@link Iterator} that walks through the chunks, without looking up each
+     * index.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new ChunkIterator();
+    }
+
+    /**
+     * Removes an element from a chunk. Empty chunks are removed, small chunks are merged
+     * with their neighbours.
+     *
+     * @param ci
+     *            Chunk index
+     * @param ix
+     *            Element index within that chunk
+     */
+    private void removeAt(int ci, int ix) {
+        Chunk chunk = chunks.get(ci);
+        chunk.delete(ix);
+        size--;
+        modCount++;
+
+        if (chunk.size == 0) {
+            chunks.remove(ci);
+        } else if (ci + 1 < chunks.size() && chunk.size + chunks.get(ci + 1).size <= CHUNK_SIZE / 2) {
+            chunk.append(chunks.remove(ci + 1));
+        } else if (ci > 0 && chunk.size + chunks.get(ci - 1).size <= CHUNK_SIZE / 2) {
+            chunks.get(ci - 1).append(chunks.remove(ci));
+        } else {
+            updateOffsets(ci, -1);
+            return;
+        }
+
+        rebuildOffsets();
+    }
+
+    /**
+     * Rebuilds the Fenwick tree of the chunk sizes. This is only required when chunks
+     * were added or removed, which happens about once every {@value #CHUNK_SIZE}/2
+     * changes.
+     */
+    private void rebuildOffsets() {
+        int max = chunks.size();
+        if (tree.length <= max) {
+            tree = new int[max + max / 2 + 1];
+        } else {
+            Arrays.fill(tree, 0);
+        }
+
+        for (int ix = 1; ix <= max; ix++) {
+            tree[ix] += chunks.get(ix - 1).size;
+            int parent = ix + (ix & -ix);
+            if (parent <= max) {
+                tree[parent] += tree[ix];
+            }
+        }
+    }
+
+    /**
+     * Updates the Fenwick tree after the size of a chunk has changed.
+     *
+     * @param ci
+     *            Index of the chunk that was changed
+     * @param delta
+     *            Difference of the chunk size
+     */
+    private void updateOffsets(int ci, int delta) {
+        int max = chunks.size();
+        for (int ix = ci + 1; ix <= max; ix += ix & -ix) {
+            tree[ix] += delta;
+        }
+    }
+
+    /**
+     * Gets the index of the first element of a chunk within the list.
+     *
+     * @param ci
+     *            Chunk index
+     * @return Number of elements in all preceding chunks
+     */
+    private int offsetOf(int ci) {
+        int offset = 0;
+        for (int ix = ci; ix > 0; ix -= ix & -ix) {
+            offset += tree[ix];
+        }
+        return offset;
+    }
+
+    /**
+     * Finds the chunk containing the element at the given index.
+     *
+     * @param index
+     *            Element index, must be valid
+     * @return Index of the chunk
+     */
+    private int chunkOfIndex(int index) {
+        int max = chunks.size();
+        int ci = 0;
+        int remaining = index;
+        for (int step = Integer.highestOneBit(max); step > 0; step >>>= 1) {
+            int next = ci + step;
+            if (next <= max && tree[next] <= remaining) {
+                ci = next;
+                remaining -= tree[next];
+            }
+        }
+        return ci;
+    }
+
+    /**
+     * Finds the chunk an element belongs to. This is the first chunk with a last element
+     * that is equal to or higher than the given element. If the element is higher than
+     * all elements in the list, the last chunk is returned.
+     *
+     * @param elem
+     *            Element to find the chunk for. The list must not be empty.
+     * @return Index of the chunk
+     * @throws ClassCastException
+     */
+    private int chunkOfElement(T elem) {
+        int min = 0;
+        int max = chunks.size() - 1;
+        while (min < max) {
+            int current = (min + max) >>> 1;
+            Chunk chunk = chunks.get(current);
+            if (compare(chunk.get(chunk.size - 1), elem) < 0) {
+                min = current + 1;
+            } else {
+                max = current;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Approximates the position of the given element in a chunk. The element at the
+     * returned index is either equal to the given element, or it is the next higher
+     * element. The returned index is the chunk size if the given element is higher than
+     * all elements of the chunk.
+     *
+     * @param chunk
+     *            Chunk to search
+     * @param elem
+     *            Element to approximate
+     * @return Index of the approximation.
+     * @throws ClassCastException
+     */
+    private int approximate(Chunk chunk, T elem) {
+        int min = 0;
+        int max = chunk.size;
+        while (min < max) {
+            int current = (min + max) >>> 1;
+            if (compare(chunk.get(current), elem) < 0) {
+                min = current + 1;
+            } else {
+                max = current;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Compares two elements. If a comparator was set, it is used for comparison. If none
+     * was set, the natural order of the objects will be compared.
+     *
+     * @param cmp
+     *            Object 1
+     * @param cmp2
+     *            Object 2
+     * @return negative if cmp is less than cmp2, positive is cmp is greater than cmp2,
+     *         zero if cmp is equal to cmp2.
+     * @throws ClassCastException
+     *             if the two objects were not comparable.
+     */
+    @SuppressWarnings("unchecked")
+    private int compare(T cmp, T cmp2) {
+        if (comparator != null) {
+            return comparator.compare(cmp, cmp2);
+        } else {
+            // A ClassCastException is intentional
+            Comparable<T> co = (Comparable<T>) cmp; // provoke a ClassCastException
+            return co.compareTo(cmp2); // if cmp is not a Comparable
+        }
+    }
+
+    /**
+     * A chunk of elements.
+     */
+    private class Chunk {
+        private Object[] data = new Object[CHUNK_SIZE];
+        private int size = 0;       // Number of elements in this chunk
+
+        @SuppressWarnings("unchecked")
+        private T get(int ix) {
+            return (T) data[ix];
+        }
+
+        private void insert(int ix, T elem) {
+            System.arraycopy(data, ix, data, ix + 1, size - ix);
+            data[ix] = elem;
+            size++;
+        }
+
+        private void delete(int ix) {
+            System.arraycopy(data, ix + 1, data, ix, size - ix - 1);
+            data[--size] = null;
+        }
+
+        private Chunk split() {
+            Chunk upper = new Chunk();
+            int half = size / 2;
+            upper.size = size - half;
+            System.arraycopy(data, half, upper.data, 0, upper.size);
+            Arrays.fill(data, half, size, null);
+            size = half;
+            return upper;
+        }
+
+        private void append(Chunk other) {
+            System.arraycopy(other.data, 0, data, size, other.size);
+            size += other.size;
+        }
+    }
+
+    /**
+     * An {@link Iterator} that walks through the chunks.
+     */
+    private class ChunkIterator implements Iterator<T> {
+        private int cursor = 0;         // Index of the next element
+        private int lastRet = -1;       // Index of the last returned element
+        private int ci = -1;            // Index of the current chunk
+        private Chunk chunk = null;     // Current chunk, or null if unknown
+        private int offset = 0;         // Index of the first element of the current chunk
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (cursor >= size) throw new NoSuchElementException();
+
+            if (chunk == null || cursor - offset >= chunk.size) {
+                if (chunk != null && ci + 1 < chunks.size()) {
+                    offset += chunk.size;
+                    ci++;
+                } else {
+                    ci = chunkOfIndex(cursor);
+                    offset = offsetOf(ci);
+                }
+                chunk = chunks.get(ci);
+            }
+
+            lastRet = cursor++;
+            return chunk.get(lastRet - offset);
+        }
+
+        @Override
+        public void remove() {
+            if (lastRet < 0) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+
+            ChunkedSortedList.this.remove(lastRet);
+            cursor = lastRet;
+            lastRet = -1;
+            chunk = null;
+            expectedModCount = modCount;
+        }
+    }
+
+}
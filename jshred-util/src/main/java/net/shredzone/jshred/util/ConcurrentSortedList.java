@@ -0,0 +1,536 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+
+/**
+ * A ConcurrentSortedList is a thread-safe variant of {@link SortedList}. It sorts its
+ * elements according to their natural order, or according to a {@link Comparator} that
+ * was given in the constructor. Like {@link SortedList}, it does not allow {@code null}
+ * elements or duplicate elements.
+ * <p>
+ * The elements are kept in an array that is never changed once it was published. Each
+ * change creates a modified copy of the array and then publishes it. Reading methods
+ * like {@link #get(int)}, {@link #contains(Object)} or {@link #indexOf(Object)} are
+ * wait-free and never block, so they scale across any number of threads. Changes are
+ * expensive, since the entire array is copied. Use {@link #addAll(Collection)} and
+ * {@link #removeAll(Collection)} to change many elements with a single copy.
+ * <p>
+ * Consistency model:
+ * <ul>
+ * <li>Each single method call operates on one consistent version of the list.</li>
+ * <li>Changes are serialized. A change is visible to all threads as soon as the
+ * changing method has returned.</li>
+ * <li>Iterators, {@link #subList(int, int)} and {@link #snapshot()} operate on the
+ * version that was current when they were created. They never throw a
+ * {@link java.util.ConcurrentModificationException}, and they do not reflect later
+ * changes. They cannot be used to change the list.</li>
+ * <li>Consecutive calls may see different versions, e.g. {@code get(indexOf(elem))} may
+ * fail if another thread has removed an element in the meantime. Use
+ * {@link #snapshot()} if several reads must see the same version.</li>
+ * </ul>
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class ConcurrentSortedList<T> extends AbstractList<T> implements RandomAccess {
+    private static final Object[] EMPTY = new Object[0];
+
+    private final Object lock = new Object();       // Serializes all changes
+    private volatile Object[] array = EMPTY;        // Current version, never changed
+    private final Comparator<T> comparator;         // Comparator to be used
+
+    /**
+     * Creates an empty ConcurrentSortedList with natural order.
+     */
+    public ConcurrentSortedList() {
+        comparator = null;
+    }
+
+    /**
+     * Creates a new ConcurrentSortedList and initialize it with the given
+     * {@link Collection}. The collection entries will be properly sorted in this list
+     * even if the {@link Collection} was unsorted.
+     *
+     * @param col
+     *            {@link Collection} to initialize the ConcurrentSortedList with.
+     */
+    public ConcurrentSortedList(Collection<? extends T> col) {
+        comparator = null;
+        addAll(col);
+    }
+
+    /**
+     * Creates a ConcurrentSortedList that uses the given {@link Comparator} instead of
+     * the element's natural order. Note that once set, a {@link Comparator} cannot be
+     * changed or removed.
+     *
+     * @param c
+     *            Comparator to be used
+     */
+    public ConcurrentSortedList(Comparator<T> c) {
+        comparator = c;
+    }
+
+    /**
+     * Gets the {@link Comparator} used for comparison, or {@code null} if natural order
+     * is to be used.
+     *
+     * @return Comparator or {@code null}
+     */
+    public Comparator<T> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Returns an unmodifiable {@link List} of the current version of this list. Later
+     * changes to this list are not reflected in the snapshot. Creating a snapshot does
+     * not copy the elements.
+     *
+     * @return Snapshot of this list
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> snapshot() {
+        return Collections.unmodifiableList(Arrays.asList((T[]) array));
+    }
+
+    @Override
+    public int size() {
+        return array.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) array[index];
+    }
+
+    /**
+     * Adds an element to a certain index of this list. This method is not permitted in a
+     * ConcurrentSortedList and thus throws an exception.
+     *
+     * @param index
+     *            Index to add an element to
+     * @param element
+     *            Element to be added
+     */
+    @Override
+    public void add(int index, T element) {
+        throw new UnsupportedOperationException("not supported");
+    }
+
+    /**
+     * This method is not supported by a ConcurrentSortedList.
+     */
+    @Override
+    public T set(int index, T element) {
+        throw new UnsupportedOperationException("not supported");
+    }
+
+    /**
+     * Adds an element to the ConcurrentSortedList. The element will be sorted to its
+     * proper position. If an equal element has already been added to this list, it will
+     * be replaced by this element. A {@code null} element is not permitted, and will throw
+     * a {@link NullPointerException}.
+     *
+     * @param elem
+     *            Element to be added.
+     * @return Always true.
+     * @throws ClassCastException
+     * @see java.util.Collection#add(java.lang.Object)
+     */
+    @Override
+    public boolean add(T elem) {
+        // --- Assert an element ---
+        if (elem == null) throw new NullPointerException("null is not permitted");
+
+        synchronized (lock) {
+            Object[] current = array;
+            int ix = approximate(current, elem);
+
+            Object[] changed;
+            if (ix < current.length && compare(current, ix, elem) == 0) {
+                // --- Replace an existing element ---
+                changed = current.clone();
+            } else {
+                // --- Insert an element ---
+                changed = new Object[current.length + 1];
+                System.arraycopy(current, 0, changed, 0, ix);
+                System.arraycopy(current, ix, changed, ix + 1, current.length - ix);
+            }
+            changed[ix] = elem;
+            array = changed;
+        }
+        return true;
+    }
+
+    /**
+     * Adds all elements of a {@link Collection} to the ConcurrentSortedList. The entries
+     * are sorted to their proper position. If the {@link Collection} contains equal
+     * elements, or elements that are equal to elements of this list, the last one found
+     * in the {@link Collection} replaces the others.
+     * <p>
+     * The {@link Collection} is sorted and merged with the current content of this list,
+     * and then published as a single change.
+     *
+     * @param c
+     *            Collection to be added.
+     * @return true if this list was changed
+     * @throws ClassCastException
+     * @see java.util.Collection#addAll(java.util.Collection)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean addAll(Collection<? extends T> c) {
+        T[] batch = (T[]) c.toArray();
+        if (batch.length == 0) return true;
+
+        // --- Assert the elements ---
+        for (T elem : batch) {
+            if (elem == null) throw new NullPointerException("null is not permitted");
+        }
+
+        // --- Sort the batch, the sort is stable so the order of equal elements is kept ---
+        if (comparator != null) {
+            Arrays.sort(batch, comparator);
+        } else {
+            // A ClassCastException is intentional
+            Arrays.sort(batch);
+        }
+
+        // --- Remove duplicates, the last equal element wins ---
+        int count = 0;
+        for (T elem : batch) {
+            if (count > 0 && compare(batch[count - 1], elem) == 0) {
+                batch[count - 1] = elem;
+            } else {
+                batch[count++] = elem;
+            }
+        }
+
+        // --- Merge with the current content ---
+        synchronized (lock) {
+            Object[] current = array;
+            Object[] merged = new Object[current.length + count];
+            int ixOld = 0;
+            int ixNew = 0;
+            int ixMerged = 0;
+
+            while (ixOld < current.length && ixNew < count) {
+                int result = compare(current, ixOld, batch[ixNew]);
+                if (result < 0) {
+                    merged[ixMerged++] = current[ixOld++];
+                } else if (result > 0) {
+                    merged[ixMerged++] = batch[ixNew++];
+                } else {
+                    // --- Replace an existing element ---
+                    merged[ixMerged++] = batch[ixNew++];
+                    ixOld++;
+                }
+            }
+
+            while (ixOld < current.length) {
+                merged[ixMerged++] = current[ixOld++];
+            }
+
+            while (ixNew < count) {
+                merged[ixMerged++] = batch[ixNew++];
+            }
+
+            array = (ixMerged < merged.length ? Arrays.copyOf(merged, ixMerged) : merged);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the element at the given index.
+     *
+     * @param index
+     *            Index of the element to be removed
+     * @return The removed element
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T remove(int index) {
+        synchronized (lock) {
+            Object[] current = array;
+            T result = (T) current[index];
+            array = without(current, index);
+            return result;
+        }
+    }
+
+    /**
+     * Removes an element from the list.
+     *
+     * @param elem
+     *            Element to be removed
+     * @return {@code true} if the list contained the element
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object elem) {
+        if (elem == null) throw new NullPointerException("null is not permitted");
+
+        synchronized (lock) {
+            Object[] current = array;
+
+            // ClassCastException is intentional
+            int ix = approximate(current, (T) elem);
+            if (ix < current.length && compare(current, ix, (T) elem) == 0) {
+                array = without(current, ix);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Removes all elements that are contained in the given {@link Collection}. The
+     * change is published as a single change.
+     *
+     * @param c
+     *            {@link Collection} of elements to be removed
+     * @return {@code true} if the list was changed
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return filter(c, false);
+    }
+
+    /**
+     * Removes all elements that are not contained in the given {@link Collection}. The
+     * change is published as a single change.
+     *
+     * @param c
+     *            {@link Collection} of elements to be retained
+     * @return {@code true} if the list was changed
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return filter(c, true);
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            array = EMPTY;
+        }
+    }
+
+    /**
+     * Checks if a ConcurrentSortedList contains an element.
+     *
+     * @param elem
+     *            Element to be checked
+     * @return {@code true} if the list contains the element
+     */
+    @Override
+    public boolean contains(Object elem) {
+        return indexOf(elem) >= 0;
+    }
+
+    /**
+     * Gets the index of an element.
+     *
+     * @param elem
+     *            Element to be found
+     * @return index of that element, or -1 if it was not found
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int indexOf(Object elem) {
+        if (elem == null) throw new NullPointerException("null is not permitted");
+
+        Object[] current = array;
+
+        // ClassCastException is intentional
+        int ix = approximate(current, (T) elem);
+        if (ix < current.length && compare(current, ix, (T) elem) == 0) return ix;
+        else return -1;
+    }
+
+    /**
+     * Gets the index of the last occurance of an element. Since there are no duplicate
+     * entries in a ConcurrentSortedList, the result is the same as from
+     * {@link #indexOf(Object)}.
+     *
+     * @param elem
+     *            Element to be found
+     * @return index of that element, or -1 if it was not found
+     */
+    @Override
+    public int lastIndexOf(Object elem) {
+        return indexOf(elem);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return array.clone();
+    }
+
+    @Override
+    public <E> E[] toArray(E[] a) {
+        return snapshot().toArray(a);
+    }
+
+    /**
+     * Returns an {@link Iterator} of the current version of the list.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return snapshot().iterator();
+    }
+
+    /**
+     * Returns a {@link ListIterator} of the current version of the list.
+     */
+    @Override
+    public ListIterator<T> listIterator() {
+        return snapshot().listIterator();
+    }
+
+    /**
+     * Returns a {@link ListIterator} of the current version of the list.
+     */
+    @Override
+    public ListIterator<T> listIterator(int index) {
+        return snapshot().listIterator(index);
+    }
+
+    /**
+     * Returns an unmodifiable view of a part of the current version of the list.
+     */
+    @Override
+    public List<T> subList(int fromIndex, int toIndex) {
+        return snapshot().subList(fromIndex, toIndex);
+    }
+
+    /**
+     * Removes all elements that are (or are not) contained in the given
+     * {@link Collection}.
+     *
+     * @param c
+     *            {@link Collection} to check against
+     * @param retain
+     *            {@code true}: keep the elements in the {@link Collection},
+     *            {@code false}: remove the elements in the {@link Collection}
+     * @return {@code true} if the list was changed
+     */
+    private boolean filter(Collection<?> c, boolean retain) {
+        synchronized (lock) {
+            Object[] current = array;
+            Object[] changed = new Object[current.length];
+            int count = 0;
+            for (Object elem : current) {
+                if (c.contains(elem) == retain) {
+                    changed[count++] = elem;
+                }
+            }
+
+            if (count == current.length) return false;
+
+            array = Arrays.copyOf(changed, count);
+            return true;
+        }
+    }
+
+    /**
+     * Returns a copy of the array with the element at the given index removed.
+     */
+    private static Object[] without(Object[] current, int index) {
+        if (index < 0 || index >= current.length)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
+
+        Object[] changed = new Object[current.length - 1];
+        System.arraycopy(current, 0, changed, 0, index);
+        System.arraycopy(current, index + 1, changed, index, changed.length - index);
+        return changed;
+    }
+
+    /**
+     * Approximates the position of the given element in the array. The element at the
+     * returned index is either equal to the given element, or it is the next higher
+     * element. The returned index is the array length if the given element is higher
+     * than all elements.
+     *
+     * @param current
+     *            Array to search
+     * @param elem
+     *            Element to approximate
+     * @return Index of the approximation.
+     * @throws ClassCastException
+     */
+    private int approximate(Object[] current, T elem) {
+        int min = 0;
+        int max = current.length;
+        while (min < max) {
+            int mid = (min + max) >>> 1;
+            if (compare(current, mid, elem) < 0) {
+                min = mid + 1;
+            } else {
+                max = mid;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Compares an element of the array with another element.
+     */
+    @SuppressWarnings("unchecked")
+    private int compare(Object[] current, int ix, T cmp2) {
+        return compare((T) current[ix], cmp2);
+    }
+
+    /**
+     * Compares two elements. If a comparator was set, it is used for comparison. If none
+     * was set, the natural order of the objects will be compared.
+     *
+     * @param cmp
+     *            Object 1
+     * @param cmp2
+     *            Object 2
+     * @return negative if cmp is less than cmp2, positive is cmp is greater than cmp2,
+     *         zero if cmp is equal to cmp2.
+     * @throws ClassCastException
+     *             if the two objects were not comparable.
+     */
+    @SuppressWarnings("unchecked")
+    private int compare(T cmp, T cmp2) {
+        if (comparator != null) {
+            return comparator.compare(cmp, cmp2);
+        } else {
+            // A ClassCastException is intentional
+            Comparable<T> co = (Comparable<T>) cmp; // provoke a ClassCastException
+            return co.compareTo(cmp2); // if cmp is not a Comparable
+        }
+    }
+
+}
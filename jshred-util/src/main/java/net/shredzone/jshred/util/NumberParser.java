@@ -0,0 +1,183 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+/**
+ * Parses numbers directly from a char or byte buffer, without creating a {@link String}
+ * first. Subclasses give index based access to the buffer.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+abstract class NumberParser {
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /**
+     * Gets the char at the given index of the buffer. Bytes are returned unsigned.
+     *
+     * @param index
+     *            Buffer index
+     * @return Char at that index
+     */
+    protected abstract int charAt(int index);
+
+    /**
+     * Gets a column as {@link String}. It is used for all number formats that are not
+     * parsed directly.
+     *
+     * @param col
+     *            Column number, starting from 0
+     * @return {@link String} of that column
+     */
+    protected abstract String getString(int col);
+
+    /**
+     * Parses an {@code int} value.
+     *
+     * @param col
+     *            Column number, only used for error messages
+     * @param start
+     *            Buffer index of the first char
+     * @param end
+     *            Buffer index after the last char
+     * @return {@code int} value
+     * @throws NumberFormatException
+     *             if the value is not a valid {@code int} value
+     */
+    public int parseInt(int col, int start, int end) {
+        long result = parseLong(col, start, end);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE)
+            throw new NumberFormatException("int overflow in column " + col);
+        return (int) result;
+    }
+
+    /**
+     * Parses a {@code long} value.
+     *
+     * @param col
+     *            Column number, only used for error messages
+     * @param start
+     *            Buffer index of the first char
+     * @param end
+     *            Buffer index after the last char
+     * @return {@code long} value
+     * @throws NumberFormatException
+     *             if the value is not a valid {@code long} value
+     */
+    public long parseLong(int col, int start, int end) {
+        int ix = start;
+        if (ix == end) throw new NumberFormatException("empty column " + col);
+
+        int c = charAt(ix);
+        boolean negative = (c == '-');
+        if (negative || c == '+') ix++;
+        if (ix == end) throw new NumberFormatException("no digits in column " + col);
+
+        // --- Accumulate negative, so Long.MIN_VALUE can be parsed too ---
+        long result = 0;
+        for (; ix < end; ix++) {
+            int digit = charAt(ix) - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("bad digit in column " + col);
+            if (result < (Long.MIN_VALUE + digit) / 10)
+                throw new NumberFormatException("long overflow in column " + col);
+            result = result * 10 - digit;
+        }
+
+        if (!negative) {
+            if (result == Long.MIN_VALUE)
+                throw new NumberFormatException("long overflow in column " + col);
+            result = -result;
+        }
+        return result;
+    }
+
+    /**
+     * Parses a {@code double} value. Simple decimal numbers like "-123.45" are parsed
+     * directly. All other formats are parsed by {@link Double#parseDouble(String)}.
+     *
+     * @param col
+     *            Column number
+     * @param start
+     *            Buffer index of the first char
+     * @param end
+     *            Buffer index after the last char
+     * @return {@code double} value
+     * @throws NumberFormatException
+     *             if the value is not a valid {@code double} value
+     */
+    public double parseDouble(int col, int start, int end) {
+        int ix = start;
+
+        boolean negative = (ix < end && charAt(ix) == '-');
+        if (negative || (ix < end && charAt(ix) == '+')) ix++;
+
+        long mantissa = 0;
+        int digits = 0;         // Number of digits
+        int significant = 0;    // Number of significant digits
+        int fraction = -1;      // Number of fraction digits, -1 if there is no '.'
+        for (; ix < end; ix++) {
+            int c = charAt(ix);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (mantissa != 0) significant++;
+                if (fraction >= 0) fraction++;
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+
+        // --- Exact result if mantissa and power of ten are exactly representable ---
+        if (ix == end && digits > 0 && significant <= 15 && fraction <= 22) {
+            double result = mantissa;
+            if (fraction > 0) result /= POWERS_OF_TEN[fraction];
+            return negative ? -result : result;
+        }
+
+        return Double.parseDouble(getString(col));
+    }
+
+    /**
+     * Parses a {@code boolean} value. "true" (in any case) and "1" are {@code true}, all
+     * other values are {@code false}.
+     *
+     * @param start
+     *            Buffer index of the first char
+     * @param end
+     *            Buffer index after the last char
+     * @return {@code boolean} value
+     */
+    public boolean parseBoolean(int start, int end) {
+        int len = end - start;
+        if (len == 1) return charAt(start) == '1';
+        if (len != 4) return false;
+        return (charAt(start) | 0x20) == 't'
+            && (charAt(start + 1) | 0x20) == 'r'
+            && (charAt(start + 2) | 0x20) == 'u'
+            && (charAt(start + 3) | 0x20) == 'e';
+    }
+
+}
@@ -0,0 +1,437 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A SortedDoubleList is a sorted list of {@code double} values. It works like a
+ * {@link SortedList} of {@link Double}, but keeps the values in a plain {@code double}
+ * array, so there is no boxing and no object per element.
+ * <p>
+ * The list is always sorted in ascending order and does not contain duplicate values.
+ * {@link #contains(double)} and {@link #indexOf(double)} use a binary search.
+ * <p>
+ * Values are ordered and compared like {@link Double#compare(double, double)} does, so
+ * {@code -0.0} is lower than {@code 0.0}, and {@code NaN} is higher than all other
+ * values and equal to itself.
+ * <p>
+ * Iterating does not need an iterator object. Just use the index:
+ *
+ * <pre>
+ * for (int ix = 0; ix &lt; list.size(); ix++) {
+ *     double value = list.get(ix);
+ * }
+ * </pre>
+ *
+ * For iterating over a range of values, use {@link #ceilingIndex(double)} to find the
+ * first and the end index:
+ *
+ * <pre>
+ * int end = list.ceilingIndex(to);
+ * for (int ix = list.ceilingIndex(from); ix &lt; end; ix++) {
+ *     double value = list.get(ix);
+ * }
+ * </pre>
+ *
+ * Note that a SortedDoubleList is not synchronized!
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class SortedDoubleList implements Serializable {
+    private static final long serialVersionUID = 2893075527810564118L;
+
+    private double[] data;
+    private int size = 0;
+
+    /**
+     * Creates an empty SortedDoubleList.
+     */
+    public SortedDoubleList() {
+        this(10);
+    }
+
+    /**
+     * Creates an empty SortedDoubleList with the given initial capacity.
+     *
+     * @param capacity
+     *            Initial capacity
+     */
+    public SortedDoubleList(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative");
+        data = new double[capacity];
+    }
+
+    /**
+     * Creates a new SortedDoubleList and initialize it with the given values. The values
+     * do not need to be sorted, and may contain duplicates.
+     *
+     * @param values
+     *            Values to initialize the SortedDoubleList with.
+     */
+    public SortedDoubleList(double[] values) {
+        this(0);
+        addAll(values);
+    }
+
+    /**
+     * Gets the number of values in this list.
+     *
+     * @return Number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if this list is empty.
+     *
+     * @return {@code true} if the list is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the value at the given index.
+     *
+     * @param index
+     *            Index
+     * @return Value at that index
+     */
+    public double get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return data[index];
+    }
+
+    /**
+     * Adds a value to the list. The value will be sorted to its proper position.
+     *
+     * @param value
+     *            Value to be added
+     * @return {@code true} if the value was added, {@code false} if it was already
+     *         present
+     */
+    public boolean add(double value) {
+        int ix = ceilingIndex(value);
+        if (ix < size && Double.compare(data[ix], value) == 0) return false;
+
+        ensureCapacity(size + 1);
+        System.arraycopy(data, ix, data, ix + 1, size - ix);
+        data[ix] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds all values of an array to the list. The values do not need to be sorted, and
+     * may contain duplicates.
+     * <p>
+     * The values are sorted first, and then merged with the current content of this list
+     * in a single pass.
+     *
+     * @param values
+     *            Values to be added
+     */
+    public void addAll(double[] values) {
+        addAll(values, 0, values.length);
+    }
+
+    /**
+     * Adds a section of an array to the list. The values do not need to be sorted, and
+     * may contain duplicates.
+     *
+     * @param values
+     *            Values to be added
+     * @param offset
+     *            First index to add
+     * @param count
+     *            Number of values to add
+     */
+    public void addAll(double[] values, int offset, int count) {
+        double[] batch = Arrays.copyOfRange(values, offset, offset + count);
+        Arrays.sort(batch);
+        merge(batch, count);
+    }
+
+    /**
+     * Adds all values of another SortedDoubleList to this list.
+     *
+     * @param list
+     *            SortedDoubleList to be added
+     */
+    public void addAll(SortedDoubleList list) {
+        merge(list.data, list.size);
+    }
+
+    /**
+     * Removes a value from the list.
+     *
+     * @param value
+     *            Value to be removed
+     * @return {@code true} if the value was found and removed
+     */
+    public boolean remove(double value) {
+        int ix = indexOf(value);
+        if (ix < 0) return false;
+        removeAt(ix);
+        return true;
+    }
+
+    /**
+     * Removes the value at the given index.
+     *
+     * @param index
+     *            Index of the value to be removed
+     * @return The removed value
+     */
+    public double removeAt(int index) {
+        double result = get(index);
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        size--;
+        return result;
+    }
+
+    /**
+     * Removes all values that are between from (inclusive) and to (exclusive).
+     *
+     * @param from
+     *            Lowest value to be removed
+     * @param to
+     *            Upper limit, exclusive
+     * @return Number of values that have been removed
+     */
+    public int removeRange(double from, double to) {
+        int start = ceilingIndex(from);
+        int end = Math.max(ceilingIndex(to), start);
+        System.arraycopy(data, end, data, start, size - end);
+        size -= end - start;
+        return end - start;
+    }
+
+    /**
+     * Removes all values from this list.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Checks if the list contains a value.
+     *
+     * @param value
+     *            Value to be checked
+     * @return {@code true} if the list contains the value
+     */
+    public boolean contains(double value) {
+        int ix = ceilingIndex(value);
+        return ix < size && Double.compare(data[ix], value) == 0;
+    }
+
+    /**
+     * Gets the index of a value.
+     *
+     * @param value
+     *            Value to be found
+     * @return index of that value, or -1 if it was not found
+     */
+    public int indexOf(double value) {
+        int ix = ceilingIndex(value);
+        if (ix < size && Double.compare(data[ix], value) == 0) return ix;
+        else return -1;
+    }
+
+    /**
+     * Gets the index of the lowest value that is equal to or higher than the given value.
+     *
+     * @param value
+     *            Value to approximate
+     * @return Index of that value, or {@link #size()} if all values are lower than the
+     *         given value
+     */
+    public int ceilingIndex(double value) {
+        int min = 0;
+        int max = size;
+        while (min < max) {
+            int current = (min + max) >>> 1;
+            if (Double.compare(data[current], value) < 0) {
+                min = current + 1;
+            } else {
+                max = current;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Gets the index of the lowest value that is higher than the given value.
+     *
+     * @param value
+     *            Value to approximate
+     * @return Index of that value, or {@link #size()} if all values are lower than or
+     *         equal to the given value
+     */
+    public int higherIndex(double value) {
+        int min = 0;
+        int max = size;
+        while (min < max) {
+            int current = (min + max) >>> 1;
+            if (Double.compare(data[current], value) <= 0) {
+                min = current + 1;
+            } else {
+                max = current;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Counts the values that are between from (inclusive) and to (exclusive).
+     *
+     * @param from
+     *            Lowest value
+     * @param to
+     *            Upper limit, exclusive
+     * @return Number of values in that range
+     */
+    public int countRange(double from, double to) {
+        return Math.max(ceilingIndex(to) - ceilingIndex(from), 0);
+    }
+
+    /**
+     * Returns all values as a sorted array.
+     *
+     * @return Array of all values
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Returns all values that are between from (inclusive) and to (exclusive), as a
+     * sorted array.
+     *
+     * @param from
+     *            Lowest value
+     * @param to
+     *            Upper limit, exclusive
+     * @return Array of all values in that range
+     */
+    public double[] toArray(double from, double to) {
+        int start = ceilingIndex(from);
+        int end = Math.max(ceilingIndex(to), start);
+        return Arrays.copyOfRange(data, start, end);
+    }
+
+    /**
+     * Makes sure the list is able to hold the given number of values without growing.
+     *
+     * @param capacity
+     *            Minimum capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            int newCapacity = Math.max(data.length + (data.length >> 1), capacity);
+            data = Arrays.copyOf(data, newCapacity);
+        }
+    }
+
+    /**
+     * Trims the capacity of this list to its current size.
+     */
+    public void trimToSize() {
+        if (data.length > size) {
+            data = Arrays.copyOf(data, size);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj == null || !(obj instanceof SortedDoubleList)) return false;
+
+        SortedDoubleList cmp = (SortedDoubleList) obj;
+        if (cmp.size != size) return false;
+        for (int ix = 0; ix < size; ix++) {
+            if (Double.compare(cmp.data[ix], data[ix]) != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int ix = 0; ix < size; ix++) {
+            long bits = Double.doubleToLongBits(data[ix]);
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append('[');
+        for (int ix = 0; ix < size; ix++) {
+            if (ix > 0) buffer.append(", ");
+            buffer.append(data[ix]);
+        }
+        buffer.append(']');
+        return buffer.toString();
+    }
+
+    /**
+     * Merges a sorted array into this list. Duplicates are skipped.
+     *
+     * @param batch
+     *            Sorted array, may contain duplicates
+     * @param count
+     *            Number of values in the array
+     */
+    private void merge(double[] batch, int count) {
+        if (count == 0) return;
+
+        double[] merged = new double[size + count];
+        int ixOld = 0;
+        int ixNew = 0;
+        int ixMerged = 0;
+
+        while (ixOld < size || ixNew < count) {
+            double next;
+            if (ixNew == count || (ixOld < size && Double.compare(data[ixOld], batch[ixNew]) < 0)) {
+                next = data[ixOld++];
+            } else {
+                next = batch[ixNew++];
+            }
+
+            if (ixMerged == 0 || Double.compare(merged[ixMerged - 1], next) != 0) {
+                merged[ixMerged++] = next;
+            }
+        }
+
+        data = merged;
+        size = ixMerged;
+    }
+
+}
@@ -19,11 +19,16 @@
  */
 package net.shredzone.jshred.util;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * A SortedList is a {@link List} which sorts its elements according to a certain order.
@@ -150,18 +155,81 @@ public class SortedList<T> extends ArrayList<T> {
     /**
      * Adds all elements of a {@link Collection} to the SortedList. The entries are
      * inserted as they are found in the {@link Collection}, and sorted to their proper
-     * position.
+     * position. If the {@link Collection} contains equal elements, or elements that are
+     * equal to elements of this SortedList, the last one found in the {@link Collection}
+     * replaces the others, just as if {@link #add(Object)} was invoked for each entry.
+     * <p>
+     * The {@link Collection} is sorted first, and then merged with the current content
+     * of this list in a single pass. This is much faster than adding each element
+     * separately, especially for large {@link Collection}s.
      *
      * @param c
      *            Collection to be added.
      * @return true if this list was changed
+     * @throws ClassCastException
      * @see java.util.Collection#addAll(java.util.Collection)
      */
     @Override
+    @SuppressWarnings("unchecked")
     public boolean addAll(Collection<? extends T> c) {
-        for (T elem : c) {
-            add(elem);
+        T[] batch = (T[]) c.toArray();
+        if (batch.length == 0) return true;
+
+        // --- Assert the elements ---
+        for (T elem : batch) {
+            if (elem == null) throw new NullPointerException("null is not permitted");
+        }
+
+        // --- Sort the batch, the sort is stable so the order of equal elements is kept ---
+        if (comparator != null) {
+            Arrays.sort(batch, comparator);
+        } else {
+            // A ClassCastException is intentional
+            Arrays.sort(batch);
+        }
+
+        // --- Remove duplicates, the last equal element wins ---
+        int count = 0;
+        for (T elem : batch) {
+            if (count > 0 && compare(batch[count - 1], elem) == 0) {
+                batch[count - 1] = elem;
+            } else {
+                batch[count++] = elem;
+            }
+        }
+
+        // --- Merge with the current content ---
+        int size = size();
+        T[] merged = (T[]) new Object[size + count];
+        int ixOld = 0;
+        int ixNew = 0;
+        int ixMerged = 0;
+
+        while (ixOld < size && ixNew < count) {
+            T old = get(ixOld);
+            int result = compare(old, batch[ixNew]);
+            if (result < 0) {
+                merged[ixMerged++] = old;
+                ixOld++;
+            } else if (result > 0) {
+                merged[ixMerged++] = batch[ixNew++];
+            } else {
+                // --- Replace an existing element ---
+                merged[ixMerged++] = batch[ixNew++];
+                ixOld++;
+            }
         }
+
+        while (ixOld < size) {
+            merged[ixMerged++] = get(ixOld++);
+        }
+
+        while (ixNew < count) {
+            merged[ixMerged++] = batch[ixNew++];
+        }
+
+        super.clear();
+        super.addAll(Arrays.asList(merged).subList(0, ixMerged));
         return true;
     }
 
@@ -223,6 +291,190 @@ public class SortedList<T> extends ArrayList<T> {
         return indexOf(elem);
     }
 
+    /**
+     * Returns the greatest element in this list that is less than or equal to the given
+     * element.
+     *
+     * @param elem
+     *            Element to compare with
+     * @return The floor element, or {@code null} if there is none
+     * @since R20
+     */
+    public T floor(T elem) {
+        int ix = higherIndex(elem) - 1;
+        return (ix >= 0 ? get(ix) : null);
+    }
+
+    /**
+     * Returns the least element in this list that is greater than or equal to the given
+     * element.
+     *
+     * @param elem
+     *            Element to compare with
+     * @return The ceiling element, or {@code null} if there is none
+     * @since R20
+     */
+    public T ceiling(T elem) {
+        if (elem == null) throw new NullPointerException("null is not permitted");
+
+        int ix = approximate(elem);
+        return (ix < size() ? get(ix) : null);
+    }
+
+    /**
+     * Returns the greatest element in this list that is strictly less than the given
+     * element.
+     *
+     * @param elem
+     *            Element to compare with
+     * @return The lower element, or {@code null} if there is none
+     * @since R20
+     */
+    public T lower(T elem) {
+        if (elem == null) throw new NullPointerException("null is not permitted");
+
+        int ix = approximate(elem) - 1;
+        return (ix >= 0 ? get(ix) : null);
+    }
+
+    /**
+     * Returns the least element in this list that is strictly greater than the given
+     * element.
+     *
+     * @param elem
+     *            Element to compare with
+     * @return The higher element, or {@code null} if there is none
+     * @since R20
+     */
+    public T higher(T elem) {
+        int ix = higherIndex(elem);
+        return (ix < size() ? get(ix) : null);
+    }
+
+    /**
+     * Returns a view of all elements that are less than the given element.
+     *
+     * @param toElement
+     *            Upper limit, exclusive
+     * @return View of the elements
+     * @see #headList(Object, boolean)
+     * @since R20
+     */
+    public List<T> headList(T toElement) {
+        return headList(toElement, false);
+    }
+
+    /**
+     * Returns a view of all elements that are less than (or equal to, if inclusive is
+     * {@code true}) the given element.
+     * <p>
+     * The view is backed by this list, so changes to this list are reflected in the view.
+     * The range is evaluated on each access, so a view always contains all elements of
+     * this list that are within the range. Elements can be added to or removed from this
+     * list through the view. Adding an element outside of the range throws an
+     * {@link IllegalArgumentException}.
+     *
+     * @param toElement
+     *            Upper limit
+     * @param inclusive
+     *            {@code true} if the upper limit is to be included
+     * @return View of the elements
+     * @since R20
+     */
+    public List<T> headList(T toElement, boolean inclusive) {
+        if (toElement == null) throw new NullPointerException("null is not permitted");
+        return new RangeList(null, false, toElement, inclusive);
+    }
+
+    /**
+     * Returns a view of all elements that are greater than or equal to the given element.
+     *
+     * @param fromElement
+     *            Lower limit, inclusive
+     * @return View of the elements
+     * @see #tailList(Object, boolean)
+     * @since R20
+     */
+    public List<T> tailList(T fromElement) {
+        return tailList(fromElement, true);
+    }
+
+    /**
+     * Returns a view of all elements that are greater than (or equal to, if inclusive is
+     * {@code true}) the given element. See {@link #headList(Object, boolean)} for the
+     * behavior of the view.
+     *
+     * @param fromElement
+     *            Lower limit
+     * @param inclusive
+     *            {@code true} if the lower limit is to be included
+     * @return View of the elements
+     * @since R20
+     */
+    public List<T> tailList(T fromElement, boolean inclusive) {
+        if (fromElement == null) throw new NullPointerException("null is not permitted");
+        return new RangeList(fromElement, inclusive, null, false);
+    }
+
+    /**
+     * Returns a view of all elements that are between the given elements.
+     * <p>
+     * Note that for a SortedList of {@link Integer}, {@link #subList(int, int)} is
+     * invoked if {@code int} values are passed in.
+     *
+     * @param fromElement
+     *            Lower limit, inclusive
+     * @param toElement
+     *            Upper limit, exclusive
+     * @return View of the elements
+     * @see #subList(Object, boolean, Object, boolean)
+     * @since R20
+     */
+    public List<T> subList(T fromElement, T toElement) {
+        return subList(fromElement, true, toElement, false);
+    }
+
+    /**
+     * Returns a view of all elements that are between the given elements. See
+     * {@link #headList(Object, boolean)} for the behavior of the view.
+     *
+     * @param fromElement
+     *            Lower limit
+     * @param fromInclusive
+     *            {@code true} if the lower limit is to be included
+     * @param toElement
+     *            Upper limit
+     * @param toInclusive
+     *            {@code true} if the upper limit is to be included
+     * @return View of the elements
+     * @since R20
+     */
+    public List<T> subList(T fromElement, boolean fromInclusive,
+                T toElement, boolean toInclusive) {
+        if (fromElement == null || toElement == null)
+            throw new NullPointerException("null is not permitted");
+        if (compare(fromElement, toElement) > 0)
+            throw new IllegalArgumentException("fromElement > toElement");
+        return new RangeList(fromElement, fromInclusive, toElement, toInclusive);
+    }
+
+    /**
+     * Finds the index of the first element that is greater than the given element.
+     *
+     * @param elem
+     *            Element to compare with
+     * @return Index of the element, or size() if all elements are less than or equal to
+     *         the given element
+     * @throws ClassCastException
+     */
+    private int higherIndex(T elem) {
+        if (elem == null) throw new NullPointerException("null is not permitted");
+
+        int ix = approximate(elem);
+        if (ix < size() && compare(get(ix), elem) == 0) ix++;
+        return ix;
+    }
+
     /**
      * Approximates the position of the given element in the list. The element at the
      * returned index is either equal to the given element, or it is the next higher
@@ -299,4 +551,163 @@ public class SortedList<T> extends ArrayList<T> {
         }
     }
 
+    /**
+     * A live view of a range of elements in this list. The range limits are evaluated
+     * on each access.
+     */
+    private class RangeList extends AbstractList<T> {
+        private final T fromElement;            // Lower limit, or null if unlimited
+        private final boolean fromInclusive;
+        private final T toElement;              // Upper limit, or null if unlimited
+        private final boolean toInclusive;
+
+        public RangeList(T fromElement, boolean fromInclusive,
+                    T toElement, boolean toInclusive) {
+            this.fromElement = fromElement;
+            this.fromInclusive = fromInclusive;
+            this.toElement = toElement;
+            this.toInclusive = toInclusive;
+        }
+
+        /**
+         * Index of the first element within the range.
+         */
+        private int start() {
+            if (fromElement == null) return 0;
+            return (fromInclusive ? approximate(fromElement) : higherIndex(fromElement));
+        }
+
+        /**
+         * Index of the first element after the range.
+         */
+        private int end() {
+            if (toElement == null) return SortedList.this.size();
+            return (toInclusive ? higherIndex(toElement) : approximate(toElement));
+        }
+
+        /**
+         * Checks if an element is within the range.
+         */
+        private boolean inRange(T elem) {
+            if (fromElement != null) {
+                int result = compare(elem, fromElement);
+                if (result < 0 || (result == 0 && !fromInclusive)) return false;
+            }
+            if (toElement != null) {
+                int result = compare(elem, toElement);
+                if (result > 0 || (result == 0 && !toInclusive)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return Math.max(end() - start(), 0);
+        }
+
+        @Override
+        public T get(int index) {
+            int start = start();
+            if (index < 0 || start + index >= end())
+                throw new IndexOutOfBoundsException("Index: " + index);
+            return SortedList.this.get(start + index);
+        }
+
+        @Override
+        public boolean add(T elem) {
+            if (elem == null) throw new NullPointerException("null is not permitted");
+            if (!inRange(elem)) throw new IllegalArgumentException("element out of range");
+            return SortedList.this.add(elem);
+        }
+
+        @Override
+        public T remove(int index) {
+            int start = start();
+            if (index < 0 || start + index >= end())
+                throw new IndexOutOfBoundsException("Index: " + index);
+            return SortedList.this.remove(start + index);
+        }
+
+        @Override
+        public boolean remove(Object elem) {
+            // ClassCastException is intentional
+            return contains(elem) && SortedList.this.remove(elem);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object elem) {
+            if (elem == null) throw new NullPointerException("null is not permitted");
+
+            // ClassCastException is intentional
+            return inRange((T) elem) && SortedList.this.contains(elem);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int indexOf(Object elem) {
+            if (elem == null) throw new NullPointerException("null is not permitted");
+
+            // ClassCastException is intentional
+            if (!inRange((T) elem)) return -1;
+            int ix = SortedList.this.indexOf(elem);
+            return (ix >= 0 ? ix - start() : -1);
+        }
+
+        @Override
+        public int lastIndexOf(Object elem) {
+            return indexOf(elem);
+        }
+
+        @Override
+        public void clear() {
+            SortedList.this.removeRange(start(), Math.max(end(), start()));
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new RangeIterator(start(), end());
+        }
+    }
+
+    /**
+     * An {@link Iterator} over a range of this list. The range is evaluated only once,
+     * when the iterator is created.
+     */
+    private class RangeIterator implements Iterator<T> {
+        private int cursor;
+        private int end;
+        private int lastRet = -1;
+        private int expectedModCount = modCount;
+
+        public RangeIterator(int start, int end) {
+            this.cursor = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < end;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (cursor >= end) throw new NoSuchElementException();
+            lastRet = cursor++;
+            return get(lastRet);
+        }
+
+        @Override
+        public void remove() {
+            if (lastRet < 0) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            SortedList.this.remove(lastRet);
+            cursor = lastRet;
+            lastRet = -1;
+            end--;
+            expectedModCount = modCount;
+        }
+    }
+
 }
@@ -0,0 +1,432 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A SortedLongList is a sorted list of {@code long} values. It works like a
+ * {@link SortedList} of {@link Long}, but keeps the values in a plain {@code long}
+ * array, so there is no boxing and no object per element.
+ * <p>
+ * The list is always sorted in ascending order and does not contain duplicate values.
+ * {@link #contains(long)} and {@link #indexOf(long)} use a binary search.
+ * <p>
+ * Iterating does not need an iterator object. Just use the index:
+ *
+ * <pre>
+ * for (int ix = 0; ix &lt; list.size(); ix++) {
+ *     long value = list.get(ix);
+ * }
+ * </pre>
+ *
+ * For iterating over a range of values, use {@link #ceilingIndex(long)} to find the
+ * first and the end index:
+ *
+ * <pre>
+ * int end = list.ceilingIndex(to);
+ * for (int ix = list.ceilingIndex(from); ix &lt; end; ix++) {
+ *     long value = list.get(ix);
+ * }
+ * </pre>
+ *
+ * Note that a SortedLongList is not synchronized!
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class SortedLongList implements Serializable {
+    private static final long serialVersionUID = 8406152219620867393L;
+
+    private long[] data;
+    private int size = 0;
+
+    /**
+     * Creates an empty SortedLongList.
+     */
+    public SortedLongList() {
+        this(10);
+    }
+
+    /**
+     * Creates an empty SortedLongList with the given initial capacity.
+     *
+     * @param capacity
+     *            Initial capacity
+     */
+    public SortedLongList(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative");
+        data = new long[capacity];
+    }
+
+    /**
+     * Creates a new SortedLongList and initialize it with the given values. The values do
+     * not need to be sorted, and may contain duplicates.
+     *
+     * @param values
+     *            Values to initialize the SortedLongList with.
+     */
+    public SortedLongList(long[] values) {
+        this(0);
+        addAll(values);
+    }
+
+    /**
+     * Gets the number of values in this list.
+     *
+     * @return Number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if this list is empty.
+     *
+     * @return {@code true} if the list is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the value at the given index.
+     *
+     * @param index
+     *            Index
+     * @return Value at that index
+     */
+    public long get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return data[index];
+    }
+
+    /**
+     * Adds a value to the list. The value will be sorted to its proper position.
+     *
+     * @param value
+     *            Value to be added
+     * @return {@code true} if the value was added, {@code false} if it was already
+     *         present
+     */
+    public boolean add(long value) {
+        int ix = ceilingIndex(value);
+        if (ix < size && data[ix] == value) return false;
+
+        ensureCapacity(size + 1);
+        System.arraycopy(data, ix, data, ix + 1, size - ix);
+        data[ix] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds all values of an array to the list. The values do not need to be sorted, and
+     * may contain duplicates.
+     * <p>
+     * The values are sorted first, and then merged with the current content of this list
+     * in a single pass.
+     *
+     * @param values
+     *            Values to be added
+     */
+    public void addAll(long[] values) {
+        addAll(values, 0, values.length);
+    }
+
+    /**
+     * Adds a section of an array to the list. The values do not need to be sorted, and
+     * may contain duplicates.
+     *
+     * @param values
+     *            Values to be added
+     * @param offset
+     *            First index to add
+     * @param count
+     *            Number of values to add
+     */
+    public void addAll(long[] values, int offset, int count) {
+        long[] batch = Arrays.copyOfRange(values, offset, offset + count);
+        Arrays.sort(batch);
+        merge(batch, count);
+    }
+
+    /**
+     * Adds all values of another SortedLongList to this list.
+     *
+     * @param list
+     *            SortedLongList to be added
+     */
+    public void addAll(SortedLongList list) {
+        merge(list.data, list.size);
+    }
+
+    /**
+     * Removes a value from the list.
+     *
+     * @param value
+     *            Value to be removed
+     * @return {@code true} if the value was found and removed
+     */
+    public boolean remove(long value) {
+        int ix = indexOf(value);
+        if (ix < 0) return false;
+        removeAt(ix);
+        return true;
+    }
+
+    /**
+     * Removes the value at the given index.
+     *
+     * @param index
+     *            Index of the value to be removed
+     * @return The removed value
+     */
+    public long removeAt(int index) {
+        long result = get(index);
+        System.arraycopy(data, index + 1, data, index, size - index - 1);
+        size--;
+        return result;
+    }
+
+    /**
+     * Removes all values that are between from (inclusive) and to (exclusive).
+     *
+     * @param from
+     *            Lowest value to be removed
+     * @param to
+     *            Upper limit, exclusive
+     * @return Number of values that have been removed
+     */
+    public int removeRange(long from, long to) {
+        int start = ceilingIndex(from);
+        int end = Math.max(ceilingIndex(to), start);
+        System.arraycopy(data, end, data, start, size - end);
+        size -= end - start;
+        return end - start;
+    }
+
+    /**
+     * Removes all values from this list.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Checks if the list contains a value.
+     *
+     * @param value
+     *            Value to be checked
+     * @return {@code true} if the list contains the value
+     */
+    public boolean contains(long value) {
+        int ix = ceilingIndex(value);
+        return ix < size && data[ix] == value;
+    }
+
+    /**
+     * Gets the index of a value.
+     *
+     * @param value
+     *            Value to be found
+     * @return index of that value, or -1 if it was not found
+     */
+    public int indexOf(long value) {
+        int ix = ceilingIndex(value);
+        if (ix < size && data[ix] == value) return ix;
+        else return -1;
+    }
+
+    /**
+     * Gets the index of the lowest value that is equal to or higher than the given value.
+     *
+     * @param value
+     *            Value to approximate
+     * @return Index of that value, or {@link #size()} if all values are lower than the
+     *         given value
+     */
+    public int ceilingIndex(long value) {
+        int min = 0;
+        int max = size;
+        while (min < max) {
+            int current = (min + max) >>> 1;
+            if (data[current] < value) {
+                min = current + 1;
+            } else {
+                max = current;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Gets the index of the lowest value that is higher than the given value.
+     *
+     * @param value
+     *            Value to approximate
+     * @return Index of that value, or {@link #size()} if all values are lower than or
+     *         equal to the given value
+     */
+    public int higherIndex(long value) {
+        int min = 0;
+        int max = size;
+        while (min < max) {
+            int current = (min + max) >>> 1;
+            if (data[current] <= value) {
+                min = current + 1;
+            } else {
+                max = current;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Counts the values that are between from (inclusive) and to (exclusive).
+     *
+     * @param from
+     *            Lowest value
+     * @param to
+     *            Upper limit, exclusive
+     * @return Number of values in that range
+     */
+    public int countRange(long from, long to) {
+        return Math.max(ceilingIndex(to) - ceilingIndex(from), 0);
+    }
+
+    /**
+     * Returns all values as a sorted array.
+     *
+     * @return Array of all values
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Returns all values that are between from (inclusive) and to (exclusive), as a
+     * sorted array.
+     *
+     * @param from
+     *            Lowest value
+     * @param to
+     *            Upper limit, exclusive
+     * @return Array of all values in that range
+     */
+    public long[] toArray(long from, long to) {
+        int start = ceilingIndex(from);
+        int end = Math.max(ceilingIndex(to), start);
+        return Arrays.copyOfRange(data, start, end);
+    }
+
+    /**
+     * Makes sure the list is able to hold the given number of values without growing.
+     *
+     * @param capacity
+     *            Minimum capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            int newCapacity = Math.max(data.length + (data.length >> 1), capacity);
+            data = Arrays.copyOf(data, newCapacity);
+        }
+    }
+
+    /**
+     * Trims the capacity of this list to its current size.
+     */
+    public void trimToSize() {
+        if (data.length > size) {
+            data = Arrays.copyOf(data, size);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj == null || !(obj instanceof SortedLongList)) return false;
+
+        SortedLongList cmp = (SortedLongList) obj;
+        if (cmp.size != size) return false;
+        for (int ix = 0; ix < size; ix++) {
+            if (cmp.data[ix] != data[ix]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int ix = 0; ix < size; ix++) {
+            result = 31 * result + (int) (data[ix] ^ (data[ix] >>> 32));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append('[');
+        for (int ix = 0; ix < size; ix++) {
+            if (ix > 0) buffer.append(", ");
+            buffer.append(data[ix]);
+        }
+        buffer.append(']');
+        return buffer.toString();
+    }
+
+    /**
+     * Merges a sorted array into this list. Duplicates are skipped.
+     *
+     * @param batch
+     *            Sorted array, may contain duplicates
+     * @param count
+     *            Number of values in the array
+     */
+    private void merge(long[] batch, int count) {
+        if (count == 0) return;
+
+        long[] merged = new long[size + count];
+        int ixOld = 0;
+        int ixNew = 0;
+        int ixMerged = 0;
+
+        while (ixOld < size || ixNew < count) {
+            long next;
+            if (ixNew == count || (ixOld < size && data[ixOld] < batch[ixNew])) {
+                next = data[ixOld++];
+            } else {
+                next = batch[ixNew++];
+            }
+
+            if (ixMerged == 0 || merged[ixMerged - 1] != next) {
+                merged[ixMerged++] = next;
+            }
+        }
+
+        data = merged;
+        size = ixMerged;
+    }
+
+}
@@ -0,0 +1,325 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link PhpByteSerializer}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class PhpByteSerializerTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static String serialize(Object obj) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (PhpByteSerializer ser = new PhpByteSerializer(bos)) {
+            ser.serialize(obj);
+        }
+        return new String(bos.toByteArray(), UTF8);
+    }
+
+    /**
+     * Test scalar values.
+     */
+    @Test
+    public void testScalars() throws IOException {
+        Assert.assertEquals("i:42;", serialize(42));
+        Assert.assertEquals("i:-9223372036854775808;", serialize(Long.MIN_VALUE));
+        Assert.assertEquals("b:1;", serialize(true));
+        Assert.assertEquals("N;", serialize(null));
+        Assert.assertEquals("s:3:\"abc\";", serialize("abc"));
+        Assert.assertEquals("s:1:\"x\";", serialize('x'));
+        Assert.assertEquals("d:1.5;", serialize(1.5));
+        Assert.assertEquals("d:-0.001;", serialize(-0.001));
+        Assert.assertEquals("d:0.1;", serialize(0.1));
+        Assert.assertEquals("d:3;", serialize(3.0));
+        Assert.assertEquals("d:-0;", serialize(-0.0));
+        Assert.assertEquals("d:INF;", serialize(Double.POSITIVE_INFINITY));
+        Assert.assertEquals("d:NAN;", serialize(Double.NaN));
+        Assert.assertEquals("d:1.0E100;", serialize(1e100));
+        Assert.assertEquals("d:12.50;", serialize(new BigDecimal("12.50")));
+    }
+
+    /**
+     * String lengths must be UTF-8 byte lengths.
+     */
+    @Test
+    public void testUtf8() throws IOException {
+        Assert.assertEquals("s:11:\"Körber €\";", serialize("Körber €"));
+        Assert.assertEquals("s:4:\"😀\";", serialize("😀"));
+        Assert.assertEquals("s:1:\"?\";", serialize("\uD83D"));
+
+        // --- Strings larger than the internal buffer ---
+        StringBuilder sb = new StringBuilder();
+        for (int ix = 0; ix < 5000; ix++) {
+            sb.append("ä€x");
+        }
+        String str = sb.toString();
+        Assert.assertEquals("s:30000:\"" + str + "\";", serialize(str));
+    }
+
+    /**
+     * Output of ASCII data must be identical to {@link PhpSerializer}, except for
+     * doubles.
+     */
+    @Test
+    public void testSameAsPhpSerializer() throws IOException {
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        map.put("list", Arrays.asList(1, "two", null, true));
+        map.put(5, new Object[] {'c', 7L});
+        map.put(null, "null key");
+        map.put(Boolean.TRUE, "true key");
+        map.put(2.5, "double key");
+
+        StringWriter sw = new StringWriter();
+        try (PhpSerializer ser = new PhpSerializer(sw)) {
+            ser.serialize(map);
+        }
+        Assert.assertEquals(sw.toString(), serialize(map));
+    }
+
+    /**
+     * The output must be readable by {@link PhpDeserializer}.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        PhpObject obj = new PhpObject("User");
+        obj.getProperties().put("name", "Rüdiger");
+        obj.getProperties().put("score", 0.75);
+
+        List<Object> list = new ArrayList<Object>();
+        list.add(obj);
+        list.add(Arrays.asList("ä", -12L, false));
+
+        ByteBuffer target = ByteBuffer.allocate(200);
+        PhpByteSerializer ser = new PhpByteSerializer(target);
+        ser.serialize(list);
+        ser.flush();
+        target.flip();
+
+        byte[] data = new byte[target.remaining()];
+        target.get(data);
+        Object result = new PhpDeserializer(new ByteArrayInputStream(data)).deserialize();
+        Assert.assertEquals(list, result);
+    }
+
+    /**
+     * Repeated objects must be written as references, if enabled.
+     */
+    @Test
+    public void testReferences() throws IOException {
+        PhpObject obj = new PhpObject("A");
+        obj.getProperties().put("n", 1L);
+        List<String> shared = Arrays.asList("x");
+
+        List<Object> list = new ArrayList<Object>();
+        list.add(obj);
+        list.add(obj);
+        list.add(shared);
+        list.add(shared);
+        list.add(list);
+
+        String expected = "a:5:{i:0;O:1:\"A\":1:{s:1:\"n\";i:1;}i:1;r:2;"
+                        + "i:2;a:1:{i:0;s:1:\"x\";}i:3;R:5;i:4;R:1;}";
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (PhpByteSerializer ser = new PhpByteSerializer(bos)) {
+            ser.setTrackReferences(true);
+            Assert.assertTrue(ser.isTrackReferences());
+            ser.serialize(list);
+        }
+        Assert.assertEquals(expected, new String(bos.toByteArray(), UTF8));
+
+        // --- PhpSerializer must write the same references ---
+        StringWriter sw = new StringWriter();
+        try (PhpSerializer ser = new PhpSerializer(sw)) {
+            ser.setTrackReferences(true);
+            ser.serialize(list);
+        }
+        Assert.assertEquals(expected, sw.toString());
+
+        // --- Each serialized structure has its own references ---
+        bos = new ByteArrayOutputStream();
+        try (PhpByteSerializer ser = new PhpByteSerializer(bos)) {
+            ser.setTrackReferences(true);
+            ser.serialize(shared);
+            ser.serialize(shared);
+        }
+        Assert.assertEquals("a:1:{i:0;s:1:\"x\";}a:1:{i:0;s:1:\"x\";}",
+                        new String(bos.toByteArray(), UTF8));
+
+        // --- Without tracking, shared objects are written in full ---
+        Assert.assertEquals("a:2:{i:0;a:1:{i:0;s:1:\"x\";}i:1;a:1:{i:0;s:1:\"x\";}}",
+                        serialize(Arrays.asList(shared, shared)));
+    }
+
+    /**
+     * The precomputed size must match the actual output.
+     */
+    @Test
+    public void testSizeOf() throws IOException {
+        PhpObject obj = new PhpObject("Üser");
+        obj.getProperties().put("name", "Rüdiger \uD83D\uDE00");
+        obj.getProperties().put("score", 0.75);
+
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        map.put("ä", new BigDecimal("1.5"));
+        map.put(null, Double.NaN);
+
+        List<Object> list = new ArrayList<Object>();
+        list.add(obj);
+        list.add(obj);
+        list.add(map);
+        list.add(new StringBuilder("日本"));
+        list.add(-42L);
+        list.add(null);
+
+        PhpByteSerializer ser = new PhpByteSerializer(new ByteArrayOutputStream());
+        for (boolean track : new boolean[] { false, true }) {
+            ser.setTrackReferences(track);
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (PhpByteSerializer ser2 = new PhpByteSerializer(bos)) {
+                ser2.setTrackReferences(track);
+                ser2.serialize(list);
+            }
+            byte[] expected = bos.toByteArray();
+
+            Assert.assertEquals(expected.length, ser.sizeOf(list));
+            Assert.assertArrayEquals(expected, ser.toByteArray(list));
+        }
+
+        Assert.assertEquals(2, ser.sizeOf(null));
+        Assert.assertArrayEquals("N;".getBytes(UTF8), ser.toByteArray(null));
+    }
+
+    /**
+     * Objects that can only be traversed once must be rejected by toByteArray.
+     */
+    @Test
+    public void testToByteArrayOneShot() throws IOException {
+        PhpByteSerializer ser = new PhpByteSerializer(new ByteArrayOutputStream());
+        final List<String> values = Arrays.asList("a", "b");
+
+        try {
+            ser.toByteArray(values.iterator());
+            Assert.fail("Iterator was accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        try {
+            ser.toByteArray(Arrays.asList("x", values.iterator()));
+            Assert.fail("nested Iterator was accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        final Iterator<String> once = values.iterator();
+        Iterable<String> oneShot = new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return once;
+            }
+        };
+        try {
+            ser.toByteArray(oneShot);
+            Assert.fail("one-shot Iterable was accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        // --- An Iterable that can be iterated again is fine ---
+        Iterable<String> repeatable = new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return values.iterator();
+            }
+        };
+        Assert.assertArrayEquals("a:2:{i:0;s:1:\"a\";i:1;s:1:\"b\";}".getBytes(UTF8),
+                        ser.toByteArray(repeatable));
+    }
+
+    /**
+     * Iterators must be serialized like lists, also when spooled to a file.
+     */
+    @Test
+    public void testIterator() throws IOException {
+        List<String> shared = Arrays.asList("ä", "b");
+        List<Object> inner = new ArrayList<Object>();
+        for (int ix = 0; ix < 1000; ix++) {
+            inner.add(ix % 10 == 0 ? shared : "value " + ix);
+        }
+        List<Object> list = Arrays.<Object>asList(shared, inner, "end");
+
+        for (int threshold : new int[] { 0, 100, 1024 * 1024 }) {
+            for (boolean track : new boolean[] { false, true }) {
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                try (PhpByteSerializer ser = new PhpByteSerializer(expected)) {
+                    ser.setTrackReferences(track);
+                    ser.serialize(list);
+                }
+
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try (PhpByteSerializer ser = new PhpByteSerializer(bos)) {
+                    ser.setTrackReferences(track);
+                    ser.setSpoolThreshold(threshold);
+                    ser.serialize(Arrays.asList(shared, inner.iterator(), "end").iterator());
+                }
+                Assert.assertArrayEquals(expected.toByteArray(), bos.toByteArray());
+
+                StringWriter sw = new StringWriter();
+                try (PhpSerializer ser = new PhpSerializer(sw)) {
+                    ser.setTrackReferences(track);
+                    ser.setSpoolThreshold(threshold);
+                    ser.serialize(Arrays.asList("x", inner.iterator()).iterator());
+                }
+                StringWriter swExpected = new StringWriter();
+                try (PhpSerializer ser = new PhpSerializer(swExpected)) {
+                    ser.setTrackReferences(track);
+                    ser.serialize(Arrays.asList("x", inner));
+                }
+                Assert.assertEquals(swExpected.toString(), sw.toString());
+            }
+        }
+
+        Assert.assertEquals("a:0:{}", serialize(new ArrayList<Object>().iterator()));
+    }
+
+}
@@ -0,0 +1,324 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link PhpDeserializer}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class PhpDeserializerTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static Object unserialize(String php) throws IOException {
+        Object fromStream = new PhpDeserializer(new ByteArrayInputStream(php.getBytes(UTF8)))
+                        .deserialize();
+        Object fromReader = new PhpDeserializer(new StringReader(php)).deserialize();
+        Assert.assertEquals(fromStream, fromReader);
+        return fromStream;
+    }
+
+    /**
+     * Test scalar values.
+     */
+    @Test
+    public void testScalars() throws IOException {
+        Assert.assertEquals(42L, unserialize("i:42;"));
+        Assert.assertEquals(-9223372036854775808L, unserialize("i:-9223372036854775808;"));
+        Assert.assertEquals(1.5, unserialize("d:1.5;"));
+        Assert.assertEquals(Double.NEGATIVE_INFINITY, unserialize("d:-INF;"));
+        Assert.assertEquals(Boolean.TRUE, unserialize("b:1;"));
+        Assert.assertEquals(Boolean.FALSE, unserialize("b:0;"));
+        Assert.assertNull(unserialize("N;"));
+        Assert.assertEquals("", unserialize("s:0:\"\";"));
+        Assert.assertEquals("say \"hi\";", unserialize("s:9:\"say \"hi\";\";"));
+
+        // --- String length is given in UTF-8 bytes ---
+        Assert.assertEquals("Körber €", unserialize("s:11:\"Körber €\";"));
+    }
+
+    /**
+     * Test arrays and objects.
+     */
+    @Test
+    public void testStructures() throws IOException {
+        Assert.assertEquals(Arrays.asList(1L, "two", null),
+            unserialize("a:3:{i:0;i:1;i:1;s:3:\"two\";i:2;N;}"));
+
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> map = (Map<Object, Object>) unserialize(
+            "a:3:{s:3:\"foo\";a:0:{}i:5;d:0.5;s:3:\"bar\";a:1:{i:0;b:1;}}");
+        Assert.assertEquals(Arrays.<Object>asList("foo", 5L, "bar"),
+            Arrays.asList(map.keySet().toArray()));
+        Assert.assertTrue(((List<?>) map.get("foo")).isEmpty());
+        Assert.assertEquals(0.5, map.get(5L));
+        Assert.assertEquals(Arrays.asList(true), map.get("bar"));
+
+        PhpObject obj = (PhpObject) unserialize("O:4:\"User\":3:{s:4:\"name\";s:5:\"Shred\";"
+            + "s:6:\"\0*\0age\";i:30;s:10:\"\0User\0pass\";N;}");
+        Assert.assertEquals("User", obj.getClassName());
+        Assert.assertEquals("Shred", obj.get("name"));
+        Assert.assertEquals(30L, obj.get("age"));
+        Assert.assertTrue(obj.getProperties().containsKey("pass"));
+    }
+
+    /**
+     * Test a string that is larger than the internal buffer.
+     */
+    @Test
+    public void testLargeString() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int ix = 0; ix < 10000; ix++) {
+            sb.append("äbc");
+        }
+        String str = sb.toString();
+        String php = "a:2:{i:0;s:40000:\"" + str + "\";i:1;i:7;}";
+        Assert.assertEquals(Arrays.asList(str, 7L), unserialize(php));
+    }
+
+    /**
+     * Strings are read in chunks, and their length can be limited.
+     */
+    @Test
+    public void testStringLimits() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int ix = 0; ix < 50000; ix++) {
+            sb.append("abcd");
+        }
+        String str = sb.toString();
+        Assert.assertEquals(str, unserialize("s:200000:\"" + str + "\";"));
+
+        // --- A forged length must not allocate the memory up front ---
+        try {
+            unserialize("s:2000000000:\"abc\";");
+            Assert.fail("truncated string was accepted");
+        } catch (EOFException ex) {
+            // expected
+        }
+
+        // --- A length close to Integer.MAX_VALUE must not overflow the buffer check ---
+        String[] forged = { "s:2147483647:\"abc\";", "a:1:{i:0;s:2147483640:\"x\";}" };
+        for (String php : forged) {
+            try {
+                unserialize(php);
+                Assert.fail("truncated string was accepted: " + php);
+            } catch (EOFException ex) {
+                // expected
+            }
+        }
+
+        PhpDeserializer limited = new PhpDeserializer(
+                        new ByteArrayInputStream("a:2:{i:0;s:3:\"abc\";i:1;s:4:\"abcd\";}"
+                                        .getBytes(UTF8)));
+        limited.setMaxStringLength(3);
+        try {
+            limited.deserialize();
+            Assert.fail("string exceeding the maximum length was accepted");
+        } catch (IOException ex) {
+            Assert.assertTrue(ex.getMessage().startsWith("string length 4 exceeds"));
+        }
+    }
+
+    /**
+     * The nesting depth is limited.
+     */
+    @Test
+    public void testMaxDepth() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int ix = 0; ix < 3; ix++) {
+            sb.append("a:1:{i:0;");
+        }
+        sb.append("O:3:\"Foo\":1:{s:1:\"x\";N;}");
+        for (int ix = 0; ix < 3; ix++) {
+            sb.append('}');
+        }
+        byte[] php = sb.toString().getBytes(UTF8);
+
+        PhpDeserializer pd = new PhpDeserializer(new ByteArrayInputStream(php));
+        pd.setMaxDepth(4);
+        Assert.assertNotNull(pd.deserialize());
+
+        pd = new PhpDeserializer(new ByteArrayInputStream(php));
+        pd.setMaxDepth(3);
+        try {
+            pd.deserialize();
+            Assert.fail("too deep structure was accepted");
+        } catch (IOException ex) {
+            Assert.assertTrue(ex.getMessage().startsWith("nesting too deep"));
+        }
+
+        // --- The default limit prevents a stack overflow ---
+        StringBuilder deep = new StringBuilder();
+        for (int ix = 0; ix < 100000; ix++) {
+            deep.append("a:1:{i:0;");
+        }
+        try {
+            unserialize(deep.toString());
+            Assert.fail("too deep structure was accepted");
+        } catch (IOException ex) {
+            Assert.assertTrue(ex.getMessage().startsWith("nesting too deep"));
+        }
+    }
+
+    /**
+     * Test the event interface, and reading several values.
+     */
+    @Test
+    public void testHandler() throws IOException {
+        final StringBuilder events = new StringBuilder();
+        PhpDeserializer.Handler handler = new PhpDeserializer.Handler() {
+            @Override
+            public void intValue(long value) {
+                events.append("i").append(value).append(' ');
+            }
+
+            @Override
+            public void doubleValue(double value) {
+                events.append("d").append(value).append(' ');
+            }
+
+            @Override
+            public void booleanValue(boolean value) {
+                events.append("b").append(value).append(' ');
+            }
+
+            @Override
+            public void stringValue(String value) {
+                events.append("s").append(value).append(' ');
+            }
+
+            @Override
+            public void nullValue() {
+                events.append("N ");
+            }
+
+            @Override
+            public void startArray(int size) {
+                events.append("[").append(size).append(' ');
+            }
+
+            @Override
+            public void endArray() {
+                events.append("] ");
+            }
+
+            @Override
+            public void startObject(String className, int size) {
+                events.append("{").append(className).append(' ');
+            }
+
+            @Override
+            public void endObject() {
+                events.append("} ");
+            }
+
+            @Override
+            public void reference(int slot, boolean phpReference) {
+                events.append(phpReference ? "R" : "r").append(slot).append(' ');
+            }
+        };
+
+        PhpDeserializer pd = new PhpDeserializer(new StringReader(
+            "a:2:{i:0;b:1;s:1:\"x\";O:1:\"A\":1:{s:1:\"y\";d:2.5;}}N;r:1;"));
+        pd.parse(handler);
+        pd.parse(handler);
+        pd.parse(handler);
+        Assert.assertEquals("[2 i0 btrue sx {A sy d2.5 } ] N r1 ", events.toString());
+
+        try {
+            pd.parse(handler);
+            Assert.fail("read beyond end");
+        } catch (EOFException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Invalid data must be rejected.
+     */
+    @Test
+    public void testInvalid() {
+        String[] invalid = { "i:12", "i:1x;", "b:2;", "s:5:\"abc\";", "a:1:{i:0;}",
+                        "a:1:{d:1.0;i:0;}", "x:1;", "d:foo;", "r:0;", "a:1:{i:0;R:3;}" };
+        for (String php : invalid) {
+            try {
+                unserialize(php);
+                Assert.fail("accepted " + php);
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * References must be resolved to the same object.
+     */
+    @Test
+    public void testReferences() throws IOException {
+        String php = "a:5:{i:0;O:1:\"A\":1:{s:1:\"n\";i:1;}i:1;r:2;"
+                        + "i:2;a:1:{i:0;s:1:\"x\";}i:3;R:5;i:4;R:1;}";
+        Map<?, ?> result = (Map<?, ?>) new PhpDeserializer(new StringReader(php))
+                        .deserialize();
+
+        Assert.assertEquals(5, result.size());
+        Assert.assertTrue(result.get(0L) instanceof PhpObject);
+        Assert.assertSame(result.get(0L), result.get(1L));
+        Assert.assertEquals(Arrays.asList("x"), result.get(2L));
+        Assert.assertSame(result.get(2L), result.get(3L));
+        Assert.assertSame(result, result.get(4L));
+    }
+
+    /**
+     * Deserialized objects must serialize to the original input.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        String php = "a:2:{i:0;O:3:\"Foo\":1:{s:1:\"x\";i:1;}i:1;O:3:\"Bar\":0:{}}";
+
+        StringWriter sw = new StringWriter();
+        try (PhpSerializer ser = new PhpSerializer(sw)) {
+            ser.serialize(unserialize(php));
+        }
+        Assert.assertEquals(php, sw.toString());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (PhpByteSerializer ser = new PhpByteSerializer(bos)) {
+            ser.serialize(unserialize(php));
+        }
+        Assert.assertEquals(php, new String(bos.toByteArray(), UTF8));
+    }
+
+}
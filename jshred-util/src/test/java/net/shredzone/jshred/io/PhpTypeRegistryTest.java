@@ -0,0 +1,118 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link PhpTypeRegistry} and {@link PhpBeanSerializer}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class PhpTypeRegistryTest {
+
+    /**
+     * A simple bean.
+     */
+    public static class User implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public String getName()     { return "Shred"; }
+        public int getAge()         { return 30; }
+        public boolean isAdmin()    { return true; }
+        public String getURL()      { return null; }
+        public void setName(String name) { /* ignored */ }
+        public static String getStatic() { return "static"; }
+    }
+
+    private static String serialize(Object obj, PhpTypeRegistry registry) throws IOException {
+        StringWriter sw = new StringWriter();
+        try (PhpSerializer ser = new PhpSerializer(sw)) {
+            ser.setRegistry(registry);
+            ser.serialize(obj);
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (PhpByteSerializer ser = new PhpByteSerializer(bos)) {
+            ser.setRegistry(registry);
+            ser.serialize(obj);
+        }
+
+        Assert.assertEquals(sw.toString(), bos.toString("UTF-8"));
+        return sw.toString();
+    }
+
+    /**
+     * Test the bean serializer.
+     */
+    @Test
+    public void testBean() throws IOException {
+        PhpTypeRegistry registry = new PhpTypeRegistry();
+
+        registry.setDefaultSerializer(new PhpBeanSerializer(true));
+        Assert.assertEquals("O:4:\"User\":4:{s:3:\"URL\";N;s:5:\"admin\";b:1;"
+            + "s:3:\"age\";i:30;s:4:\"name\";s:5:\"Shred\";}",
+            serialize(new User(), registry));
+
+        registry.setDefaultSerializer(new PhpBeanSerializer(false));
+        Assert.assertEquals("a:2:{i:0;a:4:{s:3:\"URL\";N;s:5:\"admin\";b:1;"
+            + "s:3:\"age\";i:30;s:4:\"name\";s:5:\"Shred\";}i:1;N;}",
+            serialize(Arrays.asList(new User(), null), registry));
+    }
+
+    /**
+     * Test serializers registered for classes and interfaces.
+     */
+    @Test
+    public void testLookup() throws IOException {
+        PhpTypeRegistry registry = new PhpTypeRegistry();
+        Assert.assertNull(registry.lookup(User.class));
+
+        registry.register(Serializable.class, new PhpTypeSerializer<Serializable>() {
+            @Override
+            public void serialize(Serializable value, PhpOutput out) throws IOException {
+                out.serialize("serializable");
+            }
+        });
+        registry.register(Date.class, new PhpTypeSerializer<Date>() {
+            @Override
+            public void serialize(Date value, PhpOutput out) throws IOException {
+                out.serialize(value.getTime() / 1000L);
+            }
+        });
+
+        Assert.assertEquals("i:1234;", serialize(new Date(1234567L), registry));
+        Assert.assertEquals("i:1234;", serialize(new java.sql.Date(1234567L), registry));
+        Assert.assertEquals("s:12:\"serializable\";", serialize(new User(), registry));
+
+        // --- Basic types are not affected ---
+        Assert.assertEquals("s:3:\"abc\";", serialize("abc", registry));
+    }
+
+}
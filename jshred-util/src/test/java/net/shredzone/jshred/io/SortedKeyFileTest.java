@@ -0,0 +1,213 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link SortedKeyFile}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class SortedKeyFileTest {
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("keytest", ".jskf");
+    }
+
+    @After
+    public void teardown() {
+        file.delete();
+    }
+
+    @Test
+    public void testCreateAndOpen() throws IOException {
+        try (SortedKeyFile skf = SortedKeyFile.create(file, 8)) {
+            Assert.assertEquals(8, skf.getKeyWidth());
+            Assert.assertTrue(skf.isEmpty());
+            Assert.assertFalse(skf.containsLong(42L));
+
+            skf.appendLong(-5L);
+            skf.appendLong(42L);
+            skf.appendLong(Long.MAX_VALUE);
+        }
+
+        try (SortedKeyFile skf = SortedKeyFile.open(file, true)) {
+            Assert.assertEquals(8, skf.getKeyWidth());
+            Assert.assertEquals(3, skf.size());
+            Assert.assertEquals(-5L, skf.getLong(0));
+            Assert.assertEquals(42L, skf.getLong(1));
+            Assert.assertEquals(Long.MAX_VALUE, skf.getLong(2));
+            Assert.assertTrue(skf.containsLong(42L));
+            Assert.assertFalse(skf.containsLong(43L));
+            Assert.assertEquals(2, skf.indexOfLong(Long.MAX_VALUE));
+
+            try {
+                skf.appendLong(Long.MAX_VALUE);
+                Assert.fail("read-only file was changed");
+            } catch (IllegalStateException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenInvalid() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeLong(0x0123456789ABCDEFL);
+            raf.writeLong(0L);
+        }
+        SortedKeyFile.open(file, true).close();
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        try (SortedKeyFile skf = SortedKeyFile.create(file, 3)) {
+            skf.append(new byte[] {0, 0, 1});
+            skf.append(new byte[] {0, 1, 0});
+            skf.append(new byte[] {(byte) 0xFF, 0, 0}); // <-- unsigned order
+
+            try {
+                skf.append(new byte[] {0, 1, 0});
+                Assert.fail("key lower than the last key was accepted");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+
+            Assert.assertEquals(3, skf.size());
+            Assert.assertArrayEquals(new byte[] {(byte) 0xFF, 0, 0}, skf.get(2));
+            Assert.assertEquals(1, skf.indexOf(new byte[] {0, 1, 0}));
+            Assert.assertFalse(skf.contains(new byte[] {0, 0, 2}));
+        }
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        try (SortedKeyFile skf = SortedKeyFile.create(file, 4)) {
+            skf.appendInt(10);
+            skf.appendInt(20);
+            skf.appendInt(30);
+
+            skf.merge(new int[] {25, -7, 20, 35, 25, 5});
+
+            int[] expected = {-7, 5, 10, 20, 25, 30, 35};
+            Assert.assertEquals(expected.length, skf.size());
+            for (int ix = 0; ix < expected.length; ix++) {
+                Assert.assertEquals(expected[ix], skf.getInt(ix));
+            }
+            Assert.assertTrue(skf.containsInt(25));
+            Assert.assertFalse(skf.containsInt(15));
+        }
+
+        try (SortedKeyFile skf = SortedKeyFile.open(file, false)) {
+            Assert.assertEquals(7, skf.size());
+            skf.merge(new int[] {15});
+            Assert.assertEquals(3, skf.indexOfInt(15));
+        }
+    }
+
+    @Test
+    public void testMergeSegments() throws IOException {
+        Random rnd = new Random(4711);
+        TreeSet<Long> expected = new TreeSet<>();
+
+        // --- Small segments of 8 keys, so merges cross many segment boundaries ---
+        try (SortedKeyFile skf = SortedKeyFile.create(file, 8, 64)) {
+            for (int round = 0; round < 10; round++) {
+                long[] keys = new long[500];
+                for (int ix = 0; ix < keys.length; ix++) {
+                    keys[ix] = rnd.nextInt(20000) - 10000L;
+                    expected.add(keys[ix]);
+                }
+                skf.merge(keys);
+                assertKeys(expected, skf);
+            }
+        }
+
+        try (SortedKeyFile skf = SortedKeyFile.open(file, true, 64)) {
+            assertKeys(expected, skf);
+        }
+    }
+
+    @Test
+    public void testSegmentBoundary() throws IOException {
+        long perSegment = SEGMENT_SIZE / 8;
+
+        // --- Prepare a sparse file that fills the first segment, ending with 100, 200 ---
+        SortedKeyFile.create(file, 8).close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(16 + perSegment * 8);
+            raf.seek(8);
+            raf.writeLong(perSegment);
+            raf.seek(16 + (perSegment - 2) * 8);
+            raf.writeLong(100L ^ Long.MIN_VALUE);
+            raf.writeLong(200L ^ Long.MIN_VALUE);
+        }
+
+        try (SortedKeyFile skf = SortedKeyFile.open(file, false)) {
+            Assert.assertEquals(perSegment, skf.size());
+            Assert.assertEquals(200L, skf.getLong(perSegment - 1));
+
+            skf.appendLong(300L);
+            skf.merge(new long[] {250L, 150L, 400L});
+
+            Assert.assertEquals(perSegment + 4, skf.size());
+            Assert.assertEquals(100L, skf.getLong(perSegment - 2));
+            Assert.assertEquals(150L, skf.getLong(perSegment - 1));
+            Assert.assertEquals(200L, skf.getLong(perSegment));
+            Assert.assertEquals(250L, skf.getLong(perSegment + 1));
+            Assert.assertEquals(400L, skf.getLong(perSegment + 3));
+            Assert.assertEquals(perSegment + 2, skf.indexOfLong(300L));
+        }
+
+        try (SortedKeyFile skf = SortedKeyFile.open(file, true)) {
+            Assert.assertEquals(perSegment + 4, skf.size());
+            Assert.assertEquals(perSegment - 1, skf.indexOfLong(150L));
+            Assert.assertArrayEquals(new byte[] {
+                    (byte) 0x80, 0, 0, 0, 0, 0, 0, (byte) 200
+            }, skf.get(perSegment));
+        }
+    }
+
+    private void assertKeys(TreeSet<Long> expected, SortedKeyFile skf) {
+        Assert.assertEquals(expected.size(), skf.size());
+        long ix = 0;
+        for (Long key : expected) {
+            Assert.assertEquals(key.longValue(), skf.getLong(ix));
+            Assert.assertEquals(ix, skf.indexOfLong(key));
+            ix++;
+        }
+    }
+
+}
@@ -0,0 +1,395 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link StreamingXMLWriter}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class StreamingXMLWriterTest {
+
+    private static final String NL = System.getProperty("line.separator");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The output must be identical to {@link XMLWriter}.
+     */
+    @Test
+    public void testSameAsXMLWriter() throws IOException {
+        Map<String, String> attrs = new LinkedHashMap<String, String>();
+        attrs.put("href", "?a=1&b=2");
+        attrs.put("rel", "'self'");
+
+        StringWriter expected = new StringWriter();
+        try (XMLWriter xw = new XMLWriter(expected)) {
+            xw.startDocument();
+            xw.startElement("feed", "title", "Tom & Jerry");
+            xw.writeComment("<start>");
+            xw.startElement("link", attrs);
+            xw.endElement();
+            xw.startElement("entry");
+            xw.writeContent("  1 < 2  ");
+            xw.endElement();
+            xw.startElement("entry");
+            xw.startElement("empty");
+            xw.writeContent("   ");
+            xw.endElement();
+            xw.endElement();
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        StringWriter sw = new StringWriter();
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(sw)) {
+            xw.startDocument();
+            xw.startElement("feed", "title", "Tom & Jerry");
+            xw.writeComment("<start>");
+            xw.startElement("link", attrs);
+            xw.endElement();
+            xw.startElement("entry");
+            xw.writeContent("  1 < 2  ");
+            xw.endElement();
+            xw.startElement("entry");
+            xw.startElement("empty");
+            xw.writeContent("   ");
+            xw.endElement();
+            xw.endElement();
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        Assert.assertEquals(expected.toString(), sw.toString());
+    }
+
+    /**
+     * Test mixed content, and deep nesting.
+     */
+    @Test
+    public void testMixedContent() throws IOException {
+        StringWriter sw = new StringWriter();
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(sw)) {
+            xw.setIndent("\t");
+            xw.startElement("p");
+            xw.writeContent("first");
+            xw.writeContent("second");
+            xw.startElement("b");
+            xw.writeContent("bold");
+            xw.endElement();
+            xw.writeContent("third");
+            xw.endElement();
+
+            for (int ix = 0; ix < 100; ix++) {
+                xw.startElement("n");
+            }
+            for (int ix = 0; ix < 100; ix++) {
+                xw.endElement();
+            }
+            xw.endDocument();
+        }
+
+        String result = sw.toString();
+        Assert.assertTrue(result.startsWith("<p>first" + NL
+                        + "\tsecond" + NL
+                        + "\t<b>bold</b>" + NL
+                        + "\tthird" + NL
+                        + "</p>" + NL
+                        + "<n>" + NL));
+        Assert.assertTrue(result.endsWith("\t</n>" + NL + "</n>" + NL));
+    }
+
+    /**
+     * Unbalanced elements must be detected.
+     */
+    @Test
+    public void testUnbalanced() throws IOException {
+        StreamingXMLWriter xw = new StreamingXMLWriter(new StringWriter());
+        xw.startElement("a");
+        try {
+            xw.endDocument();
+            Assert.fail("open element not detected");
+        } catch (IOException ex) {
+            // expected
+        }
+
+        xw.endElement();
+        try {
+            xw.endElement();
+            Assert.fail("too many closed elements not detected");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * UTF-8 output must be identical to the output of an encoding {@link Writer}.
+     */
+    @Test
+    public void testByteOutput() throws IOException {
+        // --- The surrogate pair is split at the internal buffer border, 49 chars of
+        // header and start tag are written in front of the content ---
+        char[] pad = new char[8191 - 49 - 2 * NL.length()];
+        Arrays.fill(pad, 'a');
+        String content = new String(pad) + "\uD83D\uDE00 äöü € \uD800x";
+
+        StringWriter sw = new StringWriter();
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(sw)) {
+            write(xw, content);
+        }
+        byte[] expected = sw.toString().replace("\uD800", "?").getBytes(UTF8);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(bos, false)) {
+            write(xw, content);
+        }
+        Assert.assertArrayEquals(expected, bos.toByteArray());
+
+        bos = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(bos);
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(channel, false)) {
+            write(xw, content);
+        }
+        Assert.assertArrayEquals(expected, bos.toByteArray());
+
+        bos = new ByteArrayOutputStream();
+        channel = Channels.newChannel(bos);
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(channel, true)) {
+            write(xw, content);
+        }
+        Assert.assertArrayEquals(expected, gunzip(bos.toByteArray()));
+
+        try {
+            new StreamingXMLWriter(bos, false).setEncoding("ISO-8859-1");
+            Assert.fail("encoding was changed");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+
+        // --- Non-blocking channels are rejected ---
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            new StreamingXMLWriter(pipe.sink(), false);
+            Assert.fail("non-blocking channel was accepted");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+    private static void write(StreamingXMLWriter xw, String content) throws IOException {
+        xw.startDocument();
+        xw.startElement("a", "x", "\u00E9t\u00E9");
+        xw.writeContent(content);
+        xw.endElement();
+        xw.endDocument();
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buf = new byte[1024];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                bos.write(buf, 0, len);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Test the fluent attribute API.
+     */
+    @Test
+    public void testAttributes() throws IOException {
+        StringWriter sw = new StringWriter();
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(sw)) {
+            xw.startElement("url").attr("id", 42).attr("size", Long.MIN_VALUE)
+                            .attr("href", "?a=1&b=2").attr("none", null).attr("ok", true);
+            xw.startElement("loc").attr("n", -7);
+            xw.writeContent("x");
+            try {
+                xw.attr("late", 1);
+                Assert.fail("attribute was accepted after content");
+            } catch (IllegalStateException ex) {
+                // expected
+            }
+            xw.endElement();
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        Assert.assertEquals("<url id=\"42\" size=\"-9223372036854775808\""
+                        + " href=\"?a=1&amp;b=2\" ok=\"true\">" + NL
+                        + "  <loc n=\"-7\">x</loc>" + NL
+                        + "</url>" + NL, sw.toString());
+    }
+
+    /**
+     * Test namespace support.
+     */
+    @Test
+    public void testNamespaces() throws IOException {
+        String atom = "http://www.w3.org/2005/Atom";
+        String media = "http://search.yahoo.com/mrss/";
+        String geo = "http://www.w3.org/2003/01/geo/wgs84_pos#";
+
+        StringWriter sw = new StringWriter();
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(sw)) {
+            xw.bindPrefix("", atom);
+            xw.bindPrefix("media", media);
+            xw.startElementNS(atom, "feed").declareNamespace(media);
+            xw.startElementNS(atom, "entry").attrNS(atom, "lang", "en");
+            xw.startElementNS(media, "thumbnail").attrNS(null, "url", "a.png");
+            xw.endElement();
+            xw.startElementNS(geo, "lat");
+            xw.writeContent("52.5");
+            xw.endElement();
+            xw.startElementNS(null, "plain");
+            xw.endElement();
+            xw.endElement();
+            xw.startElementNS(geo, "long");
+            xw.endElement();
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        Assert.assertEquals("<feed xmlns=\"" + atom + "\""
+                        + " xmlns:media=\"" + media + "\">" + NL
+                        + "  <entry xmlns:ns1=\"" + atom + "\" ns1:lang=\"en\">" + NL
+                        + "    <media:thumbnail url=\"a.png\"/>" + NL
+                        + "    <ns2:lat xmlns:ns2=\"" + geo + "\">52.5</ns2:lat>" + NL
+                        + "    <plain xmlns=\"\"/>" + NL
+                        + "  </entry>" + NL
+                        + "  <ns3:long xmlns:ns3=\"" + geo + "\"/>" + NL
+                        + "</feed>" + NL, sw.toString());
+    }
+
+    /**
+     * A namespace declared on the current element must not rebind the prefix of the
+     * element's own name.
+     */
+    @Test
+    public void testNamespaceElementPrefix() throws IOException {
+        StringWriter sw = new StringWriter();
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(sw)) {
+            xw.bindPrefix("p", "urn:a");
+            xw.startElementNS("urn:a", "root");
+            xw.bindPrefix("x", "urn:a");
+            xw.bindPrefix("p", "urn:b");
+            xw.startElementNS("urn:a", "child").attrNS("urn:b", "x", "1");
+            xw.endElement();
+            xw.startElementNS("urn:a", "other").declareNamespace("urn:b");
+            xw.endElement();
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        Assert.assertEquals("<p:root xmlns:p=\"urn:a\">" + NL
+                        + "  <p:child xmlns:ns1=\"urn:b\" ns1:x=\"1\"/>" + NL
+                        + "  <p:other xmlns:ns2=\"urn:b\"/>" + NL
+                        + "</p:root>" + NL, sw.toString());
+    }
+
+    /**
+     * A namespace declared on the current element must not rebind a prefix that is
+     * used by an attribute of the element.
+     */
+    @Test
+    public void testNamespaceAttributePrefix() throws IOException {
+        StringWriter sw = new StringWriter();
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(sw)) {
+            xw.bindPrefix("p", "urn:a");
+            xw.bindPrefix("q", "urn:b");
+            xw.startElementNS("urn:a", "root").declareNamespace("urn:b");
+            xw.startElement("child").attrNS("urn:b", "x", "1");
+            xw.bindPrefix("r", "urn:b");
+            xw.bindPrefix("q", "urn:c");
+            xw.attrNS("urn:c", "y", "2");
+            xw.endElement();
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        Assert.assertEquals("<p:root xmlns:p=\"urn:a\" xmlns:q=\"urn:b\">" + NL
+                        + "  <child q:x=\"1\" xmlns:ns1=\"urn:c\" ns1:y=\"2\"/>" + NL
+                        + "</p:root>" + NL, sw.toString());
+    }
+
+    /**
+     * Generated prefixes must not collide with bound prefixes, so an element keeps its
+     * namespace when a bound prefix is declared later.
+     */
+    @Test
+    public void testGeneratedPrefix() throws IOException {
+        StringWriter sw = new StringWriter();
+        try (StreamingXMLWriter xw = new StreamingXMLWriter(sw)) {
+            xw.bindPrefix("ns1", "urn:b");
+            xw.startElementNS("urn:a", "root");
+            xw.startElementNS("urn:a", "child").attrNS("urn:b", "x", "1");
+            xw.endElement();
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        Assert.assertEquals("<ns2:root xmlns:ns2=\"urn:a\">" + NL
+                        + "  <ns2:child xmlns:ns1=\"urn:b\" ns1:x=\"1\"/>" + NL
+                        + "</ns2:root>" + NL, sw.toString());
+    }
+
+    /**
+     * A prefix must not be bound to two namespaces.
+     */
+    @Test
+    public void testBindPrefixTwice() {
+        StreamingXMLWriter xw = new StreamingXMLWriter(new StringWriter());
+        xw.bindPrefix("p", "urn:a");
+        xw.bindPrefix("p", "urn:a");
+        xw.bindPrefix("q", "urn:a");
+        xw.bindPrefix("p", "urn:b");
+        try {
+            xw.bindPrefix("p", "urn:c");
+            Assert.fail("prefix was bound to two namespaces");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+}
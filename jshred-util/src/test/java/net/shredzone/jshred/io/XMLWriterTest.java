@@ -0,0 +1,136 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.io;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link XMLWriter}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class XMLWriterTest {
+
+    /**
+     * Test escaping of special chars.
+     */
+    @Test
+    public void testEscape() {
+        String plain = "nothing to escape äöü";
+        Assert.assertSame(plain, XMLWriter.escape(plain));
+
+        Assert.assertEquals("a &lt;b&gt; &amp; &quot;c&quot; &apos;d&apos;",
+                        XMLWriter.escape("a <b> & \"c\" 'd'"));
+        Assert.assertEquals("&amp;&amp;", XMLWriter.escape("&&"));
+        Assert.assertEquals("tab\tline\r\nbreak", XMLWriter.escape("tab\tline\r\nbreak"));
+        Assert.assertEquals("nobell", XMLWriter.escape("no\u0007bell\uFFFF"));
+        Assert.assertEquals("", XMLWriter.escape(""));
+    }
+
+    /**
+     * Test a simple document.
+     */
+    @Test
+    public void testDocument() throws IOException {
+        StringWriter sw = new StringWriter();
+        try (XMLWriter xw = new XMLWriter(sw)) {
+            xw.startDocument();
+            xw.startElement("feed", "title", "Tom & Jerry");
+            xw.startElement("empty");
+            xw.endElement();
+            xw.startElement("entry");
+            xw.writeContent("1 < 2");
+            xw.endElement();
+            xw.writeComment("<end>");
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        String nl = System.getProperty("line.separator");
+        Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + nl + nl
+                        + "<feed title=\"Tom &amp; Jerry\">" + nl
+                        + "  <empty/>" + nl
+                        + "  <entry>1 &lt; 2</entry>" + nl
+                        + "  <!-- &lt;end&gt; -->" + nl
+                        + "</feed>" + nl, sw.toString());
+    }
+
+    /**
+     * Test the fluent attribute API.
+     */
+    @Test
+    public void testAttributes() throws IOException {
+        StringWriter sw = new StringWriter();
+        try (XMLWriter xw = new XMLWriter(sw)) {
+            xw.openElement("url").attr("id", 42).attr("size", Long.MIN_VALUE)
+                            .attr("href", "?a=1&b=2").attr("none", null).attr("ok", true);
+            xw.openElement("loc").attr("n", -7);
+            xw.writeContent("x");
+            try {
+                xw.attr("late", 1);
+                Assert.fail("attribute was accepted after content");
+            } catch (IllegalStateException ex) {
+                // expected
+            }
+            xw.endElement();
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        String nl = System.getProperty("line.separator");
+        Assert.assertEquals("<url id=\"42\" size=\"-9223372036854775808\""
+                        + " href=\"?a=1&amp;b=2\" ok=\"true\">" + nl
+                        + "  <loc n=\"-7\">x</loc>" + nl
+                        + "</url>" + nl, sw.toString());
+    }
+
+    /**
+     * startElement(String) must keep its void signature, and long tags must be written
+     * completely.
+     */
+    @Test
+    public void testStartElement() throws IOException, NoSuchMethodException {
+        Method start = XMLWriter.class.getMethod("startElement", String.class);
+        Assert.assertEquals(void.class, start.getReturnType());
+
+        StringBuilder value = new StringBuilder();
+        for (int ix = 0; ix < 100; ix++) {
+            value.append("value").append(ix);
+        }
+
+        StringWriter sw = new StringWriter();
+        try (XMLWriter xw = new XMLWriter(sw)) {
+            xw.startElement("item");
+            xw.attr("long", value.toString());
+            xw.endElement();
+            xw.endDocument();
+        }
+
+        String nl = System.getProperty("line.separator");
+        Assert.assertEquals("<item long=\"" + value + "\"/>" + nl, sw.toString());
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link CSVByteParser} and {@link CSVByteRecord}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVByteParserTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String TEXT = "abc;def\n"
+        + "\n"
+        + "\"say \"\"hi\"\"\";\"a;b\";\r\n"
+        + "\"two\nlines\";äöü€\r"
+        + "\"\";x;;\n"
+        + "last";
+
+    /**
+     * The results must be identical to {@link CSVReader}, on heap and direct buffers.
+     */
+    @Test
+    public void testSameAsCSVReader() throws IOException {
+        byte[] data = TEXT.getBytes(UTF8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+
+        for (ByteBuffer buf : new ByteBuffer[] {ByteBuffer.wrap(data), direct}) {
+            CSVReader reader = new CSVReader(new StringReader(TEXT));
+            CSVByteParser parser = new CSVByteParser(buf, ';');
+
+            CSVLine expected;
+            while ((expected = reader.readLine()) != null) {
+                Assert.assertTrue(parser.hasNext());
+                Assert.assertEquals(expected, parser.nextLine());
+            }
+            Assert.assertFalse(parser.hasNext());
+            Assert.assertNull(parser.nextLine());
+        }
+    }
+
+    /**
+     * Test accessing single columns.
+     */
+    @Test
+    public void testRecord() throws IOException {
+        String text = "42;-1.25;\"x\"\"y\";TRUE;€;9223372036854775807\n";
+        ByteBuffer buf = ByteBuffer.wrap(text.getBytes(UTF8)).asReadOnlyBuffer();
+        CSVByteParser parser = new CSVByteParser(buf, ';');
+        CSVByteRecord rec = new CSVByteRecord();
+
+        Assert.assertTrue(parser.next(rec));
+        Assert.assertEquals(6, rec.size());
+        Assert.assertEquals(42, rec.getInt(0));
+        Assert.assertEquals(-1.25, rec.getDouble(1), 0.0);
+        Assert.assertEquals("x\"y", rec.getString(2));
+        Assert.assertEquals(3, rec.getByteLength(2));
+        Assert.assertTrue(rec.equalsAscii(2, "x\"y"));
+        Assert.assertFalse(rec.equalsAscii(0, "43"));
+        Assert.assertTrue(rec.getBoolean(3));
+        Assert.assertEquals("€", rec.getString(4));
+        Assert.assertEquals(3, rec.getByteLength(4));
+        Assert.assertEquals(Long.MAX_VALUE, rec.getLong(5));
+
+        byte[] dest = new byte[5];
+        Assert.assertEquals(3, rec.copyTo(2, dest, 1));
+        Assert.assertEquals('x', dest[1]);
+        Assert.assertEquals('"', dest[2]);
+        Assert.assertEquals('y', dest[3]);
+
+        Assert.assertFalse(parser.next(rec));
+        Assert.assertEquals(0, rec.size());
+    }
+
+    /**
+     * Bad quoting must be detected, and the position must be kept.
+     */
+    @Test
+    public void testBadQuoting() {
+        ByteBuffer buf = ByteBuffer.wrap("ok\n\"bad\"x;y\n".getBytes(UTF8));
+        CSVByteParser parser = new CSVByteParser(buf, ';');
+        CSVByteRecord rec = new CSVByteRecord();
+        try {
+            Assert.assertTrue(parser.next(rec));
+            parser.next(rec);
+            Assert.fail("bad quoting was accepted");
+        } catch (IOException ex) {
+            Assert.assertEquals(3, parser.position());
+        }
+
+        buf = ByteBuffer.wrap("\"missing".getBytes(UTF8));
+        try {
+            new CSVByteParser(buf, ';').next(rec);
+            Assert.fail("missing quote was accepted");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link CSVParallelParser}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVParallelParserTest {
+
+    private static final String[] SAMPLES = {
+        "", "abc", "ä€x", "a;b", "\"", "line\nbreak", "cr\r\nlf", ";\n;",
+    };
+
+    @Test
+    public void testSameAsCSVReader() throws IOException {
+        Random rnd = new Random(815);
+        StringBuilder text = new StringBuilder();
+        for (int ix = 0; ix < 2000; ix++) {
+            CSVLine line = new CSVLine();
+            int cols = rnd.nextInt(4);
+            for (int col = 0; col < cols; col++) {
+                line.add(SAMPLES[rnd.nextInt(SAMPLES.length)]);
+            }
+            text.append(line).append(rnd.nextBoolean() ? "\n" : "\r\n");
+        }
+
+        List<CSVLine> expected = new ArrayList<CSVLine>();
+        try (CSVReader reader = new CSVReader(new StringReader(text.toString()))) {
+            CSVLine line;
+            while ((line = reader.readLine()) != null) {
+                expected.add(line);
+            }
+        }
+
+        File file = File.createTempFile("csvtest", ".csv");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(text.toString().getBytes(Charset.forName("UTF-8")));
+            }
+
+            CSVParallelParser parser = new CSVParallelParser(';');
+            parser.setChunkSize(37);
+
+            final List<CSVLine> ordered = new ArrayList<CSVLine>();
+            parser.parse(file, new CSVParallelParser.Handler() {
+                @Override
+                public void handle(CSVLine line) {
+                    ordered.add(line);
+                }
+            }, true);
+            Assert.assertEquals(expected, ordered);
+
+            final List<CSVLine> unordered = Collections.synchronizedList(new ArrayList<CSVLine>());
+            parser.parse(file, new CSVParallelParser.Handler() {
+                @Override
+                public void handle(CSVLine line) {
+                    unordered.add(line);
+                }
+            }, false);
+            Assert.assertEquals(expected.size(), unordered.size());
+            Assert.assertTrue(unordered.containsAll(expected));
+        } finally {
+            file.delete();
+        }
+    }
+
+}
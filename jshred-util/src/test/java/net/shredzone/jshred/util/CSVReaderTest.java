@@ -0,0 +1,118 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link CSVReader}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVReaderTest {
+
+    private static final String[] LINES = {
+        "",
+        "abc",
+        "abc;def;ghi",
+        ";",
+        "abc;;ghi;",
+        "\"abc\";\"d;e\"\"f\";g\"h",
+        "\"\";\"\"\"\";\"x\";",
+    };
+
+    @Test
+    public void testSameAsCSVLine() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (String line : LINES) {
+            text.append(line).append("\r\n");
+        }
+
+        try (CSVReader reader = new CSVReader(new StringReader(text.toString()))) {
+            for (String line : LINES) {
+                Assert.assertEquals(new CSVLine(line), reader.readLine());
+            }
+            Assert.assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testRecord() throws IOException {
+        String text = "abc;\"d\"\"ef\";\n\"x\ny\"";
+        CSVRecord record = new CSVRecord();
+
+        try (CSVReader reader = new CSVReader(new StringReader(text))) {
+            Assert.assertTrue(reader.read(record));
+            Assert.assertEquals(3, record.size());
+            Assert.assertEquals("abc", record.get(0).toString());
+            Assert.assertTrue(record.contentEquals(1, "d\"ef"));
+            Assert.assertEquals('"', record.get(1).charAt(1));
+            Assert.assertTrue(record.isEmpty(2));
+
+            Assert.assertTrue(reader.read(record));
+            Assert.assertEquals(1, record.size());
+            Assert.assertEquals("x\ny", record.getString(0));
+
+            Assert.assertFalse(reader.read(record));
+        }
+    }
+
+    @Test
+    public void testParse() {
+        CSVRecord record = new CSVRecord();
+        for (String line : LINES) {
+            record.parse(line, ';');
+            Assert.assertEquals(new CSVLine(line), record.toCSVLine(';'));
+        }
+    }
+
+    @Test
+    public void testMultiLine() throws IOException {
+        String text = "1;\"first\nsecond\r\nthird\";x\n2;y";
+
+        try (CSVReader reader = new CSVReader(new StringReader(text))) {
+            Assert.assertEquals(Arrays.asList("1", "first\nsecond\r\nthird", "x"), reader.readLine());
+            Assert.assertEquals(4, reader.getLineNumber());
+            Assert.assertEquals(Arrays.asList("2", "y"), reader.readLine());
+            Assert.assertNull(reader.readLine());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingQuote() throws IOException {
+        try (CSVReader reader = new CSVReader(new StringReader("a;\"bc\nd"))) {
+            reader.readLine();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testBadQuoting() throws IOException {
+        try (CSVReader reader = new CSVReader(new StringReader("a;\"bc\"d"))) {
+            reader.readLine();
+        }
+    }
+
+}
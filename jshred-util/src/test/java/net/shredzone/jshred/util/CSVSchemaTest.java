@@ -0,0 +1,154 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link CSVSchema} and the typed getters of {@link CSVRecord}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVSchemaTest {
+
+    /**
+     * Test the primitive getters of {@link CSVRecord}.
+     */
+    @Test
+    public void testPrimitives() {
+        CSVRecord rec = new CSVRecord();
+        rec.parse("42;-17;+3;9223372036854775807;-9223372036854775808;"
+                        + "1.5;-0.25;1e3;.5;TRUE;1;no", ';');
+
+        Assert.assertEquals(42, rec.getInt(0));
+        Assert.assertEquals(-17, rec.getInt(1));
+        Assert.assertEquals(3, rec.getInt(2));
+        Assert.assertEquals(Long.MAX_VALUE, rec.getLong(3));
+        Assert.assertEquals(Long.MIN_VALUE, rec.getLong(4));
+        Assert.assertEquals(1.5, rec.getDouble(5), 0.0);
+        Assert.assertEquals(-0.25, rec.getDouble(6), 0.0);
+        Assert.assertEquals(1000.0, rec.getDouble(7), 0.0);
+        Assert.assertEquals(0.5, rec.getDouble(8), 0.0);
+        Assert.assertTrue(rec.getBoolean(9));
+        Assert.assertTrue(rec.getBoolean(10));
+        Assert.assertFalse(rec.getBoolean(11));
+
+        // --- The fast path must return the same result as Double.parseDouble ---
+        String[] values = { "0.1", "3.14159265358979", "123456789012345.6", "0.000001",
+                        "1234.5678", "-99.99", "0", "-0", "1.7976931348623157E308" };
+        for (String value : values) {
+            rec.parse(value, ';');
+            Assert.assertEquals(value, Double.parseDouble(value), rec.getDouble(0), 0.0);
+        }
+    }
+
+    /**
+     * Test bad numbers.
+     */
+    @Test
+    public void testBadNumbers() {
+        String[] values = { "", "-", "12a", "2147483648", "9223372036854775808", " 1" };
+        CSVRecord rec = new CSVRecord();
+        for (String value : values) {
+            rec.parse(value + ";x", ';');
+            try {
+                rec.getInt(0);
+                Assert.fail("accepted " + value);
+            } catch (NumberFormatException ex) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Test binding a schema to a header record.
+     */
+    @Test
+    public void testSchema() throws IOException, ParseException {
+        CSVSchema schema = new CSVSchema();
+        CSVSchema.Column price = schema.addColumn("price", CSVSchema.Type.DOUBLE);
+        CSVSchema.Column id = schema.addColumn("id", CSVSchema.Type.LONG);
+        CSVSchema.Column date = schema.addColumn("date", CSVSchema.Type.DATE);
+        CSVSchema.Column name = schema.addColumn("name", CSVSchema.Type.STRING);
+        Assert.assertFalse(schema.isBound());
+
+        CSVReader reader = new CSVReader(new StringReader(
+                        "id,name,unused,price,date\n"
+                        + "1,Apple,x,0.5,2009-05-01\n"
+                        + "2,\"Pear, green\",y,,2009-05-02\n"), ',');
+        schema.readHeader(reader);
+        Assert.assertTrue(schema.isBound());
+        Assert.assertEquals(3, price.getIndex());
+        Assert.assertEquals(0, id.getIndex());
+
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd");
+        CSVRecord rec = new CSVRecord();
+
+        Assert.assertTrue(reader.read(rec));
+        Assert.assertEquals(1L, id.getLong(rec));
+        Assert.assertEquals("Apple", name.getString(rec));
+        Assert.assertEquals(0.5, price.getDouble(rec), 0.0);
+        Assert.assertEquals(df.parse("2009-05-01"), date.getDate(rec));
+        Assert.assertEquals(Double.valueOf(0.5), price.getValue(rec));
+
+        Assert.assertTrue(reader.read(rec));
+        Assert.assertEquals(Long.valueOf(2L), id.getValue(rec));
+        Assert.assertEquals("Pear, green", name.getValue(rec));
+        Assert.assertTrue(price.isEmpty(rec));
+        Assert.assertNull(price.getValue(rec));
+
+        Assert.assertFalse(reader.read(rec));
+    }
+
+    /**
+     * A missing column must be reported.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingColumn() {
+        CSVSchema schema = new CSVSchema();
+        schema.addColumn("id", CSVSchema.Type.INT);
+        schema.addColumn("missing", CSVSchema.Type.INT);
+
+        CSVRecord header = new CSVRecord();
+        header.parse("id;name", ';');
+        schema.bind(header);
+    }
+
+    /**
+     * Unbound columns must not be read.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testUnbound() {
+        CSVSchema schema = new CSVSchema();
+        CSVSchema.Column id = schema.addColumn("id", CSVSchema.Type.INT);
+
+        CSVRecord rec = new CSVRecord();
+        rec.parse("1", ';');
+        id.getInt(rec);
+    }
+
+}
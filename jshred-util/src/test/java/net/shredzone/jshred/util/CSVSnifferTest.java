@@ -0,0 +1,170 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link CSVSniffer}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVSnifferTest {
+
+    /**
+     * Test detection of the different dialects.
+     */
+    @Test
+    public void testSniff() {
+        CSVSniffer sniffer = new CSVSniffer();
+
+        Assert.assertEquals(new CSVDialect(',', false, true, "\n"), sniffer.sniff(
+            "name,price,amount\nApple,0.5,10\nPear,1.25,3\nPlum,0.75,12\n", false));
+
+        Assert.assertEquals(new CSVDialect(';', true, false, "\r\n"), sniffer.sniff(
+            "\"Apple, red\";0,50;10\r\nPear;1,25;3\r\n\"Plum, blue\";0,75;12\r\n", false));
+
+        Assert.assertEquals(new CSVDialect('\t', false, true, "\n"), sniffer.sniff(
+            "id\tproduct code\n1\tAB12\n2\tCD34\n3\tEF56\n", false));
+
+        Assert.assertEquals(new CSVDialect('|', true, false, "\r"), sniffer.sniff(
+            "a|\"multi\nline\"|c\rd|e|f\rg|h|i", false));
+
+        // --- Single column files ---
+        CSVDialect single = sniffer.sniff("Apple\nPear\nPlum\nFig\n", false);
+        Assert.assertEquals(',', single.getDelimiter());
+        Assert.assertFalse(single.hasHeader());
+    }
+
+    /**
+     * A truncated sample must not spoil the result.
+     */
+    @Test
+    public void testTruncated() {
+        CSVSniffer sniffer = new CSVSniffer();
+        CSVDialect dialect = sniffer.sniff("a;b;c\n1;2;3\n4;5;6\n7;\"8\n", true);
+        Assert.assertEquals(';', dialect.getDelimiter());
+        Assert.assertTrue(dialect.hasHeader());
+    }
+
+    /**
+     * The reader must not be consumed.
+     */
+    @Test
+    public void testReader() throws IOException {
+        StringBuilder csv = new StringBuilder("id,name\n");
+        for (int ix = 0; ix < 1000; ix++) {
+            csv.append(ix).append(",name").append(ix).append('\n');
+        }
+
+        CSVSniffer sniffer = new CSVSniffer();
+        sniffer.setSampleSize(100);
+
+        BufferedReader in = new BufferedReader(new StringReader(csv.toString()));
+        CSVDialect dialect = sniffer.sniff(in);
+        Assert.assertEquals(',', dialect.getDelimiter());
+        Assert.assertTrue(dialect.hasHeader());
+
+        CSVReader reader = dialect.createReader(in);
+        Assert.assertEquals("id,name", reader.readLine().toString());
+
+        CSVReader opened = sniffer.open(new StringReader(csv.toString()));
+        Assert.assertEquals(',', opened.getDelimiter());
+        Assert.assertEquals("id,name", opened.readLine().toString());
+        Assert.assertEquals("0,name0", opened.readLine().toString());
+    }
+
+    /**
+     * Writers of a quoted dialect quote all columns.
+     */
+    @Test
+    public void testCreateWriter() throws IOException {
+        CSVSniffer sniffer = new CSVSniffer();
+        CSVDialect quoted = sniffer.sniff("\"a\";\"b\"\r\n\"c\";\"d\"\r\n", false);
+        Assert.assertTrue(quoted.isQuoted());
+
+        StringWriter sw = new StringWriter();
+        try (CSVWriter writer = quoted.createWriter(sw)) {
+            writer.writeRecord(Arrays.asList("e", "f"));
+        }
+        Assert.assertEquals("\"e\";\"f\"\r\n", sw.toString());
+
+        CSVDialect plain = sniffer.sniff("a;b\nc;d\n", false);
+        Assert.assertFalse(plain.isQuoted());
+
+        sw = new StringWriter();
+        try (CSVWriter writer = plain.createWriter(sw)) {
+            writer.writeRecord(Arrays.asList("e", "f"));
+        }
+        Assert.assertEquals("e;f\n", sw.toString());
+    }
+
+    /**
+     * A failing reset must not hide the original exception.
+     */
+    @Test
+    public void testReaderFailure() {
+        Reader failing = new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("read failed");
+            }
+
+            @Override
+            public boolean markSupported() {
+                return true;
+            }
+
+            @Override
+            public void mark(int readAheadLimit) {
+                // do nothing
+            }
+
+            @Override
+            public void reset() throws IOException {
+                throw new IOException("reset failed");
+            }
+
+            @Override
+            public void close() {
+                // do nothing
+            }
+        };
+
+        try {
+            new CSVSniffer().sniff(failing);
+            Assert.fail("exception was not thrown");
+        } catch (IOException ex) {
+            Assert.assertEquals("read failed", ex.getMessage());
+            Assert.assertEquals(1, ex.getSuppressed().length);
+            Assert.assertEquals("reset failed", ex.getSuppressed()[0].getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link CSVTable}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVTableTest {
+
+    private static CSVSchema createSchema() {
+        CSVSchema schema = new CSVSchema();
+        schema.addColumn("id", CSVSchema.Type.INT);
+        schema.addColumn("product", CSVSchema.Type.STRING);
+        schema.addColumn("price", CSVSchema.Type.DOUBLE);
+        schema.addColumn("stock", CSVSchema.Type.LONG);
+        schema.addColumn("sold", CSVSchema.Type.BOOLEAN);
+        schema.addColumn("date", CSVSchema.Type.DATE);
+        return schema;
+    }
+
+    /**
+     * Test loading and aggregating a table.
+     */
+    @Test
+    public void testLoad() throws IOException, ParseException {
+        String csv = "id;product;price;stock;sold;date;ignored\n"
+            + "1;Apple;0.5;100;true;2009-05-01;x\n"
+            + "2;Pear;1.25;;false;2009-05-02;x\n"
+            + "\n"
+            + "3;Apple;;-20;true;;x\n"
+            + "4;;2.0;5;;2009-05-01;x\n";
+
+        CSVTable table = CSVTable.load(new CSVReader(new StringReader(csv)), createSchema());
+        Assert.assertEquals(4, table.getRowCount());
+        Assert.assertEquals(6, table.getColumns().size());
+
+        CSVTable.IntColumn id = (CSVTable.IntColumn) table.getColumn("id");
+        Assert.assertEquals(3, id.getInt(2));
+        Assert.assertEquals(10L, id.sumLong());
+        Assert.assertEquals(1.0, id.min(), 0.0);
+        Assert.assertEquals(4.0, id.max(), 0.0);
+        Assert.assertEquals(4, id.countDistinct());
+
+        CSVTable.StringColumn product = (CSVTable.StringColumn) table.getColumn("product");
+        Assert.assertEquals("Pear", product.getString(1));
+        Assert.assertEquals(product.getCode(0), product.getCode(2));
+        Assert.assertNull(product.getString(3));
+        Assert.assertEquals(-1, product.getCode(3));
+        Assert.assertEquals(2, product.countDistinct());
+        Assert.assertEquals(1, product.countNulls());
+
+        CSVTable.Column price = table.getColumn("price");
+        Assert.assertEquals(3.75, price.sum(), 0.0);
+        Assert.assertEquals(0.5, price.min(), 0.0);
+        Assert.assertEquals(2.0, price.max(), 0.0);
+        Assert.assertTrue(price.isNull(2));
+        Assert.assertNull(price.getValue(2));
+        Assert.assertEquals(Double.valueOf(1.25), price.getValue(1));
+
+        CSVTable.LongColumn stock = (CSVTable.LongColumn) table.getColumn("stock");
+        Assert.assertEquals(85L, stock.sumLong());
+        Assert.assertEquals(-20.0, stock.min(), 0.0);
+
+        CSVTable.BooleanColumn sold = (CSVTable.BooleanColumn) table.getColumn("sold");
+        Assert.assertTrue(sold.getBoolean(0));
+        Assert.assertFalse(sold.getBoolean(1));
+        Assert.assertEquals(2.0, sold.sum(), 0.0);
+        Assert.assertEquals(2, sold.countDistinct());
+        Assert.assertEquals(1, sold.countNulls());
+
+        CSVTable.LongColumn date = (CSVTable.LongColumn) table.getColumn("date");
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd");
+        Assert.assertEquals(df.parse("2009-05-02"), date.getDate(1));
+        Assert.assertEquals(df.parse("2009-05-01"), date.getValue(3));
+        Assert.assertNull(date.getDate(2));
+        Assert.assertEquals(2, date.countDistinct());
+    }
+
+    /**
+     * Test a table that is larger than the initial capacity.
+     */
+    @Test
+    public void testLarge() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int ix = 0; ix < 5000; ix++) {
+            csv.append(ix).append(";name").append(ix % 300).append(";")
+                .append(ix % 7 == 0 ? "" : "1.5").append(";1;1;2009-01-01\n");
+        }
+
+        CSVSchema schema = createSchema();
+        schema.bindByPosition();
+        CSVTable table = CSVTable.load(new CSVReader(new StringReader(csv.toString())), schema);
+
+        Assert.assertEquals(5000, table.getRowCount());
+        Assert.assertEquals(4999.0, table.getColumn("id").max(), 0.0);
+        Assert.assertEquals(300, table.getColumn("product").countDistinct());
+        Assert.assertEquals("name17",
+            ((CSVTable.StringColumn) table.getColumn("product")).getString(4517));
+        Assert.assertEquals(715, table.getColumn("price").countNulls());
+        Assert.assertEquals((5000 - 715) * 1.5, table.getColumn("price").sum(), 0.0);
+    }
+
+    /**
+     * Bad values must be reported with their line number.
+     */
+    @Test
+    public void testBadValue() {
+        String csv = "id;product;price;stock;sold;date\n"
+            + "1;Apple;0.5;100;true;2009-05-01\n"
+            + "x;Pear;1.25;1;false;2009-05-02\n";
+        try {
+            CSVTable.load(new CSVReader(new StringReader(csv)), createSchema());
+            Assert.fail("bad value was accepted");
+        } catch (IOException ex) {
+            Assert.assertEquals("bad value in line 3, column 'id'", ex.getMessage());
+        }
+    }
+
+    /**
+     * Aggregations on strings are not supported.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnsupported() throws IOException {
+        CSVTable table = CSVTable.load(new CSVReader(new StringReader("product\nApple\n")),
+            createSchemaProductOnly());
+        table.getColumn("product").sum();
+    }
+
+    private static CSVSchema createSchemaProductOnly() {
+        CSVSchema schema = new CSVSchema();
+        schema.addColumn("product", CSVSchema.Type.STRING);
+        return schema;
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link CSVWriter}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class CSVWriterTest {
+
+    @Test
+    public void testWrite() throws IOException {
+        StringWriter sw = new StringWriter();
+        try (CSVWriter writer = new CSVWriter(sw)) {
+            writer.writeColumn("abc");
+            writer.writeColumn("a;b");
+            writer.writeColumn("say \"hi\"");
+            writer.writeColumn("two\nlines");
+            writer.writeColumn((String) null);
+            writer.endRecord();
+
+            writer.writeColumn(42);
+            writer.writeColumn(Long.MIN_VALUE);
+            writer.writeColumn(-7);
+            writer.writeColumn(0L);
+            writer.writeColumn(1.5);
+            writer.endRecord();
+
+            writer.writeColumn("");
+            writer.endRecord();
+        }
+
+        Assert.assertEquals("abc;\"a;b\";\"say \"\"hi\"\"\";\"two\nlines\";\n"
+                + "42;-9223372036854775808;-7;0;1.5\n"
+                + "\"\"\n", sw.toString());
+
+        try (CSVReader reader = new CSVReader(new StringReader(sw.toString()))) {
+            Assert.assertEquals(Arrays.asList("abc", "a;b", "say \"hi\"", "two\nlines", ""), reader.readLine());
+            Assert.assertEquals(Arrays.asList("42", "-9223372036854775808", "-7", "0", "1.5"), reader.readLine());
+            Assert.assertEquals(Arrays.asList(""), reader.readLine());
+            Assert.assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testQuoteAll() throws IOException {
+        StringWriter sw = new StringWriter();
+        try (CSVWriter writer = new CSVWriter(sw, ',')) {
+            writer.setQuoteAll(true);
+            writer.writeColumn("abc");
+            writer.writeColumn("say \"hi\"");
+            writer.writeColumn(42);
+            writer.writeColumn((String) null);
+            writer.writeColumn("");
+            writer.endRecord();
+
+            writer.writeColumn("");
+            writer.endRecord();
+        }
+
+        Assert.assertEquals("\"abc\",\"say \"\"hi\"\"\",\"42\",,\"\"\n"
+                + "\"\"\n", sw.toString());
+    }
+
+    @Test
+    public void testCSVLineToString() {
+        CSVLine line = new CSVLine();
+        line.add("abc");
+        line.add("a;b");
+        line.add("say \"hi\"");
+
+        Assert.assertEquals("abc;\"a;b\";\"say \"\"hi\"\"\"", line.toString());
+        Assert.assertEquals(line, new CSVLine(line.toString()));
+    }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link ChunkedSortedList}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class ChunkedSortedListTest {
+
+    @Test
+    public void testAddObject() {
+        ChunkedSortedList<String> list = new ChunkedSortedList<String>();
+        list.add("Mike");
+        list.add("Charlie");
+        list.add("Alpha");
+        list.add("Tango");
+        list.add("Charlie"); // <-- a duplicate!
+
+        Assert.assertEquals(4, list.size());
+
+        Assert.assertEquals("Alpha", list.get(0));
+        Assert.assertEquals("Charlie", list.get(1));
+        Assert.assertEquals("Mike", list.get(2));
+        Assert.assertEquals("Tango", list.get(3));
+
+        Assert.assertTrue(list.contains("Charlie"));
+        Assert.assertFalse(list.contains("Bravo"));
+        Assert.assertEquals(2, list.indexOf("Mike"));
+        Assert.assertEquals(-1, list.indexOf("Zulu"));
+    }
+
+    @Test
+    public void testLargeList() {
+        Random rnd = new Random(4711);
+        ChunkedSortedList<Integer> list = new ChunkedSortedList<Integer>();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+
+        for (int ix = 0; ix < 50000; ix++) {
+            Integer value = rnd.nextInt(30000);
+            list.add(value);
+            expected.add(value);
+        }
+        assertSame(expected, list);
+
+        List<Integer> batch = new ArrayList<Integer>();
+        for (int ix = 0; ix < 20000; ix++) {
+            batch.add(rnd.nextInt(60000));
+        }
+        list.addAll(batch);
+        expected.addAll(batch);
+        assertSame(expected, list);
+
+        for (int ix = 0; ix < 20000; ix++) {
+            Integer value = rnd.nextInt(60000);
+            Assert.assertEquals(expected.remove(value), list.remove(value));
+        }
+        assertSame(expected, list);
+
+        Iterator<Integer> it = list.iterator();
+        while (it.hasNext()) {
+            Integer value = it.next();
+            if (value % 3 == 0) {
+                it.remove();
+                expected.remove(value);
+            }
+        }
+        assertSame(expected, list);
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Random rnd = new Random(815);
+        ChunkedSortedList<Integer> list = new ChunkedSortedList<Integer>();
+        SortedList<Integer> expected = new SortedList<Integer>();
+
+        // --- Grow and shrink several times, so chunks are split and merged ---
+        for (int round = 0; round < 6; round++) {
+            int range = (round % 2 == 0 ? 20000 : 3000);
+            for (int ix = 0; ix < 15000; ix++) {
+                Integer value = rnd.nextInt(range);
+                switch (rnd.nextInt(4)) {
+                    case 0:
+                        Assert.assertEquals(expected.remove(value), list.remove(value));
+                        break;
+
+                    case 1:
+                        if (!expected.isEmpty()) {
+                            int index = rnd.nextInt(expected.size());
+                            Assert.assertEquals(expected.remove(index), list.remove(index));
+                        }
+                        break;
+
+                    default:
+                        if (round % 2 == 0) {
+                            expected.add(value);
+                            list.add(value);
+                        } else {
+                            Assert.assertEquals(expected.remove(value), list.remove(value));
+                        }
+                }
+
+                if (ix % 1000 == 0) {
+                    assertSame(expected, list);
+                }
+            }
+            assertSame(expected, list);
+        }
+    }
+
+    private void assertSame(List<Integer> expected, ChunkedSortedList<Integer> list) {
+        Assert.assertEquals(expected.size(), list.size());
+        Assert.assertEquals(expected, new ArrayList<Integer>(list));
+
+        for (int ix = 0; ix < expected.size(); ix++) {
+            Integer value = expected.get(ix);
+            Assert.assertEquals(value, list.get(ix));
+            Assert.assertEquals(ix, list.indexOf(value));
+        }
+    }
+
+    private void assertSame(TreeSet<Integer> expected, ChunkedSortedList<Integer> list) {
+        Assert.assertEquals(expected.size(), list.size());
+        Assert.assertEquals(new ArrayList<Integer>(expected), new ArrayList<Integer>(list));
+
+        int ix = 0;
+        for (Integer value : expected) {
+            Assert.assertEquals(value, list.get(ix));
+            Assert.assertEquals(ix, list.indexOf(value));
+            ix++;
+        }
+    }
+
+}
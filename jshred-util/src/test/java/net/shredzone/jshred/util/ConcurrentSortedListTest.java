@@ -0,0 +1,235 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link ConcurrentSortedList}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class ConcurrentSortedListTest {
+
+    @Test
+    public void testAddObject() {
+        ConcurrentSortedList<String> list = new ConcurrentSortedList<String>();
+        list.add("Mike");
+        list.add("Charlie");
+        list.add("Alpha");
+        list.add("Tango");
+        list.add("Charlie"); // <-- a duplicate!
+
+        Assert.assertEquals(4, list.size());
+        Assert.assertEquals(Arrays.asList("Alpha", "Charlie", "Mike", "Tango"), list);
+
+        Assert.assertTrue(list.contains("Charlie"));
+        Assert.assertFalse(list.contains("Bravo"));
+        Assert.assertEquals(2, list.indexOf("Mike"));
+        Assert.assertEquals(-1, list.indexOf("Zulu"));
+    }
+
+    @Test
+    public void testAddAll() {
+        ConcurrentSortedList<Integer> list = new ConcurrentSortedList<Integer>(
+                Arrays.asList(5, 1, 9));
+        list.addAll(Arrays.asList(9, 3, 3, 12, 1));
+
+        Assert.assertEquals(Arrays.asList(1, 3, 5, 9, 12), list);
+    }
+
+    @Test
+    public void testRemove() {
+        ConcurrentSortedList<Integer> list = new ConcurrentSortedList<Integer>(
+                Arrays.asList(10, 20, 30, 40, 50));
+
+        Assert.assertTrue(list.remove(Integer.valueOf(30)));
+        Assert.assertFalse(list.remove(Integer.valueOf(35)));
+        Assert.assertEquals(Integer.valueOf(10), list.remove(0));
+        Assert.assertEquals(Arrays.asList(20, 40, 50), list);
+        Assert.assertFalse(list.contains(30));
+
+        Assert.assertTrue(list.removeAll(Arrays.asList(40, 60)));
+        Assert.assertFalse(list.removeAll(Arrays.asList(60)));
+        Assert.assertEquals(Arrays.asList(20, 50), list);
+
+        Assert.assertTrue(list.retainAll(Arrays.asList(50)));
+        Assert.assertEquals(Arrays.asList(50), list);
+
+        list.clear();
+        Assert.assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void testComparator() {
+        Comparator<String> reverse =
+                Collections.reverseOrder(String.CASE_INSENSITIVE_ORDER);
+        ConcurrentSortedList<String> list = new ConcurrentSortedList<String>(reverse);
+        Assert.assertSame(reverse, list.comparator());
+
+        list.add("alpha");
+        list.add("Charlie");
+        list.addAll(Arrays.asList("bravo", "ALPHA"));
+
+        Assert.assertEquals(Arrays.asList("Charlie", "bravo", "ALPHA"), list);
+        Assert.assertTrue(list.contains("CHARLIE"));
+        Assert.assertEquals(1, list.indexOf("Bravo"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAddIndex() {
+        new ConcurrentSortedList<String>().add(0, "Alpha");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testAddNull() {
+        new ConcurrentSortedList<String>().add(null);
+    }
+
+    @Test
+    public void testSnapshot() {
+        ConcurrentSortedList<Integer> list = new ConcurrentSortedList<Integer>(
+                Arrays.asList(1, 2, 3));
+        List<Integer> snapshot = list.snapshot();
+        Iterator<Integer> it = list.iterator();
+
+        Assert.assertEquals(Integer.valueOf(1), it.next());
+        list.add(0);
+        list.remove(Integer.valueOf(2));
+        list.add(4);
+
+        Assert.assertEquals(Integer.valueOf(2), it.next());
+        Assert.assertEquals(Integer.valueOf(3), it.next());
+        Assert.assertFalse(it.hasNext());
+        Assert.assertEquals(Arrays.asList(1, 2, 3), snapshot);
+        Assert.assertEquals(Arrays.asList(0, 1, 3, 4), list);
+
+        try {
+            snapshot.remove(0);
+            Assert.fail("snapshot is modifiable");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final int writers = 4;
+        final int perWriter = 2000;
+        final ConcurrentSortedList<Integer> list = new ConcurrentSortedList<Integer>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        List<Thread> writerThreads = new ArrayList<Thread>();
+        for (int w = 0; w < writers; w++) {
+            final int first = w;
+            writerThreads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int ix = 0; ix < perWriter; ix++) {
+                            // --- Each writer adds its own values, and removes some ---
+                            int value = ix * writers + first;
+                            list.add(value);
+                            if (ix % 4 == 3) {
+                                list.remove(Integer.valueOf(value - 2 * writers));
+                            }
+                        }
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            });
+        }
+
+        List<Thread> readerThreads = new ArrayList<Thread>();
+        for (int r = 0; r < 2; r++) {
+            readerThreads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        while (!done.get()) {
+                            // --- Each iteration must see a sorted, consistent version ---
+                            Integer last = null;
+                            int count = 0;
+                            for (Integer value : list) {
+                                if (last != null && last >= value) {
+                                    throw new AssertionError("unsorted: " + value);
+                                }
+                                last = value;
+                                count++;
+                            }
+
+                            List<Integer> snapshot = list.snapshot();
+                            if (count > snapshot.size()) {
+                                throw new AssertionError("list shrunk: " + count);
+                            }
+                            for (int ix = 0; ix < snapshot.size(); ix++) {
+                                if (snapshot.indexOf(snapshot.get(ix)) != ix) {
+                                    throw new AssertionError("bad index at " + ix);
+                                }
+                            }
+                        }
+                    } catch (Throwable ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                }
+            });
+        }
+
+        for (Thread t : writerThreads) t.start();
+        for (Thread t : readerThreads) t.start();
+        start.countDown();
+        for (Thread t : writerThreads) t.join();
+        done.set(true);
+        for (Thread t : readerThreads) t.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int w = 0; w < writers; w++) {
+            for (int ix = 0; ix < perWriter; ix++) {
+                if (ix % 4 != 1 || ix + 2 >= perWriter) {
+                    expected.add(ix * writers + w);
+                }
+            }
+        }
+        Collections.sort(expected);
+        Assert.assertEquals(expected, list);
+    }
+
+}
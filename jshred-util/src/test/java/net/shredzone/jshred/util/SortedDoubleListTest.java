@@ -0,0 +1,118 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link SortedDoubleList}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class SortedDoubleListTest {
+
+    @Test
+    public void testAdd() {
+        SortedDoubleList list = new SortedDoubleList();
+        Assert.assertTrue(list.add(4.2));
+        Assert.assertTrue(list.add(0.7));
+        Assert.assertTrue(list.add(-3.0));
+        Assert.assertFalse(list.add(0.7)); // <-- a duplicate!
+
+        Assert.assertEquals(3, list.size());
+        Assert.assertArrayEquals(new double[] {-3.0, 0.7, 4.2}, list.toArray(), 0.0);
+        Assert.assertTrue(list.contains(4.2));
+        Assert.assertFalse(list.contains(0.8));
+        Assert.assertEquals(1, list.indexOf(0.7));
+        Assert.assertEquals(-1, list.indexOf(0.8));
+    }
+
+    @Test
+    public void testNaN() {
+        SortedDoubleList list = new SortedDoubleList();
+        Assert.assertFalse(list.contains(Double.NaN));
+
+        Assert.assertTrue(list.add(Double.NaN));
+        Assert.assertTrue(list.add(Double.POSITIVE_INFINITY));
+        Assert.assertTrue(list.add(1.0));
+        Assert.assertFalse(list.add(Double.NaN)); // <-- NaN is equal to itself
+
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals(1.0, list.get(0), 0.0);
+        Assert.assertEquals(Double.POSITIVE_INFINITY, list.get(1), 0.0);
+        Assert.assertTrue(Double.isNaN(list.get(2)));
+
+        Assert.assertTrue(list.contains(Double.NaN));
+        Assert.assertEquals(2, list.indexOf(Double.NaN));
+        Assert.assertEquals(2, list.higherIndex(Double.POSITIVE_INFINITY));
+        Assert.assertEquals(3, list.higherIndex(Double.NaN));
+
+        Assert.assertTrue(list.remove(Double.NaN));
+        Assert.assertFalse(list.contains(Double.NaN));
+        Assert.assertEquals(2, list.size());
+    }
+
+    @Test
+    public void testSignedZero() {
+        SortedDoubleList list = new SortedDoubleList();
+        Assert.assertTrue(list.add(0.0));
+        Assert.assertTrue(list.add(-0.0)); // <-- not equal to 0.0
+
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals(Double.doubleToRawLongBits(-0.0),
+                Double.doubleToRawLongBits(list.get(0)));
+        Assert.assertEquals(Double.doubleToRawLongBits(0.0),
+                Double.doubleToRawLongBits(list.get(1)));
+        Assert.assertEquals(0, list.indexOf(-0.0));
+        Assert.assertEquals(1, list.indexOf(0.0));
+    }
+
+    @Test
+    public void testAddAll() {
+        SortedDoubleList list = new SortedDoubleList(new double[] {5.0, Double.NaN, 1.0});
+        list.addAll(new double[] {Double.NaN, 0.0, -0.0, 1.0, -1.5});
+
+        Assert.assertEquals(6, list.size());
+        Assert.assertEquals(-1.5, list.get(0), 0.0);
+        Assert.assertEquals(Double.doubleToRawLongBits(-0.0),
+                Double.doubleToRawLongBits(list.get(1)));
+        Assert.assertEquals(Double.doubleToRawLongBits(0.0),
+                Double.doubleToRawLongBits(list.get(2)));
+        Assert.assertEquals(1.0, list.get(3), 0.0);
+        Assert.assertEquals(5.0, list.get(4), 0.0);
+        Assert.assertTrue(Double.isNaN(list.get(5)));
+    }
+
+    @Test
+    public void testRange() {
+        SortedDoubleList list = new SortedDoubleList(new double[] {1.0, 2.0, 3.0, Double.NaN});
+
+        Assert.assertEquals(2, list.countRange(1.5, 3.5));
+        Assert.assertEquals(3, list.countRange(1.0, Double.NaN));
+        Assert.assertArrayEquals(new double[] {2.0, 3.0}, list.toArray(1.5, 3.5), 0.0);
+
+        Assert.assertEquals(1, list.removeRange(2.5, Double.POSITIVE_INFINITY));
+        Assert.assertEquals(3, list.size());
+        Assert.assertTrue(list.contains(Double.NaN));
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link SortedIntList}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class SortedIntListTest {
+
+    @Test
+    public void testAdd() {
+        SortedIntList list = new SortedIntList();
+        Assert.assertTrue(list.add(42));
+        Assert.assertTrue(list.add(7));
+        Assert.assertTrue(list.add(-3));
+        Assert.assertFalse(list.add(7)); // <-- a duplicate!
+
+        Assert.assertEquals(3, list.size());
+        Assert.assertArrayEquals(new int[] {-3, 7, 42}, list.toArray());
+        Assert.assertTrue(list.contains(42));
+        Assert.assertFalse(list.contains(8));
+        Assert.assertEquals(1, list.indexOf(7));
+        Assert.assertEquals(-1, list.indexOf(8));
+    }
+
+    @Test
+    public void testAddAll() {
+        SortedIntList list = new SortedIntList(new int[] {5, 1, 9});
+        list.addAll(new int[] {9, 3, 3, 12, 1});
+
+        Assert.assertArrayEquals(new int[] {1, 3, 5, 9, 12}, list.toArray());
+    }
+
+    @Test
+    public void testRange() {
+        SortedIntList list = new SortedIntList(new int[] {10, 20, 30, 40, 50});
+
+        Assert.assertEquals(1, list.ceilingIndex(11));
+        Assert.assertEquals(1, list.ceilingIndex(20));
+        Assert.assertEquals(2, list.higherIndex(20));
+        Assert.assertEquals(5, list.ceilingIndex(51));
+        Assert.assertEquals(3, list.countRange(15, 45));
+        Assert.assertArrayEquals(new int[] {20, 30, 40}, list.toArray(15, 45));
+
+        Assert.assertEquals(2, list.removeRange(20, 40));
+        Assert.assertArrayEquals(new int[] {10, 40, 50}, list.toArray());
+    }
+
+}
@@ -19,6 +19,9 @@
  */
 package net.shredzone.jshred.util;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -51,6 +54,90 @@ public class SortedListTest {
         Assert.assertEquals("Zulu", list.get(5));
     }
 
+    @Test
+    public void testAddAll() {
+        SortedList<String> list = new SortedList<String>();
+        list.add("Mike");
+        list.add("Charlie");
+
+        list.addAll(Arrays.asList("Tango", "Alpha", "Mike", "Zulu", "Alpha", "Foxtrot"));
+
+        Assert.assertEquals(6, list.size());
+
+        Assert.assertEquals("Alpha", list.get(0));
+        Assert.assertEquals("Charlie", list.get(1));
+        Assert.assertEquals("Foxtrot", list.get(2));
+        Assert.assertEquals("Mike", list.get(3));
+        Assert.assertEquals("Tango", list.get(4));
+        Assert.assertEquals("Zulu", list.get(5));
+    }
+
+    @Test
+    public void testAddAllReplaces() {
+        SortedList<String> list = new SortedList<String>(String.CASE_INSENSITIVE_ORDER);
+        list.add("alpha");
+        list.add("charlie");
+
+        list.addAll(Arrays.asList("Bravo", "ALPHA", "bravo", "Alpha"));
+
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals("Alpha", list.get(0));
+        Assert.assertEquals("bravo", list.get(1));
+        Assert.assertEquals("charlie", list.get(2));
+    }
+
+    @Test
+    public void testNavigation() {
+        SortedList<String> list = new SortedList<String>(Arrays.asList("Bravo", "Delta", "Foxtrot"));
+
+        Assert.assertEquals("Delta", list.floor("Delta"));
+        Assert.assertEquals("Delta", list.floor("Echo"));
+        Assert.assertNull(list.floor("Alpha"));
+        Assert.assertEquals("Delta", list.ceiling("Charlie"));
+        Assert.assertEquals("Delta", list.ceiling("Delta"));
+        Assert.assertNull(list.ceiling("Golf"));
+        Assert.assertEquals("Bravo", list.lower("Delta"));
+        Assert.assertNull(list.lower("Bravo"));
+        Assert.assertEquals("Foxtrot", list.higher("Delta"));
+        Assert.assertNull(list.higher("Foxtrot"));
+    }
+
+    @Test
+    public void testRangeViews() {
+        SortedList<String> list = new SortedList<String>(Arrays.asList("Bravo", "Delta", "Foxtrot", "Hotel"));
+
+        List<String> head = list.headList("Foxtrot");
+        List<String> tail = list.tailList("Delta");
+        List<String> sub = list.subList("Charlie", "Golf");
+
+        Assert.assertEquals(Arrays.asList("Bravo", "Delta"), head);
+        Assert.assertEquals(Arrays.asList("Delta", "Foxtrot", "Hotel"), tail);
+        Assert.assertEquals(Arrays.asList("Delta", "Foxtrot"), sub);
+        Assert.assertEquals(Arrays.asList("Bravo", "Delta", "Foxtrot"), list.headList("Foxtrot", true));
+
+        // --- Views are live ---
+        list.add("Echo");
+        Assert.assertEquals(Arrays.asList("Delta", "Echo", "Foxtrot"), sub);
+        Assert.assertEquals(1, sub.indexOf("Echo"));
+        Assert.assertFalse(sub.contains("Bravo"));
+
+        sub.remove("Echo");
+        Assert.assertFalse(list.contains("Echo"));
+
+        sub.add("Charlie");
+        Assert.assertTrue(list.contains("Charlie"));
+
+        try {
+            sub.add("Alpha");
+            Assert.fail("element out of range was added");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+
+        sub.clear();
+        Assert.assertEquals(Arrays.asList("Bravo", "Hotel"), list);
+    }
+
     @Test
     public void testContainsObject() {
         SortedList<String> list = new SortedList<String>();
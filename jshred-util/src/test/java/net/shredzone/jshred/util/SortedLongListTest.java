@@ -0,0 +1,92 @@
+/**
+ * jshred - Shred's Toolbox
+ *
+ * Copyright (C) 2009 Richard "Shred" Körber
+ *   http://jshred.shredzone.org
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License / GNU Lesser
+ * General Public License as published by the Free Software Foundation,
+ * either version 3 of the License, or (at your option) any later version.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ */
+package net.shredzone.jshred.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A jUnit test case for {@link SortedLongList}.
+ *
+ * @author Richard "Shred" Körber
+ * @since R20
+ */
+public class SortedLongListTest {
+
+    @Test
+    public void testAdd() {
+        SortedLongList list = new SortedLongList();
+        Assert.assertTrue(list.add(42L));
+        Assert.assertTrue(list.add(7L));
+        Assert.assertTrue(list.add(-3L));
+        Assert.assertFalse(list.add(7L)); // <-- a duplicate!
+
+        Assert.assertEquals(3, list.size());
+        Assert.assertArrayEquals(new long[] {-3L, 7L, 42L}, list.toArray());
+        Assert.assertTrue(list.contains(42L));
+        Assert.assertFalse(list.contains(8L));
+        Assert.assertEquals(1, list.indexOf(7L));
+        Assert.assertEquals(-1, list.indexOf(8L));
+    }
+
+    @Test
+    public void testBeyondIntRange() {
+        long big = Integer.MAX_VALUE + 1L;
+        long small = Integer.MIN_VALUE - 1L;
+
+        SortedLongList list = new SortedLongList(new long[] {
+                big, 0L, Long.MAX_VALUE, small, Long.MIN_VALUE
+        });
+        list.add(big + (1L << 32)); // <-- equal to big in its lower 32 bits
+
+        Assert.assertArrayEquals(new long[] {
+                Long.MIN_VALUE, small, 0L, big, big + (1L << 32), Long.MAX_VALUE
+        }, list.toArray());
+        Assert.assertTrue(list.contains(big));
+        Assert.assertFalse(list.contains((int) big));
+        Assert.assertEquals(1, list.indexOf(small));
+        Assert.assertEquals(5, list.indexOf(Long.MAX_VALUE));
+        Assert.assertEquals(3, list.countRange(Integer.MIN_VALUE, Long.MAX_VALUE - 1));
+        Assert.assertEquals(3, list.ceilingIndex(Integer.MAX_VALUE));
+        Assert.assertEquals(4, list.higherIndex(big));
+    }
+
+    @Test
+    public void testAddAll() {
+        SortedLongList list = new SortedLongList(new long[] {5L, 1L, 9L});
+        list.addAll(new long[] {9L, 3L, 3L, 12L, 1L});
+
+        Assert.assertArrayEquals(new long[] {1L, 3L, 5L, 9L, 12L}, list.toArray());
+    }
+
+    @Test
+    public void testRange() {
+        SortedLongList list = new SortedLongList(new long[] {10L, 20L, 30L, 40L, 50L});
+
+        Assert.assertEquals(1, list.ceilingIndex(11L));
+        Assert.assertEquals(2, list.higherIndex(20L));
+        Assert.assertEquals(3, list.countRange(15L, 45L));
+        Assert.assertArrayEquals(new long[] {20L, 30L, 40L}, list.toArray(15L, 45L));
+
+        Assert.assertEquals(2, list.removeRange(20L, 40L));
+        Assert.assertArrayEquals(new long[] {10L, 40L, 50L}, list.toArray());
+    }
+
+}